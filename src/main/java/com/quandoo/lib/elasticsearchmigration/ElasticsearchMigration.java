@@ -16,10 +16,12 @@
 package com.quandoo.lib.elasticsearchmigration;
 
 import com.google.common.base.Strings;
+import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationResult;
 import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationSet;
 import com.quandoo.lib.elasticsearchmigration.service.MigrationClient;
 import com.quandoo.lib.elasticsearchmigration.service.MigrationSetProvider;
 import com.quandoo.lib.elasticsearchmigration.service.impl.DefaultMigrationClient;
+import com.quandoo.lib.elasticsearchmigration.service.impl.PrecompiledMigrationSetProvider;
 import com.quandoo.lib.elasticsearchmigration.service.impl.YamlDirectoryMigrationSetProvider;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
@@ -35,6 +37,7 @@ import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestClientBuilder;
 import org.elasticsearch.client.RestHighLevelClient;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -55,9 +58,12 @@ public class ElasticsearchMigration {
                 createElasticsearchClient(elasticsearchMigrationConfig.getElasticsearchConfig()),
                 elasticsearchMigrationConfig.getIgnorePreviousFailures(),
                 elasticsearchMigrationConfig.getBackoffPeriodInMillis(),
-                elasticsearchMigrationConfig.getRetryCount()
+                elasticsearchMigrationConfig.getRetryCount(),
+                elasticsearchMigrationConfig.getExecutionConfig()
         );
-        this.migrationSetProvider = new YamlDirectoryMigrationSetProvider();
+        this.migrationSetProvider = elasticsearchMigrationConfig.getUsePrecompiledPlan() ?
+                new PrecompiledMigrationSetProvider(elasticsearchMigrationConfig.getMigrationDiscovery()) :
+                new YamlDirectoryMigrationSetProvider(elasticsearchMigrationConfig.getMigrationDiscovery());
     }
 
     private RestHighLevelClient createElasticsearchClient(ElasticsearchConfig elasticsearchConfig) {
@@ -89,4 +95,19 @@ public class ElasticsearchMigration {
         migrationClient.applyMigrationSet(migrationSet);
         log.info("Finished ES schema migration");
     }
+
+    /**
+     * Starts the migration without blocking the calling thread. The migration files are parsed on the common pool,
+     * all requests afterwards run on the I/O reactor of the Elasticsearch client.
+     */
+    public CompletableFuture<MigrationResult> migrateAsync() {
+        log.info("Starting ES schema migration...");
+        return CompletableFuture.supplyAsync(() -> migrationSetProvider.getMigrationSet(elasticsearchMigrationConfig.getBasePackage()))
+                .thenCompose(migrationClient::applyMigrationSetAsync)
+                .whenComplete((result, throwable) -> {
+                    if (throwable == null) {
+                        log.info("Finished ES schema migration");
+                    }
+                });
+    }
 }
@@ -15,6 +15,7 @@
  */
 package com.quandoo.lib.elasticsearchmigration;
 
+import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationDiscovery;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.NonNull;
@@ -32,6 +33,21 @@ public class ElasticsearchMigrationConfig {
     @NonNull
     @Builder.Default
     private final String basePackage = "es.migration";
+    /**
+     * How the migrations of the {@link #basePackage} are found when no precompiled migration plan is read.
+     */
+    @NonNull
+    @Builder.Default
+    private final MigrationDiscovery migrationDiscovery = MigrationDiscovery.REFLECTIONS;
+    /**
+     * Read the migration plan compiled at build time instead of parsing the migration files. The plan is trusted as is,
+     * it has to be recompiled on every build.
+     *
+     * @since 1.3.0
+     */
+    @NonNull
+    @Builder.Default
+    private final Boolean usePrecompiledPlan = false;
     @NonNull
     @Builder.Default
     private final Boolean ignorePreviousFailures = false;
@@ -41,6 +57,12 @@ public class ElasticsearchMigrationConfig {
     @NonNull
     @Builder.Default
     private final Integer retryCount = 5;
+    /**
+     * How the changes are executed against the cluster, see {@link ExecutionConfig}.
+     */
+    @NonNull
+    @Builder.Default
+    private final ExecutionConfig executionConfig = ExecutionConfig.defaults();
 
     @NonNull
     private final ElasticsearchConfig elasticsearchConfig;
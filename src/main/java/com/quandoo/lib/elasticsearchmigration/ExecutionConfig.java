@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration;
+
+import com.quandoo.lib.elasticsearchmigration.model.es.TaskProgress;
+import com.quandoo.lib.elasticsearchmigration.model.migration.RefreshPolicy;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.function.Consumer;
+
+/**
+ * Tuning options for how the changes of a migration set are executed against the cluster.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Getter
+@Builder
+public class ExecutionConfig {
+
+    @NonNull
+    @Builder.Default
+    private final Integer parallelism = 1;
+    @NonNull
+    @Builder.Default
+    private final Integer versionParallelism = 1;
+    @NonNull
+    @Builder.Default
+    private final Integer bulkSize = 1;
+    @NonNull
+    @Builder.Default
+    private final Long bulkSizeInBytes = 5L * 1024 * 1024;
+    @NonNull
+    @Builder.Default
+    private final RefreshPolicy refreshPolicy = RefreshPolicy.IMMEDIATE;
+    @NonNull
+    @Builder.Default
+    private final Long taskPollIntervalInMillis = 1000L;
+    @NonNull
+    @Builder.Default
+    private final Long maxTaskPollIntervalInMillis = 30000L;
+    @NonNull
+    @Builder.Default
+    private final Consumer<TaskProgress> taskProgressListener = taskProgress -> {
+    };
+    /**
+     * Size of the worker pool running {@link com.quandoo.lib.elasticsearchmigration.service.DocumentTransformer}s,
+     * also handed to {@link com.quandoo.lib.elasticsearchmigration.service.JavaMigration}s. Its threads end after a minute idle.
+     */
+    @NonNull
+    @Builder.Default
+    private final Integer workerParallelism = Runtime.getRuntime().availableProcessors();
+    /**
+     * How long the existence of the migration indices and the number of nodes are trusted before they are probed again.
+     */
+    @NonNull
+    @Builder.Default
+    private final Long clusterTopologyTtlInMillis = 10L * 60 * 1000;
+    /**
+     * Duration of the lease on the global lock. The holder renews it every third of this, a lock not renewed for
+     * this long is taken over by the next process.
+     */
+    @NonNull
+    @Builder.Default
+    private final Long lockLeaseInMillis = 60L * 1000;
+    /**
+     * First interval at which a locked out process checks whether the holder finished, doubled with jitter up to
+     * {@link #maxLockPollIntervalInMillis}.
+     */
+    @NonNull
+    @Builder.Default
+    private final Long lockPollIntervalInMillis = 100L;
+    @NonNull
+    @Builder.Default
+    private final Long maxLockPollIntervalInMillis = 1000L;
+    /**
+     * Reads the history entries of the local migration set with a realtime multi get by id instead of refreshing the
+     * version index and searching it. Entries unknown to the local migration set are still searched for.
+     */
+    @NonNull
+    @Builder.Default
+    private final Boolean realtimeHistoryLookup = false;
+    /**
+     * How long a bulk ingest version waits for its indices to become green after restoring their settings. Once it has
+     * passed a warning is logged and the migration continues while the replicas recover in the background.
+     */
+    @NonNull
+    @Builder.Default
+    private final Long recoveryTimeoutInMillis = 5L * 60 * 1000;
+
+    public static ExecutionConfig defaults() {
+        return builder().build();
+    }
+}
@@ -15,17 +15,40 @@
  */
 package com.quandoo.lib.elasticsearchmigration.exception;
 
+import java.util.Optional;
+
 /**
  * @author Emir Dizdarevic
  * @since 1.0.0
  */
 public class MigrationLockedException extends MigrationException {
 
+    private final Long lockExpiresInMillis;
+
     public MigrationLockedException(final String message) {
         super(message);
+        this.lockExpiresInMillis = null;
     }
 
     public MigrationLockedException(final String message, final Throwable cause) {
         super(message, cause);
+        this.lockExpiresInMillis = null;
+    }
+
+    /**
+     * @since 1.3.0
+     */
+    public MigrationLockedException(final String message, final long lockExpiresInMillis) {
+        super(message);
+        this.lockExpiresInMillis = lockExpiresInMillis;
+    }
+
+    /**
+     * Time until the lease of the current holder runs out unless it is renewed. Empty if unknown.
+     *
+     * @since 1.3.0
+     */
+    public Optional<Long> getLockExpiresInMillis() {
+        return Optional.ofNullable(lockExpiresInMillis);
     }
 }
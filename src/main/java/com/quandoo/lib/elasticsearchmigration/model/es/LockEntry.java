@@ -36,4 +36,14 @@ public class LockEntry {
     @NonNull
     @JsonProperty(LockEntryMeta.CREATED_FIELD)
     private Instant created;
+    /**
+     * Absent on locks written before leases were introduced.
+     */
+    @JsonProperty(LockEntryMeta.OWNER_FIELD)
+    private String owner;
+    /**
+     * Absent on locks written before leases were introduced, those never expire.
+     */
+    @JsonProperty(LockEntryMeta.EXPIRES_FIELD)
+    private Instant expires;
 }
@@ -27,4 +27,6 @@ public class LockEntryMeta {
     public static final String INDEX = "elasticsearch_migration_lock";
 
     public static final String CREATED_FIELD = "created";
+    public static final String OWNER_FIELD = "owner";
+    public static final String EXPIRES_FIELD = "expires";
 }
@@ -23,6 +23,8 @@ import lombok.NoArgsConstructor;
 import lombok.NonNull;
 
 import java.time.Instant;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author Emir Dizdarevic
@@ -54,4 +56,51 @@ public class MigrationEntry {
     @NonNull
     @JsonProperty(MigrationEntryMeta.CREATED_FIELD)
     private Instant created;
+
+    /**
+     * Id of the task started by the change at position {@link #taskChange} while the version is {@link State#IN_PROGRESS}.
+     *
+     * @since 1.3.0
+     */
+    @JsonProperty(MigrationEntryMeta.TASK_ID_FIELD)
+    private String taskId;
+    @JsonProperty(MigrationEntryMeta.TASK_CHANGE_FIELD)
+    private Integer taskChange;
+    /**
+     * Index settings to restore after a bulk ingest version, keyed by index.
+     *
+     * @since 1.3.0
+     */
+    @JsonProperty(MigrationEntryMeta.ORIGINAL_SETTINGS_FIELD)
+    private Map<String, Map<String, String>> originalSettings;
+    /**
+     * Old indices of alias swaps to delete once {@link #pendingDeletesDue} (epoch millis) has passed.
+     *
+     * @since 1.3.0
+     */
+    @JsonProperty(MigrationEntryMeta.PENDING_DELETES_FIELD)
+    private List<String> pendingDeletes;
+    @JsonProperty(MigrationEntryMeta.PENDING_DELETES_DUE_FIELD)
+    private Long pendingDeletesDue;
+
+    public MigrationEntry(@NonNull final String identifier,
+                          @NonNull final String version,
+                          @NonNull final String name,
+                          @NonNull final String sha256Checksum,
+                          @NonNull final State state,
+                          final String failureMessage,
+                          @NonNull final Instant created) {
+        this(identifier, version, name, sha256Checksum, state, failureMessage, created, null, null, null, null, null);
+    }
+
+    public boolean isResumable() {
+        return state == State.IN_PROGRESS && taskId != null && taskChange != null;
+    }
+
+    /**
+     * @since 1.3.0
+     */
+    public boolean isPending() {
+        return state == State.PENDING;
+    }
 }
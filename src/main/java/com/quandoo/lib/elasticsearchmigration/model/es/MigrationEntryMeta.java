@@ -33,4 +33,14 @@ public class MigrationEntryMeta {
     public static final String STATE_FIELD = "state";
     public static final String FAUILURE_MESSAGE_FIELD = "failureMessage";
     public static final String CREATED_FIELD = "created";
+    public static final String TASK_ID_FIELD = "taskId";
+    public static final String TASK_CHANGE_FIELD = "taskChange";
+    public static final String ORIGINAL_SETTINGS_FIELD = "originalSettings";
+    public static final String PENDING_DELETES_FIELD = "pendingDeletes";
+    public static final String PENDING_DELETES_DUE_FIELD = "pendingDeletesDue";
+    public static final String FINGERPRINT_FIELD = "fingerprint";
+    public static final String SNAPSHOT_VERSIONS_FIELD = "versions";
+
+    public static final String FINGERPRINT_ID_SUFFIX = "-fingerprint";
+    public static final String SNAPSHOT_ID_SUFFIX = "-snapshot";
 }
@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.model.es;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Stored next to the version entries of an identifier. Holds the versions of the history ordered by version, so the
+ * checks read one document instead of searching all version entries. The version entries stay the audit trail.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class SnapshotEntry {
+
+    @NonNull
+    @JsonProperty(MigrationEntryMeta.SNAPSHOT_VERSIONS_FIELD)
+    private List<SnapshotVersion> versions;
+
+    @NonNull
+    @JsonProperty(MigrationEntryMeta.CREATED_FIELD)
+    private Instant created;
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.model.es;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+
+import java.time.Instant;
+
+/**
+ * A version as recorded in the {@link SnapshotEntry}.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class SnapshotVersion {
+
+    @NonNull
+    @JsonProperty(MigrationEntryMeta.VERSION_FIELD)
+    private String version;
+    @NonNull
+    @JsonProperty(MigrationEntryMeta.NAME_FIELD)
+    private String name;
+    @NonNull
+    @JsonProperty(MigrationEntryMeta.SHA_256_CHECKSUM_FIELD)
+    private String sha256Checksum;
+    @NonNull
+    @JsonProperty(MigrationEntryMeta.STATE_FIELD)
+    private State state;
+    @NonNull
+    @JsonProperty(MigrationEntryMeta.CREATED_FIELD)
+    private Instant created;
+
+    public SnapshotVersion withState(@NonNull final State state) {
+        return new SnapshotVersion(version, name, sha256Checksum, state, created);
+    }
+}
@@ -20,6 +20,12 @@ package com.quandoo.lib.elasticsearchmigration.model.es;
  * @since 1.0.0
  */
 public enum State {
+    /**
+     * Scheduled by a run applying versions in parallel, but not started. Applied like a new version by the next run.
+     *
+     * @since 1.3.0
+     */
+    PENDING,
     IN_PROGRESS,
     SUCCESS,
     FAILURE
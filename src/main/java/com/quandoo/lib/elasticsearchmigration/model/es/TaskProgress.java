@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.model.es;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+/**
+ * Snapshot of the status of a running task as returned by <code>GET _tasks/{id}</code>.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class TaskProgress {
+
+    @NonNull
+    private final String taskId;
+    private final long total;
+    private final long created;
+    private final long updated;
+    private final long deleted;
+    private final long batches;
+    private final long versionConflicts;
+    private final long throttledMillis;
+    private final boolean completed;
+}
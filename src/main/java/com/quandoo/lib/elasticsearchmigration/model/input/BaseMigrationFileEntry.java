@@ -44,7 +44,12 @@ import lombok.NoArgsConstructor;
         @JsonSubTypes.Type(value = CreateIngestPipelineMigrationFileEntry.class, name = "CREATE_INGEST_PIPELINE"),
         @JsonSubTypes.Type(value = DeleteIngestPipelineMigrationFileEntry.class, name = "DELETE_INGEST_PIPELINE"),
         @JsonSubTypes.Type(value = ReindexMigrationFileEntry.class, name = "REINDEX"),
-        @JsonSubTypes.Type(value = UpdateIndexSettingsMigrationFileEntry.class, name = "UPDATE_INDEX_SETTINGS")
+        @JsonSubTypes.Type(value = UpdateIndexSettingsMigrationFileEntry.class, name = "UPDATE_INDEX_SETTINGS"),
+        @JsonSubTypes.Type(value = ReindexWithAliasSwapMigrationFileEntry.class, name = "REINDEX_WITH_ALIAS_SWAP"),
+        @JsonSubTypes.Type(value = BulkLoadMigrationFileEntry.class, name = "BULK_LOAD"),
+        @JsonSubTypes.Type(value = UpdateByQueryMigrationFileEntry.class, name = "UPDATE_BY_QUERY"),
+        @JsonSubTypes.Type(value = DeleteByQueryMigrationFileEntry.class, name = "DELETE_BY_QUERY"),
+        @JsonSubTypes.Type(value = TransformMigrationFileEntry.class, name = "TRANSFORM")
 })
 @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.EXISTING_PROPERTY, visible = true, property = "type")
 public abstract class BaseMigrationFileEntry {
@@ -32,5 +32,10 @@ public enum MigrationType {
     CREATE_INGEST_PIPELINE,
     DELETE_INGEST_PIPELINE,
     REINDEX,
-    UPDATE_INDEX_SETTINGS
+    UPDATE_INDEX_SETTINGS,
+    REINDEX_WITH_ALIAS_SWAP,
+    BULK_LOAD,
+    UPDATE_BY_QUERY,
+    DELETE_BY_QUERY,
+    TRANSFORM
 }
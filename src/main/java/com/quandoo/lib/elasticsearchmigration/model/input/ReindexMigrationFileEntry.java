@@ -22,6 +22,8 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
 
+import java.util.Optional;
+
 /**
  * @author Emir Dizdarevic
  * @since 1.0.0
@@ -34,4 +36,12 @@ public class ReindexMigrationFileEntry extends BaseMigrationFileEntry {
 
     @NonNull
     private String definition;
+    @NonNull
+    private Optional<String> slices = Optional.empty();
+    @NonNull
+    private Optional<Float> requestsPerSecond = Optional.empty();
+    @NonNull
+    private Optional<Long> maxDocs = Optional.empty();
+    @NonNull
+    private Optional<String> scroll = Optional.empty();
 }
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.model.migration;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimap;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Points an alias at a new index and removes it from all indices it pointed to before in a single atomic <code>_aliases</code> call.
+ * The indices the alias pointed to are looked up right before the swap and optionally deleted after a grace period.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+public class AliasSwapMigration implements Migration {
+
+    @NonNull
+    private final String alias;
+    @NonNull
+    private final String index;
+    /**
+     * Elasticsearch time value, e.g. <code>10m</code>. Old indices are kept if absent.
+     */
+    @NonNull
+    private final Optional<String> deleteOldIndicesAfter;
+
+    @Override
+    public Method getMethod() {
+        return Method.POST;
+    }
+
+    @Override
+    public String getUrl() {
+        return "/_aliases";
+    }
+
+    @Override
+    public Map<String, String> getParameters() {
+        return ImmutableMap.of();
+    }
+
+    @Override
+    public Multimap<String, String> getHeaders() {
+        return HashMultimap.create();
+    }
+
+    /**
+     * Body used when the current indices are unknown, removes the alias from every index.
+     */
+    @Override
+    public String getBody() {
+        return createSwap(ImmutableSet.of("*")).getBody();
+    }
+
+    public AliasesMigration createSwap(final Set<String> currentIndices) {
+        final ArrayNode actions = JsonNodeFactory.instance.arrayNode();
+        currentIndices.stream().filter(e -> !e.equals(index)).forEach(e -> actions.addObject().putObject("remove").put("index", e).put("alias", alias));
+        actions.addObject().putObject("add").put("index", index).put("alias", alias);
+
+        final ObjectNode body = JsonNodeFactory.instance.objectNode();
+        body.set("actions", actions);
+        return new AliasesMigration(body.toString());
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.model.migration;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Multimap;
+import com.quandoo.lib.elasticsearchmigration.util.ResourceUtils;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Loads the documents of a NDJSON resource, one source per line, into an index. The resource is streamed in chunks of
+ * {@link #chunkSize} documents, each sent as its own <code>_bulk</code> request, so it is never held in memory as a whole.
+ * The <code>refresh</code> parameter only applies once after the last chunk.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+public class BulkLoadMigration implements Migration {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+    public static final int DEFAULT_CONCURRENCY = 1;
+
+    @NonNull
+    private final String index;
+    /**
+     * Classpath resource or file prefixed with <code>file:</code>, optionally gzip compressed.
+     */
+    @NonNull
+    private final String resource;
+    /**
+     * Top level field of the source used as document id. Ids are generated if absent.
+     */
+    @NonNull
+    private final Optional<String> idField;
+    @NonNull
+    private final Integer chunkSize;
+    /**
+     * Maximum number of chunks in flight at the same time.
+     */
+    @NonNull
+    private final Integer concurrency;
+
+    public InputStream openStream() throws IOException {
+        return ResourceUtils.openStream(resource, this);
+    }
+
+    @Override
+    public Method getMethod() {
+        return Method.POST;
+    }
+
+    @Override
+    public String getUrl() {
+        return "/" + index + "/_bulk";
+    }
+
+    @Override
+    public Map<String, String> getParameters() {
+        return ImmutableMap.of(
+                "refresh", "true"
+        );
+    }
+
+    @Override
+    public Multimap<String, String> getHeaders() {
+        return HashMultimap.create();
+    }
+
+    /**
+     * The body is streamed from {@link #openStream()} chunk by chunk.
+     */
+    @Override
+    public String getBody() {
+        return "";
+    }
+}
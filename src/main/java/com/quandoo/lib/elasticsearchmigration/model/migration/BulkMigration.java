@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.model.migration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Multimap;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Several consecutive {@link DocumentMigration}s of one version sent as a single <code>_bulk</code> request.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+public class BulkMigration implements Migration {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @NonNull
+    private final List<DocumentMigration> migrations;
+    /**
+     * Position of the first migration within its version, used to map failed items back to the migration file.
+     */
+    @NonNull
+    private final Integer firstPosition;
+
+    @Override
+    public Method getMethod() {
+        return Method.POST;
+    }
+
+    @Override
+    public String getUrl() {
+        return "/_bulk";
+    }
+
+    @Override
+    public Map<String, String> getParameters() {
+        return ImmutableMap.of(
+                "refresh", "wait_for"
+        );
+    }
+
+    @Override
+    public Multimap<String, String> getHeaders() {
+        return HashMultimap.create();
+    }
+
+    @Override
+    public String getBody() {
+        try {
+            final StringBuilder body = new StringBuilder();
+            for (DocumentMigration migration : migrations) {
+                final ObjectNode metadata = OBJECT_MAPPER.createObjectNode();
+                metadata.put("_index", migration.getIndex());
+                migration.getDocumentId().ifPresent(e -> metadata.put("_id", e));
+                body.append(OBJECT_MAPPER.writeValueAsString(OBJECT_MAPPER.createObjectNode().set(migration.getBulkAction(), metadata))).append('\n');
+
+                if (migration.getBulkSource().isPresent()) {
+                    // Sources have to be on a single line
+                    body.append(OBJECT_MAPPER.writeValueAsString(OBJECT_MAPPER.readTree(migration.getBulkSource().get()))).append('\n');
+                }
+            }
+
+            return body.toString();
+        } catch (IOException e) {
+            throw new MigrationFailedException("Invalid document definition", e);
+        }
+    }
+
+    /**
+     * <code>_bulk</code> responds with 200 even if single items failed, so the items have to be checked separately.
+     */
+    public void verifyResponse(final String responseBody) {
+        try {
+            final JsonNode response = OBJECT_MAPPER.readTree(responseBody);
+            if (!response.path("errors").asBoolean(false)) {
+                return;
+            }
+
+            final JsonNode items = response.path("items");
+            for (int i = 0; i < items.size(); i++) {
+                final JsonNode item = items.get(i).elements().next();
+                if (item.has("error")) {
+                    final DocumentMigration migration = migrations.get(i);
+                    throw new MigrationFailedException(
+                            "Change #" + (firstPosition + i + 1) + " (" + migration.getClass().getSimpleName() + " " + migration.getIndex() + "/" + migration.getDocumentId().orElse("") + ") failed",
+                            new MigrationFailedException(item.path("status").asText() + " " + item.path("error").toString())
+                    );
+                }
+            }
+        } catch (IOException e) {
+            throw new MigrationFailedException("Invalid bulk response", e);
+        }
+    }
+}
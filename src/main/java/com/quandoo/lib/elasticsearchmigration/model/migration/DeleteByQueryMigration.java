@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.model.migration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Multimap;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Deletes the documents of an index matching {@link #query}. The query is mandatory, <code>DELETE_INDEX</code> removes everything.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+public class DeleteByQueryMigration implements TaskMigration {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @NonNull
+    private final String index;
+    @NonNull
+    private final String query;
+    /**
+     * Number of slices or <code>auto</code>. Defaults to <code>auto</code>, one slice per shard.
+     */
+    @NonNull
+    private final Optional<String> slices;
+    @NonNull
+    private final Optional<Float> requestsPerSecond;
+    @NonNull
+    private final Optional<Long> maxDocs;
+    @NonNull
+    private final Optional<Conflicts> conflicts;
+
+    @Override
+    public Method getMethod() {
+        return Method.POST;
+    }
+
+    @Override
+    public String getUrl() {
+        return "/" + index + "/_delete_by_query";
+    }
+
+    @Override
+    public Map<String, String> getParameters() {
+        final ImmutableMap.Builder<String, String> parameters = ImmutableMap.<String, String>builder()
+                .put("wait_for_completion", "false")
+                .put("refresh", "true")
+                .put("slices", slices.orElse(ReindexMigration.SLICES_AUTO));
+
+        requestsPerSecond.ifPresent(e -> parameters.put("requests_per_second", String.valueOf(e)));
+        maxDocs.ifPresent(e -> parameters.put("max_docs", String.valueOf(e)));
+        conflicts.ifPresent(e -> parameters.put("conflicts", e.name().toLowerCase()));
+
+        return parameters.build();
+    }
+
+    @Override
+    public Multimap<String, String> getHeaders() {
+        return HashMultimap.create();
+    }
+
+    @Override
+    public String getBody() {
+        try {
+            final ObjectNode body = OBJECT_MAPPER.createObjectNode();
+            body.set("query", OBJECT_MAPPER.readTree(query));
+            return OBJECT_MAPPER.writeValueAsString(body);
+        } catch (IOException e) {
+            throw new MigrationFailedException("Invalid delete by query definition", e);
+        }
+    }
+}
@@ -23,6 +23,7 @@ import lombok.EqualsAndHashCode;
 import lombok.NonNull;
 
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * @author Emir Dizdarevic
@@ -30,7 +31,7 @@ import java.util.Map;
  */
 @EqualsAndHashCode
 @AllArgsConstructor
-public class DeleteDocumentMigration implements Migration {
+public class DeleteDocumentMigration implements DocumentMigration {
 
     @NonNull
     private final String index;
@@ -63,4 +64,24 @@ public class DeleteDocumentMigration implements Migration {
     public String getBody() {
         return "";
     }
+
+    @Override
+    public String getIndex() {
+        return index;
+    }
+
+    @Override
+    public Optional<String> getDocumentId() {
+        return Optional.of(id);
+    }
+
+    @Override
+    public String getBulkAction() {
+        return "delete";
+    }
+
+    @Override
+    public Optional<String> getBulkSource() {
+        return Optional.empty();
+    }
 }
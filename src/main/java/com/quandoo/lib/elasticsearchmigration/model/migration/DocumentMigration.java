@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.model.migration;
+
+import java.util.Optional;
+
+/**
+ * A migration writing a single document which can also be expressed as an item of a <code>_bulk</code> request.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public interface DocumentMigration extends Migration {
+
+    String getIndex();
+    Optional<String> getDocumentId();
+    String getBulkAction();
+    Optional<String> getBulkSource();
+
+    default boolean isBulkable() {
+        return true;
+    }
+}
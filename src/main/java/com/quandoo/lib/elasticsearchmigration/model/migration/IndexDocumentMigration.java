@@ -31,7 +31,7 @@ import java.util.Optional;
  */
 @EqualsAndHashCode
 @AllArgsConstructor
-public class IndexDocumentMigration implements Migration {
+public class IndexDocumentMigration implements DocumentMigration {
 
     @NonNull
     private final String index;
@@ -69,4 +69,29 @@ public class IndexDocumentMigration implements Migration {
     public String getBody() {
         return definition;
     }
+
+    @Override
+    public String getIndex() {
+        return index;
+    }
+
+    @Override
+    public Optional<String> getDocumentId() {
+        return id;
+    }
+
+    @Override
+    public String getBulkAction() {
+        return opType.map(e -> e.name().toLowerCase()).orElse(OpType.CREATE.name().toLowerCase());
+    }
+
+    @Override
+    public Optional<String> getBulkSource() {
+        return Optional.of(definition);
+    }
+
+    @Override
+    public boolean isBulkable() {
+        return !opType.isPresent() || opType.get() == OpType.INDEX || opType.get() == OpType.CREATE;
+    }
 }
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.model.migration;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Multimap;
+import com.quandoo.lib.elasticsearchmigration.service.JavaMigration;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.Map;
+
+/**
+ * Runs a {@link JavaMigration}. Which indices it touches is unknown, so it is treated as a barrier for parallel execution.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Getter
+@AllArgsConstructor
+public class JavaCodeMigration implements Migration {
+
+    @NonNull
+    private final JavaMigration javaMigration;
+
+    @Override
+    public Method getMethod() {
+        return Method.POST;
+    }
+
+    @Override
+    public String getUrl() {
+        return "";
+    }
+
+    @Override
+    public Map<String, String> getParameters() {
+        return ImmutableMap.of();
+    }
+
+    @Override
+    public Multimap<String, String> getHeaders() {
+        return HashMultimap.create();
+    }
+
+    @Override
+    public String getBody() {
+        return "";
+    }
+
+    /**
+     * Instances of the same class are equal, migrations have no state of their own.
+     */
+    @Override
+    public boolean equals(final Object o) {
+        return o instanceof JavaCodeMigration && ((JavaCodeMigration) o).javaMigration.getClass().equals(javaMigration.getClass());
+    }
+
+    @Override
+    public int hashCode() {
+        return javaMigration.getClass().hashCode();
+    }
+}
@@ -20,6 +20,7 @@ import lombok.Getter;
 import lombok.NonNull;
 
 import java.util.List;
+import java.util.Optional;
 
 /**
  * @author Emir Dizdarevic
@@ -33,4 +34,17 @@ public class MigrationSetEntry {
     private final List<Migration> migration;
     @NonNull
     private final MigrationMeta migrationMeta;
+    @NonNull
+    private final Optional<RefreshPolicy> refreshPolicy;
+    /**
+     * Drop replicas and disable refresh on the indices written by data changes while the version runs.
+     *
+     * @since 1.3.0
+     */
+    @NonNull
+    private final Boolean bulkIngest;
+
+    public MigrationSetEntry(@NonNull final List<Migration> migration, @NonNull final MigrationMeta migrationMeta) {
+        this(migration, migrationMeta, Optional.empty(), false);
+    }
 }
@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.model.migration;
+
+import com.google.common.collect.Multimap;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sends the delegate without its <code>refresh</code> parameter. The refresh is issued later by a {@link RefreshMigration}.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+public class RefreshDeferringMigration implements Migration {
+
+    public static final String REFRESH_PARAMETER = "refresh";
+
+    @NonNull
+    private final Migration delegate;
+
+    public static Migration unwrap(final Migration migration) {
+        return migration instanceof RefreshDeferringMigration ? ((RefreshDeferringMigration) migration).getDelegate() : migration;
+    }
+
+    @Override
+    public Method getMethod() {
+        return delegate.getMethod();
+    }
+
+    @Override
+    public String getUrl() {
+        return delegate.getUrl();
+    }
+
+    @Override
+    public Map<String, String> getParameters() {
+        final Map<String, String> parameters = new HashMap<>(delegate.getParameters());
+        parameters.remove(REFRESH_PARAMETER);
+        return parameters;
+    }
+
+    @Override
+    public Multimap<String, String> getHeaders() {
+        return delegate.getHeaders();
+    }
+
+    @Override
+    public String getBody() {
+        return delegate.getBody();
+    }
+}
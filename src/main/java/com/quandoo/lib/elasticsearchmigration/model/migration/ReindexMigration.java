@@ -33,10 +33,29 @@ import java.util.Optional;
  */
 @EqualsAndHashCode
 @AllArgsConstructor
-public class ReindexMigration implements Migration {
+public class ReindexMigration implements TaskMigration {
+
+    public static final String SLICES_AUTO = "auto";
 
     @NonNull
     private final String definition;
+    /**
+     * Number of slices or <code>auto</code>. Defaults to <code>auto</code>, one slice per shard of the source index, unless the source is remote.
+     *
+     * @since 1.3.0
+     */
+    @NonNull
+    private final Optional<String> slices;
+    @NonNull
+    private final Optional<Float> requestsPerSecond;
+    @NonNull
+    private final Optional<Long> maxDocs;
+    @NonNull
+    private final Optional<String> scroll;
+
+    public ReindexMigration(@NonNull final String definition) {
+        this(definition, Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty());
+    }
 
     @Override
     public Method getMethod() {
@@ -50,10 +69,22 @@ public class ReindexMigration implements Migration {
 
     @Override
     public Map<String, String> getParameters() {
-        return ImmutableMap.of(
-                "wait_for_completion", "true",
-                "refresh", "true"
-        );
+        final ImmutableMap.Builder<String, String> parameters = ImmutableMap.<String, String>builder()
+                .put("wait_for_completion", "false")
+                .put("refresh", "true");
+
+        final Optional<String> effectiveSlices = slices.isPresent() ? slices : isRemote() ? Optional.empty() : Optional.of(SLICES_AUTO);
+        effectiveSlices.ifPresent(e -> parameters.put("slices", e));
+        requestsPerSecond.ifPresent(e -> parameters.put("requests_per_second", String.valueOf(e)));
+        maxDocs.ifPresent(e -> parameters.put("max_docs", String.valueOf(e)));
+        scroll.ifPresent(e -> parameters.put("scroll", e));
+
+        return parameters.build();
+    }
+
+    private boolean isRemote() {
+        // Slicing is not supported when reindexing from a remote cluster
+        return JsonPath.parse(definition, com.jayway.jsonpath.Configuration.defaultConfiguration().addOptions(Option.SUPPRESS_EXCEPTIONS)).read("$.source.remote") != null;
     }
 
     @Override
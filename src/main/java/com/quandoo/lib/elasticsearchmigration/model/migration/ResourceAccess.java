@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.model.migration;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+/**
+ * A named cluster resource read or written by a {@link Migration}. Indices and aliases share the {@link ResourceType#INDEX}
+ * namespace since ES resolves both through the same name. The name {@link #ANY} matches every resource of the same type and
+ * {@link ResourceType#CLUSTER} conflicts with everything.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor
+public class ResourceAccess {
+
+    public static final String ANY = "*";
+
+    @NonNull
+    private final ResourceType type;
+    @NonNull
+    private final String name;
+    private final boolean write;
+
+    public static ResourceAccess read(final ResourceType type, final String name) {
+        return new ResourceAccess(type, name, false);
+    }
+
+    public static ResourceAccess write(final ResourceType type, final String name) {
+        return new ResourceAccess(type, name, true);
+    }
+
+    public boolean conflictsWith(final ResourceAccess other) {
+        if (type == ResourceType.CLUSTER || other.type == ResourceType.CLUSTER) {
+            return true;
+        }
+
+        return type == other.type &&
+                (write || other.write) &&
+                (name.equals(other.name) || ANY.equals(name) || ANY.equals(other.name));
+    }
+}
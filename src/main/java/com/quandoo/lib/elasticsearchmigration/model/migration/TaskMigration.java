@@ -0,0 +1,26 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.model.migration;
+
+/**
+ * A change backed by an Elasticsearch task API. It is submitted with <code>wait_for_completion=false</code> and the returned task is
+ * polled until it finishes, so no HTTP connection is held open for the duration of the task.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public interface TaskMigration extends Migration {
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.model.migration;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Multimap;
+import com.quandoo.lib.elasticsearchmigration.service.DocumentTransformer;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Copies the documents of {@link #sourceIndex} matching {@link #query} through a {@link DocumentTransformer} into
+ * {@link #destIndex}. Unlike {@link ReindexMigration} the documents pass through the client: they are read with sliced
+ * scrolls, transformed on a worker pool and written with <code>_bulk</code> requests. The <code>refresh</code>
+ * parameter only applies once after the last request.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+public class TransformMigration implements Migration {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_CONCURRENCY = 2;
+
+    @NonNull
+    private final String sourceIndex;
+    @NonNull
+    private final String destIndex;
+    @NonNull
+    private final Optional<String> query;
+    @NonNull
+    private final DocumentTransformer transformer;
+    /**
+     * Number of parallel scrolls. Defaults to the number of shards of the source.
+     */
+    @NonNull
+    private final Optional<Integer> slices;
+    /**
+     * Documents per scroll page and per <code>_bulk</code> request.
+     */
+    @NonNull
+    private final Integer batchSize;
+    /**
+     * Maximum number of <code>_bulk</code> requests in flight at the same time.
+     */
+    @NonNull
+    private final Integer concurrency;
+
+    @Override
+    public Method getMethod() {
+        return Method.POST;
+    }
+
+    @Override
+    public String getUrl() {
+        return "/" + destIndex + "/_bulk";
+    }
+
+    @Override
+    public Map<String, String> getParameters() {
+        return ImmutableMap.of(
+                "refresh", "true"
+        );
+    }
+
+    @Override
+    public Multimap<String, String> getHeaders() {
+        return HashMultimap.create();
+    }
+
+    /**
+     * The body is produced page by page from the source index.
+     */
+    @Override
+    public String getBody() {
+        return "";
+    }
+}
@@ -23,6 +23,7 @@ import lombok.EqualsAndHashCode;
 import lombok.NonNull;
 
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * @author Emir Dizdarevic
@@ -30,7 +31,7 @@ import java.util.Map;
  */
 @EqualsAndHashCode
 @AllArgsConstructor
-public class UpdateDocumentMigration implements Migration {
+public class UpdateDocumentMigration implements DocumentMigration {
 
     @NonNull
     private final String index;
@@ -65,4 +66,24 @@ public class UpdateDocumentMigration implements Migration {
     public String getBody() {
         return definition;
     }
+
+    @Override
+    public String getIndex() {
+        return index;
+    }
+
+    @Override
+    public Optional<String> getDocumentId() {
+        return Optional.of(id);
+    }
+
+    @Override
+    public String getBulkAction() {
+        return "update";
+    }
+
+    @Override
+    public Optional<String> getBulkSource() {
+        return Optional.of(definition);
+    }
 }
@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service;
+
+import com.quandoo.lib.elasticsearchmigration.model.es.Document;
+
+import java.util.Optional;
+
+/**
+ * Rewrites documents in Java where a painless script is not enough, used by the <code>TRANSFORM</code> migration type.
+ * Implementations need a public no-argument constructor and are called concurrently from several threads.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@FunctionalInterface
+public interface DocumentTransformer {
+
+    /**
+     * @return the document to write into the destination index, empty to skip the document
+     */
+    Optional<Document> transform(Document document);
+}
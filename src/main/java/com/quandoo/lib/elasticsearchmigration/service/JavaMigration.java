@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service;
+
+import java.util.Optional;
+
+/**
+ * A migration written in Java for changes that can't be expressed as a yaml changeset. Implementations are discovered in
+ * the base package next to the yaml files, are named like them without the extension (e.g. <code>V1_2_0__backfill_prices</code>)
+ * and need a public no-argument constructor. They run under the migration lock and are recorded in the version index
+ * like any other version.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public interface JavaMigration {
+
+    void migrate(JavaMigrationContext context) throws Exception;
+
+    /**
+     * Checksum stored for the version. Defaults to the checksum of the class name, so changes of the code are not detected.
+     */
+    default Optional<String> getChecksum() {
+        return Optional.empty();
+    }
+}
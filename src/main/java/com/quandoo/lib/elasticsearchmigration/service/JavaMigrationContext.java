@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import org.elasticsearch.client.RestHighLevelClient;
+
+import java.util.concurrent.Executor;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Getter
+@AllArgsConstructor
+public class JavaMigrationContext {
+
+    /**
+     * Client used by the migration itself, it must not be closed.
+     */
+    @NonNull
+    private final RestHighLevelClient restHighLevelClient;
+    /**
+     * Worker pool sized by <code>workerParallelism</code> for compute heavy or parallel work.
+     */
+    @NonNull
+    private final Executor executor;
+}
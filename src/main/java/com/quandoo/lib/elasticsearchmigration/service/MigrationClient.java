@@ -15,8 +15,11 @@
  */
 package com.quandoo.lib.elasticsearchmigration.service;
 
+import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationResult;
 import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationSet;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @author Emir Dizdarevic
  * @since 1.0.0
@@ -24,4 +27,10 @@ import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationSet;
 public interface MigrationClient {
 
     void applyMigrationSet(MigrationSet migrationSet);
+
+    /**
+     * Non blocking variant of {@link #applyMigrationSet(MigrationSet)}. All requests are sent asynchronously and
+     * lock retries are scheduled instead of slept, so no thread is blocked while the migration runs.
+     */
+    CompletableFuture<MigrationResult> applyMigrationSetAsync(MigrationSet migrationSet);
 }
@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Joiner;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.model.migration.BulkLoadMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.BulkMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.CreateIndexMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.DocumentMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.Migration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.RefreshDeferringMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.ResourceAccess;
+import com.quandoo.lib.elasticsearchmigration.model.migration.ResourceType;
+import com.quandoo.lib.elasticsearchmigration.model.migration.TaskMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.TransformMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.UpdateIndexSettingsMigration;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Plans a bulk ingest version: the indices written by data changes (documents, bulk and task changes) get
+ * <code>number_of_replicas=0</code> and <code>refresh_interval=-1</code> while the version runs and their original settings
+ * are restored afterwards.
+ * <p>
+ * Indices that exist before the version are tuned up front. Indices created within the version are tuned right after
+ * their CREATE_INDEX and restored to the settings of its definition.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class BulkIngestPlanner {
+
+    static final String NUMBER_OF_REPLICAS = "number_of_replicas";
+    static final String REFRESH_INTERVAL = "refresh_interval";
+    static final String TUNED_SETTINGS = "{\"index\":{\"" + NUMBER_OF_REPLICAS + "\":0,\"" + REFRESH_INTERVAL + "\":\"-1\"}}";
+
+    private final MigrationResourceResolver migrationResourceResolver;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public BulkIngestPlanner(@NonNull final MigrationResourceResolver migrationResourceResolver) {
+        this.migrationResourceResolver = migrationResourceResolver;
+    }
+
+    public Plan plan(final List<Migration> migrations) {
+        final Set<String> targetIndices = new LinkedHashSet<>();
+        for (Migration migration : migrations) {
+            if (isDataMigration(migration)) {
+                migrationResourceResolver.resolve(migration).stream()
+                        .filter(e -> e.getType() == ResourceType.INDEX && e.isWrite() && !ResourceAccess.ANY.equals(e.getName()))
+                        .forEach(e -> targetIndices.add(e.getName()));
+            }
+        }
+
+        final List<Migration> planned = new ArrayList<>(migrations.size());
+        final Map<String, Map<String, String>> createdIndexSettings = new LinkedHashMap<>();
+        for (Migration migration : migrations) {
+            planned.add(migration);
+            if (migration instanceof CreateIndexMigration) {
+                final String index = migration.getUrl().substring(1);
+                if (targetIndices.contains(index)) {
+                    createdIndexSettings.put(index, readCreateIndexSettings(migration.getBody()));
+                    planned.add(createTuning(index));
+                }
+            }
+        }
+
+        final Set<String> existingIndices = targetIndices.stream()
+                .filter(e -> !createdIndexSettings.containsKey(e))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+
+        return new Plan(planned, existingIndices, createdIndexSettings);
+    }
+
+    public Migration createTuning(final String index) {
+        return new UpdateIndexSettingsMigration(index, TUNED_SETTINGS);
+    }
+
+    public Migration createTuning(final Set<String> indices) {
+        return createTuning(Joiner.on(",").join(indices));
+    }
+
+    /**
+     * Settings missing from the original are reset to their default.
+     */
+    public Migration createRestore(final String index, final Map<String, String> settings) {
+        final ObjectNode indexSettings = objectMapper.createObjectNode();
+        indexSettings.put(NUMBER_OF_REPLICAS, settings.get(NUMBER_OF_REPLICAS));
+        indexSettings.put(REFRESH_INTERVAL, settings.get(REFRESH_INTERVAL));
+
+        final ObjectNode body = objectMapper.createObjectNode();
+        body.set("index", indexSettings);
+        try {
+            return new UpdateIndexSettingsMigration(index, objectMapper.writeValueAsString(body));
+        } catch (JsonProcessingException e) {
+            throw new MigrationFailedException("Restoring settings of " + index + " failed", e);
+        }
+    }
+
+    /**
+     * Reads the response of <code>GET {indices}/_settings/index.number_of_replicas,index.refresh_interval</code>.
+     */
+    public Map<String, Map<String, String>> parseSettings(final String response) {
+        final Map<String, Map<String, String>> result = new LinkedHashMap<>();
+        try {
+            final Iterator<Map.Entry<String, JsonNode>> indices = objectMapper.readTree(response).fields();
+            while (indices.hasNext()) {
+                final Map.Entry<String, JsonNode> index = indices.next();
+                result.put(index.getKey(), toSettings(index.getValue().path("settings")));
+            }
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+
+        return result;
+    }
+
+    /**
+     * Settings the definition leaves out are not recorded, restoring them resets them to their default.
+     */
+    private Map<String, String> readCreateIndexSettings(final String definition) {
+        try {
+            return toSettings(objectMapper.readTree(definition).path("settings"));
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    /**
+     * Accepts the nested (<code>{"index": {"number_of_replicas": 1}}</code>), the flat
+     * (<code>{"index.number_of_replicas": 1}</code>) and the short (<code>{"number_of_replicas": 1}</code>) form.
+     */
+    private Map<String, String> toSettings(final JsonNode settings) {
+        final Map<String, String> result = new HashMap<>();
+        for (String name : new String[]{NUMBER_OF_REPLICAS, REFRESH_INTERVAL}) {
+            for (JsonNode value : new JsonNode[]{settings.path("index").path(name), settings.path("index." + name), settings.path(name)}) {
+                if (value.isValueNode() && !value.isNull()) {
+                    result.put(name, value.asText());
+                    break;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private boolean isDataMigration(final Migration migration) {
+        final Migration unwrapped = RefreshDeferringMigration.unwrap(migration);
+        return unwrapped instanceof DocumentMigration || unwrapped instanceof BulkMigration || unwrapped instanceof BulkLoadMigration
+                || unwrapped instanceof TransformMigration || unwrapped instanceof TaskMigration;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Plan {
+        private final List<Migration> migrations;
+        private final Set<String> existingIndices;
+        private final Map<String, Map<String, String>> createdIndexSettings;
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.model.migration.BulkLoadMigration;
+import com.quandoo.lib.elasticsearchmigration.util.FutureUtils;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestClient;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Streams the resource of a {@link BulkLoadMigration} into <code>_bulk</code> requests. At most
+ * {@link BulkLoadMigration#getConcurrency()} chunks are in flight, reading blocks until one of them completes,
+ * which bounds the memory used independently of the size of the resource.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Slf4j
+public class BulkLoader {
+
+    private static final String INDEX_ACTION = "{\"index\":{}}";
+
+    private final RestClient restClient;
+    private final long chunkSizeInBytes;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public BulkLoader(@NonNull final RestClient restClient, final long chunkSizeInBytes) {
+        this.restClient = restClient;
+        this.chunkSizeInBytes = chunkSizeInBytes;
+    }
+
+    /**
+     * Reading the resource blocks, so the load runs on a separate thread.
+     */
+    public CompletableFuture<Void> loadAsync(final BulkLoadMigration migration, final boolean refresh) {
+        return FutureUtils.runBlocking(() -> load(migration, refresh));
+    }
+
+    public void load(final BulkLoadMigration migration, final boolean refresh) {
+        final BulkWriter bulkWriter = new BulkWriter(restClient, migration.getConcurrency());
+        final AtomicLong documents = new AtomicLong();
+
+        try {
+            readChunks(migration, chunk -> {
+                try {
+                    bulkWriter.submit(migration.getUrl(), chunk.getBody().toString(), i -> "line " + chunk.getLineNumbers().get(i) + " of " + migration.getResource());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    bulkWriter.fail(new MigrationFailedException("Interrupted while loading " + migration.getResource(), e));
+                    return false;
+                }
+
+                documents.addAndGet(chunk.getLineNumbers().size());
+                return !bulkWriter.isFailed();
+            });
+        } catch (IOException e) {
+            bulkWriter.fail(new MigrationFailedException("Reading " + migration.getResource() + " failed", e));
+        } catch (MigrationFailedException e) {
+            bulkWriter.fail(e);
+        }
+
+        // Chunks still in flight have to complete before the outcome is known
+        bulkWriter.awaitCompletion();
+        if (refresh) {
+            refresh(migration.getIndex());
+        }
+        log.info("Loaded {} documents from {} into {}", documents.get(), migration.getResource(), migration.getIndex());
+    }
+
+    /**
+     * Passes the resource chunk by chunk to the consumer until it returns <code>false</code> or the resource is exhausted.
+     * Blank lines are skipped.
+     */
+    void readChunks(final BulkLoadMigration migration, final Predicate<Chunk> consumer) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(migration.openStream(), Charsets.UTF_8))) {
+            Chunk chunk = new Chunk();
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+
+                chunk.add(lineNumber, createAction(migration, line, lineNumber), line);
+                if (chunk.getLineNumbers().size() >= migration.getChunkSize() || chunk.getBody().length() >= chunkSizeInBytes) {
+                    if (!consumer.test(chunk)) {
+                        return;
+                    }
+                    chunk = new Chunk();
+                }
+            }
+
+            if (!chunk.getLineNumbers().isEmpty()) {
+                consumer.test(chunk);
+            }
+        }
+    }
+
+    private String createAction(final BulkLoadMigration migration, final String line, final int lineNumber) {
+        if (!migration.getIdField().isPresent()) {
+            return INDEX_ACTION;
+        }
+
+        try {
+            final JsonNode id = objectMapper.readTree(line).path(migration.getIdField().get());
+            if (!id.isValueNode() || id.isNull()) {
+                throw new MigrationFailedException("Line " + lineNumber + " of " + migration.getResource() + " has no " + migration.getIdField().get());
+            }
+
+            final JsonNode action = objectMapper.createObjectNode().set("index", objectMapper.createObjectNode().put("_id", id.asText()));
+            return objectMapper.writeValueAsString(action);
+        } catch (IOException e) {
+            throw new MigrationFailedException("Line " + lineNumber + " of " + migration.getResource() + " is not valid JSON", e);
+        }
+    }
+
+    private void refresh(final String index) {
+        try {
+            restClient.performRequest(new Request("POST", "/" + index + "/_refresh"));
+        } catch (ResponseException e) {
+            throw new MigrationFailedException("Error refreshing " + index, e);
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    @Getter
+    static class Chunk {
+        private final List<Integer> lineNumbers = new ArrayList<>();
+        private final StringBuilder body = new StringBuilder();
+
+        private void add(final int lineNumber, final String action, final String source) {
+            lineNumbers.add(lineNumber);
+            body.append(action).append('\n').append(source).append('\n');
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.quandoo.lib.elasticsearchmigration.model.migration.BulkMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.DocumentMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.Migration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Merges runs of consecutive document migrations into {@link BulkMigration}s bounded by item count and size.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class BulkMigrationCoalescer {
+
+    // Rough size of the action line of a bulk item
+    private static final int ACTION_LINE_SIZE = 100;
+
+    private final int bulkSize;
+    private final long bulkSizeInBytes;
+
+    public BulkMigrationCoalescer(final int bulkSize, final long bulkSizeInBytes) {
+        checkArgument(bulkSize > 0, "bulkSize must be greater than 0");
+        checkArgument(bulkSizeInBytes > 0, "bulkSizeInBytes must be greater than 0");
+        this.bulkSize = bulkSize;
+        this.bulkSizeInBytes = bulkSizeInBytes;
+    }
+
+    public List<Migration> coalesce(final List<Migration> migrations) {
+        if (bulkSize == 1) {
+            return migrations;
+        }
+
+        final List<Migration> result = new ArrayList<>(migrations.size());
+        final List<DocumentMigration> batch = new ArrayList<>();
+        int batchStart = 0;
+        long batchSizeInBytes = 0;
+        for (int i = 0; i < migrations.size(); i++) {
+            final Migration migration = migrations.get(i);
+            if (!isBulkable(migration)) {
+                flush(result, batch, batchStart);
+                result.add(migration);
+                batchSizeInBytes = 0;
+                continue;
+            }
+
+            final long size = ACTION_LINE_SIZE + migration.getBody().length();
+            if (!batch.isEmpty() && (batch.size() >= bulkSize || batchSizeInBytes + size > bulkSizeInBytes)) {
+                flush(result, batch, batchStart);
+                batchSizeInBytes = 0;
+            }
+            if (batch.isEmpty()) {
+                batchStart = i;
+            }
+
+            batch.add((DocumentMigration) migration);
+            batchSizeInBytes += size;
+        }
+        flush(result, batch, batchStart);
+
+        return result;
+    }
+
+    private boolean isBulkable(final Migration migration) {
+        return migration instanceof DocumentMigration && ((DocumentMigration) migration).isBulkable();
+    }
+
+    private void flush(final List<Migration> result, final List<DocumentMigration> batch, final int batchStart) {
+        if (batch.size() == 1) {
+            result.add(batch.get(0));
+        } else if (batch.size() > 1) {
+            result.add(new BulkMigration(new ArrayList<>(batch), batchStart));
+        }
+        batch.clear();
+    }
+}
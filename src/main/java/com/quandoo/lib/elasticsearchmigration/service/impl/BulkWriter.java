@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.util.FutureUtils;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+
+/**
+ * Sends <code>_bulk</code> requests with at most <code>concurrency</code> of them in flight. {@link #submit} blocks while
+ * all permits are taken, which pushes back on whoever produces the requests. The first failure is kept and reported by
+ * {@link #awaitCompletion()}.
+ * <p>
+ * Requests and items rejected with <code>429 Too Many Requests</code> are resent with exponential backoff, only the
+ * rejected items are part of the resent request. A request keeps its permit while it backs off. Bodies hold two lines per
+ * item, the action and the document.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Slf4j
+class BulkWriter {
+
+    static final int TOO_MANY_REQUESTS = 429;
+    static final int DEFAULT_MAX_RETRIES = 8;
+    static final long DEFAULT_INITIAL_BACKOFF_IN_MILLIS = 100;
+    static final long MAX_BACKOFF_IN_MILLIS = 30000;
+
+    private static final ContentType NDJSON = ContentType.create("application/x-ndjson", Charsets.UTF_8);
+    // Successful items are reduced to their status which keeps responses small
+    private static final String FILTER_PATH = "errors,items.*.status,items.*.error";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final RestClient restClient;
+    private final int concurrency;
+    private final int maxRetries;
+    private final long initialBackoffInMillis;
+    private final Semaphore inFlight;
+    private final AtomicReference<MigrationFailedException> failure = new AtomicReference<>();
+
+    BulkWriter(@NonNull final RestClient restClient, final int concurrency) {
+        this(restClient, concurrency, DEFAULT_MAX_RETRIES, DEFAULT_INITIAL_BACKOFF_IN_MILLIS);
+    }
+
+    BulkWriter(@NonNull final RestClient restClient, final int concurrency, final int maxRetries, final long initialBackoffInMillis) {
+        this.restClient = restClient;
+        this.concurrency = concurrency;
+        this.maxRetries = maxRetries;
+        this.initialBackoffInMillis = initialBackoffInMillis;
+        this.inFlight = new Semaphore(concurrency);
+    }
+
+    /**
+     * @param describeItem names the item at the given position of the body in failure messages, e.g. <code>line 3 of data.ndjson</code>
+     */
+    void submit(final String url, final String body, final IntFunction<String> describeItem) throws InterruptedException {
+        inFlight.acquire();
+        if (isFailed()) {
+            inFlight.release();
+            return;
+        }
+
+        send(url, body, describeItem, 0);
+    }
+
+    private void send(final String url, final String body, final IntFunction<String> describeItem, final int attempt) {
+        final Request request = new Request("POST", url);
+        request.addParameter("filter_path", FILTER_PATH);
+        request.setEntity(new StringEntity(body, NDJSON));
+
+        restClient.performRequestAsync(request, new ResponseListener() {
+            @Override
+            public void onSuccess(final Response response) {
+                try {
+                    final List<Integer> rejected = verifyResponse(EntityUtils.toString(response.getEntity(), Charsets.UTF_8), describeItem);
+                    if (rejected.isEmpty()) {
+                        inFlight.release();
+                    } else if (attempt < maxRetries && !isFailed()) {
+                        retry(url, selectItems(body, rejected), i -> describeItem.apply(rejected.get(i)), attempt);
+                    } else {
+                        fail(new MigrationFailedException(StringUtils.capitalize(describeItem.apply(rejected.get(0))) + " was rejected with 429 after " + attempt + " retries"));
+                        inFlight.release();
+                    }
+                } catch (IOException e) {
+                    fail(new MigrationFailedException("Invalid bulk response", e));
+                    inFlight.release();
+                } catch (MigrationFailedException e) {
+                    fail(e);
+                    inFlight.release();
+                }
+            }
+
+            @Override
+            public void onFailure(final Exception exception) {
+                if (isTooManyRequests(exception) && attempt < maxRetries && !isFailed()) {
+                    retry(url, body, describeItem, attempt);
+                    return;
+                }
+                fail(new MigrationFailedException("Bulk request starting with " + describeItem.apply(0) + " failed", exception));
+                inFlight.release();
+            }
+        });
+    }
+
+    private void retry(final String url, final String body, final IntFunction<String> describeItem, final int attempt) {
+        final long backoffInMillis = getBackoffInMillis(attempt);
+        log.info("Bulk request starting with {} was rejected with 429. Retrying in {}ms", describeItem.apply(0), backoffInMillis);
+        FutureUtils.delay(backoffInMillis).thenRun(() -> send(url, body, describeItem, attempt + 1));
+    }
+
+    long getBackoffInMillis(final int attempt) {
+        return Math.min(initialBackoffInMillis << Math.min(attempt, 20), MAX_BACKOFF_IN_MILLIS);
+    }
+
+    boolean isFailed() {
+        return failure.get() != null;
+    }
+
+    void fail(final MigrationFailedException exception) {
+        failure.compareAndSet(null, exception);
+    }
+
+    /**
+     * Waits for the requests still in flight and rethrows the first failure.
+     */
+    void awaitCompletion() {
+        inFlight.acquireUninterruptibly(concurrency);
+        inFlight.release(concurrency);
+        if (isFailed()) {
+            throw failure.get();
+        }
+    }
+
+    /**
+     * <code>_bulk</code> responds with 200 even if single items failed, so the items have to be checked separately.
+     *
+     * @return positions of the items rejected with 429, which can be resent
+     */
+    static List<Integer> verifyResponse(final String responseBody, final IntFunction<String> describeItem) throws IOException {
+        final JsonNode response = OBJECT_MAPPER.readTree(responseBody);
+        if (!response.path("errors").asBoolean(false)) {
+            return Collections.emptyList();
+        }
+
+        final List<Integer> rejected = new ArrayList<>();
+        final JsonNode items = response.path("items");
+        for (int i = 0; i < items.size(); i++) {
+            final JsonNode item = items.get(i).elements().next();
+            if (item.path("status").asInt() == TOO_MANY_REQUESTS) {
+                rejected.add(i);
+            } else if (item.has("error")) {
+                throw new MigrationFailedException(
+                        StringUtils.capitalize(describeItem.apply(i)) + " failed",
+                        new MigrationFailedException(item.path("status").asText() + " " + item.path("error").toString())
+                );
+            }
+        }
+
+        return rejected;
+    }
+
+    /**
+     * @return the body holding only the items at the given positions
+     */
+    static String selectItems(final String body, final List<Integer> positions) {
+        final String[] lines = body.split("\n");
+        final StringBuilder selected = new StringBuilder();
+        for (int position : positions) {
+            selected.append(lines[position * 2]).append('\n').append(lines[position * 2 + 1]).append('\n');
+        }
+
+        return selected.toString();
+    }
+
+    private static boolean isTooManyRequests(final Exception exception) {
+        return exception instanceof ResponseException && ((ResponseException) exception).getResponse().getStatusLine().getStatusCode() == TOO_MANY_REQUESTS;
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Lists the resources below a base package without scanning the whole classpath. Only the locations the class loader
+ * returns for the package path are visited: directories are walked, jars are opened as zip file system and jars
+ * nested in a jar, e.g. in fat jars, are read entry by entry.
+ * <p>
+ * Resources are returned relative to the classpath root, like Reflections returns them.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class ClassLoaderResourceScanner {
+
+    private static final String JAR_SEPARATOR = "!/";
+
+    private final ClassLoader classLoader;
+
+    public ClassLoaderResourceScanner(@NonNull final ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    public Set<String> scan(@NonNull final String basePackage) {
+        final String basePath = basePackage.replace('.', '/');
+        final Set<String> resources = new TreeSet<>();
+        try {
+            final Enumeration<URL> urls = classLoader.getResources(basePath);
+            while (urls.hasMoreElements()) {
+                final URL url = urls.nextElement();
+                if ("file".equals(url.getProtocol())) {
+                    resources.addAll(walk(Paths.get(url.toURI()), basePath));
+                } else if ("jar".equals(url.getProtocol())) {
+                    resources.addAll(scanJar(url.toString(), basePath));
+                } else {
+                    throw new IllegalStateException("Cannot list migrations at " + url + ". Use Reflections to discover them");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list migrations of " + basePackage, e);
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException("Failed to list migrations of " + basePackage, e);
+        }
+
+        return resources;
+    }
+
+    /**
+     * @param url e.g. <code>jar:file:/app.jar!/BOOT-INF/classes!/es/migration</code> or <code>jar:file:/app.jar!/BOOT-INF/lib/migrations.jar!/es/migration</code>
+     */
+    private Set<String> scanJar(final String url, final String basePath) throws IOException {
+        final String[] parts = url.split(JAR_SEPARATOR);
+        final URI jarUri = URI.create(parts[0]);
+
+        FileSystem fileSystem;
+        boolean created = true;
+        try {
+            fileSystem = FileSystems.newFileSystem(jarUri, Collections.emptyMap());
+        } catch (FileSystemAlreadyExistsException e) {
+            fileSystem = FileSystems.getFileSystem(jarUri);
+            created = false;
+        }
+
+        try {
+            // A nested jar can't be opened as file system, its entries are read in one pass instead
+            if (parts.length > 2 && parts[1].endsWith(".jar")) {
+                try (InputStream inputStream = Files.newInputStream(fileSystem.getPath(parts[1]))) {
+                    return scanNestedJar(inputStream, basePath);
+                }
+            }
+
+            final String root = parts.length > 2 ? "/" + parts[1] : "/";
+            return walk(fileSystem.getPath(root).resolve(basePath), basePath);
+        } finally {
+            if (created) {
+                fileSystem.close();
+            }
+        }
+    }
+
+    private Set<String> scanNestedJar(final InputStream inputStream, final String basePath) throws IOException {
+        final Set<String> resources = new TreeSet<>();
+        try (JarInputStream jarInputStream = new JarInputStream(inputStream)) {
+            JarEntry entry;
+            while ((entry = jarInputStream.getNextJarEntry()) != null) {
+                if (!entry.isDirectory() && entry.getName().startsWith(basePath + "/")) {
+                    resources.add(entry.getName());
+                }
+            }
+        }
+        return resources;
+    }
+
+    private Set<String> walk(final Path directory, final String basePath) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return Collections.emptySet();
+        }
+
+        try (Stream<Path> paths = Files.walk(directory)) {
+            final List<Path> files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+            final Set<String> resources = new TreeSet<>();
+            for (Path file : files) {
+                final StringBuilder resource = new StringBuilder(basePath);
+                for (Path element : directory.relativize(file)) {
+                    resource.append('/').append(element.toString());
+                }
+                resources.add(resource.toString());
+            }
+            return resources;
+        }
+    }
+}
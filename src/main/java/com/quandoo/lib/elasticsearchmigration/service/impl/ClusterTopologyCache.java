@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers what was learned about the cluster for a limited time: whether the migration indices are in place and the
+ * number of nodes. Within the TTL repeated runs skip the probes, afterwards they are repeated in case the cluster changed.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class ClusterTopologyCache {
+
+    private final long ttlInMillis;
+    private final LongSupplier clock;
+
+    private volatile long bootstrappedAt = Long.MIN_VALUE;
+    private volatile Integer numberOfNodes;
+    private volatile long numberOfNodesFetchedAt = Long.MIN_VALUE;
+
+    public ClusterTopologyCache(final long ttlInMillis) {
+        this(ttlInMillis, System::currentTimeMillis);
+    }
+
+    ClusterTopologyCache(final long ttlInMillis, final LongSupplier clock) {
+        this.ttlInMillis = ttlInMillis;
+        this.clock = clock;
+    }
+
+    public boolean isBootstrapped() {
+        return isFresh(bootstrappedAt);
+    }
+
+    public void bootstrapped() {
+        bootstrappedAt = clock.getAsLong();
+    }
+
+    public Optional<Integer> getNumberOfNodes() {
+        return isFresh(numberOfNodesFetchedAt) ? Optional.ofNullable(numberOfNodes) : Optional.empty();
+    }
+
+    public void setNumberOfNodes(final int numberOfNodes) {
+        this.numberOfNodes = numberOfNodes;
+        this.numberOfNodesFetchedAt = clock.getAsLong();
+    }
+
+    private boolean isFresh(final long timestamp) {
+        return timestamp != Long.MIN_VALUE && clock.getAsLong() - timestamp < ttlInMillis;
+    }
+}
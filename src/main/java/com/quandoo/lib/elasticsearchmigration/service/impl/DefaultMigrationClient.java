@@ -18,63 +18,94 @@ package com.quandoo.lib.elasticsearchmigration.service.impl;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.io.Resources;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.quandoo.lib.elasticsearchmigration.ExecutionConfig;
 import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
 import com.quandoo.lib.elasticsearchmigration.exception.MigrationLockedException;
 import com.quandoo.lib.elasticsearchmigration.exception.PreviousMigrationFailedException;
-import com.quandoo.lib.elasticsearchmigration.model.es.LockEntry;
+import com.quandoo.lib.elasticsearchmigration.model.es.FingerprintEntry;
 import com.quandoo.lib.elasticsearchmigration.model.es.LockEntryMeta;
 import com.quandoo.lib.elasticsearchmigration.model.es.MigrationEntry;
 import com.quandoo.lib.elasticsearchmigration.model.es.MigrationEntryMeta;
 import com.quandoo.lib.elasticsearchmigration.model.es.State;
+import com.quandoo.lib.elasticsearchmigration.model.migration.AliasSwapMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.BulkLoadMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.BulkMigration;
 import com.quandoo.lib.elasticsearchmigration.model.migration.CreateIndexMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.DeleteIndexMigration;
 import com.quandoo.lib.elasticsearchmigration.model.migration.IndexDocumentMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.JavaCodeMigration;
 import com.quandoo.lib.elasticsearchmigration.model.migration.Migration;
 import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationMeta;
+import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationResult;
 import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationSet;
 import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationSetEntry;
 import com.quandoo.lib.elasticsearchmigration.model.migration.OpType;
+import com.quandoo.lib.elasticsearchmigration.model.migration.RefreshDeferringMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.RefreshMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.RefreshPolicy;
+import com.quandoo.lib.elasticsearchmigration.model.migration.TaskMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.TransformMigration;
 import com.quandoo.lib.elasticsearchmigration.model.migration.UpdateDocumentMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.UpdateMappingMigration;
+import com.quandoo.lib.elasticsearchmigration.service.JavaMigrationContext;
 import com.quandoo.lib.elasticsearchmigration.service.MigrationClient;
 import com.jayway.jsonpath.JsonPath;
+import com.quandoo.lib.elasticsearchmigration.util.FutureUtils;
 import com.quandoo.lib.elasticsearchmigration.util.VersionComparator;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
 import org.elasticsearch.ElasticsearchStatusException;
 import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.index.IndexRequest;
-import org.elasticsearch.action.search.SearchRequest;
-import org.elasticsearch.action.search.SearchResponse;
-import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.client.*;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentType;
-import org.elasticsearch.index.query.QueryBuilder;
-import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.rest.RestStatus;
-import org.elasticsearch.search.SearchHits;
-import org.elasticsearch.search.builder.SearchSourceBuilder;
 
 import java.io.IOException;
 import java.time.Instant;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -86,15 +117,28 @@ import java.util.stream.Collectors;
 public class DefaultMigrationClient implements MigrationClient {
 
     private static final String WAIT_FOR_ACTIVE_SHARDS_FIELD = "wait_for_active_shards";
+    private static final long WORKER_KEEP_ALIVE_IN_SECONDS = 60L;
     private static final Pattern VERSION_REGEX_PATTERN = Pattern.compile("^((?:\\d+\\.)*\\d)$");
+    private static final String PENDING_DELETES_SCRIPT =
+            "if (ctx._source." + MigrationEntryMeta.PENDING_DELETES_FIELD + " == null) { ctx._source." + MigrationEntryMeta.PENDING_DELETES_FIELD + " = new ArrayList(); } " +
+            "for (String index : params.indices) { if (!ctx._source." + MigrationEntryMeta.PENDING_DELETES_FIELD + ".contains(index)) { ctx._source." + MigrationEntryMeta.PENDING_DELETES_FIELD + ".add(index); } } " +
+            "if (ctx._source." + MigrationEntryMeta.PENDING_DELETES_DUE_FIELD + " == null || ctx._source." + MigrationEntryMeta.PENDING_DELETES_DUE_FIELD + " < params.due) { ctx._source." + MigrationEntryMeta.PENDING_DELETES_DUE_FIELD + " = params.due; }";
 
     static final String ELASTICSEARCH_MIGRATION_LOCK_INDEX;
     static final String ELASTICSEARCH_MIGRATION_VERSION_INDEX;
+    static final String ELASTICSEARCH_MIGRATION_VERSION_MAPPING;
+    static final String ELASTICSEARCH_MIGRATION_LOCK_MAPPING;
+    private static final Set<String> ELASTICSEARCH_MIGRATION_LOCK_MAPPING_FIELDS;
+    private static final Set<String> ELASTICSEARCH_MIGRATION_VERSION_MAPPING_FIELDS;
 
     static {
         try {
             ELASTICSEARCH_MIGRATION_LOCK_INDEX = Resources.toString(Resources.getResource(DefaultMigrationClient.class, "/schema/es/elasticsearch_migration_lock.json"), Charsets.UTF_8);
             ELASTICSEARCH_MIGRATION_VERSION_INDEX = Resources.toString(Resources.getResource(DefaultMigrationClient.class, "/schema/es/elasticsearch_migration_version.json"), Charsets.UTF_8);
+            ELASTICSEARCH_MIGRATION_VERSION_MAPPING = Resources.toString(Resources.getResource(DefaultMigrationClient.class, "/schema/es/elasticsearch_migration_version_mapping.json"), Charsets.UTF_8);
+            ELASTICSEARCH_MIGRATION_VERSION_MAPPING_FIELDS = ImmutableSet.copyOf(JsonPath.<Map<String, Object>>read(ELASTICSEARCH_MIGRATION_VERSION_MAPPING, "$.properties").keySet());
+            ELASTICSEARCH_MIGRATION_LOCK_MAPPING = Resources.toString(Resources.getResource(DefaultMigrationClient.class, "/schema/es/elasticsearch_migration_lock_mapping.json"), Charsets.UTF_8);
+            ELASTICSEARCH_MIGRATION_LOCK_MAPPING_FIELDS = ImmutableSet.copyOf(JsonPath.<Map<String, Object>>read(ELASTICSEARCH_MIGRATION_LOCK_MAPPING, "$.properties").keySet());
         } catch (IOException e) {
             throw new IllegalStateException("Failed to load index files", e);
         }
@@ -105,34 +149,178 @@ public class DefaultMigrationClient implements MigrationClient {
     private final Boolean ignorePreviousFailures;
     private final Integer backoffPeriodInMillis;
     private final Integer retryCount;
+    private final ExecutionConfig executionConfig;
     private final ObjectMapper objectMapper;
+    private final MigrationResourceResolver migrationResourceResolver;
+    private final DependencyGraphExecutor versionExecutor;
+    private final BulkMigrationCoalescer bulkMigrationCoalescer;
+    private final DeferredRefreshPlanner deferredRefreshPlanner;
+    private final BulkIngestPlanner bulkIngestPlanner;
+    private final TaskTracker taskTracker;
+    private final BulkLoader bulkLoader;
+    private final DocumentTransformPipeline documentTransformPipeline;
+    private final JavaMigrationContext javaMigrationContext;
+    private final MigrationSetFingerprinter migrationSetFingerprinter;
+    private final ClusterTopologyCache clusterTopologyCache;
+    private final LeaseLock leaseLock;
+    private final MigrationHistoryLoader migrationHistoryLoader;
+    private final HistorySnapshot historySnapshot;
+    private final LockWaiter lockWaiter;
 
-    private Integer numberOfNodesInCluster;
-    private boolean init = false;
-    private final AtomicInteger currentTry = new AtomicInteger(0);
 
     public DefaultMigrationClient(@NonNull final String identifier,
                                   @NonNull final RestHighLevelClient restHighLevelClient,
                                   @NonNull final Boolean ignorePreviousFailures,
                                   @NonNull final Integer backoffPeriodInMillis,
                                   @NonNull final Integer retryCount) {
+        this(identifier, restHighLevelClient, ignorePreviousFailures, backoffPeriodInMillis, retryCount, ExecutionConfig.defaults());
+    }
+
+    public DefaultMigrationClient(@NonNull final String identifier,
+                                  @NonNull final RestHighLevelClient restHighLevelClient,
+                                  @NonNull final Boolean ignorePreviousFailures,
+                                  @NonNull final Integer backoffPeriodInMillis,
+                                  @NonNull final Integer retryCount,
+                                  @NonNull final ExecutionConfig executionConfig) {
         this.identifier = identifier;
         this.restHighLevelClient = restHighLevelClient;
         this.ignorePreviousFailures = ignorePreviousFailures;
         this.backoffPeriodInMillis = backoffPeriodInMillis;
         this.retryCount = retryCount;
+        this.executionConfig = executionConfig;
         this.objectMapper = createObjectMapper();
+        this.migrationResourceResolver = new MigrationResourceResolver();
+        this.versionExecutor = new DependencyGraphExecutor(executionConfig.getVersionParallelism(), "es-migration-version-%d");
+        this.bulkMigrationCoalescer = new BulkMigrationCoalescer(executionConfig.getBulkSize(), executionConfig.getBulkSizeInBytes());
+        this.deferredRefreshPlanner = new DeferredRefreshPlanner(migrationResourceResolver);
+        this.bulkIngestPlanner = new BulkIngestPlanner(migrationResourceResolver);
+        this.taskTracker = new TaskTracker(
+                restHighLevelClient.getLowLevelClient(),
+                executionConfig.getTaskPollIntervalInMillis(),
+                executionConfig.getMaxTaskPollIntervalInMillis(),
+                executionConfig.getTaskProgressListener()
+        );
+        this.bulkLoader = new BulkLoader(restHighLevelClient.getLowLevelClient(), executionConfig.getBulkSizeInBytes());
+        // Idle workers time out, a client kept around after its migration doesn't hold on to its threads
+        final ThreadPoolExecutor workerExecutor = new ThreadPoolExecutor(
+                executionConfig.getWorkerParallelism(),
+                executionConfig.getWorkerParallelism(),
+                WORKER_KEEP_ALIVE_IN_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("es-migration-worker-%d").setDaemon(true).build()
+        );
+        workerExecutor.allowCoreThreadTimeOut(true);
+        this.documentTransformPipeline = new DocumentTransformPipeline(restHighLevelClient.getLowLevelClient(), workerExecutor);
+        this.javaMigrationContext = new JavaMigrationContext(restHighLevelClient, workerExecutor);
+        this.migrationSetFingerprinter = new MigrationSetFingerprinter();
+        this.clusterTopologyCache = new ClusterTopologyCache(executionConfig.getClusterTopologyTtlInMillis());
+        this.leaseLock = new LeaseLock(restHighLevelClient, objectMapper, identifier + "-global", executionConfig.getLockLeaseInMillis());
+        this.migrationHistoryLoader = new MigrationHistoryLoader(restHighLevelClient.getLowLevelClient(), objectMapper, identifier);
+        this.historySnapshot = new HistorySnapshot(restHighLevelClient, objectMapper, migrationHistoryLoader, identifier);
+        this.lockWaiter = new LockWaiter(
+                restHighLevelClient,
+                objectMapper,
+                identifier + "-global",
+                identifier + MigrationEntryMeta.FINGERPRINT_ID_SUFFIX,
+                executionConfig.getLockPollIntervalInMillis(),
+                executionConfig.getMaxLockPollIntervalInMillis()
+        );
+    }
+
+    private CompletableFuture<Void> initAsync() {
+        if (clusterTopologyCache.isBootstrapped()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        final CompletableFuture<Response> future = new CompletableFuture<>();
+        restHighLevelClient.getLowLevelClient().performRequestAsync(createMigrationIndexFieldsRequest(), FutureUtils.toResponseListener(future));
+        return future
+                .thenApply(this::toMigrationIndexFields)
+                .thenCompose(migrationIndexFields -> {
+                    CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+                    if (!migrationIndexFields.containsKey(LockEntryMeta.INDEX)) {
+                        chain = chain.thenCompose(ignored -> performRequestIgnoreExistingExceptionsAsync(new CreateIndexMigration(LockEntryMeta.INDEX, ELASTICSEARCH_MIGRATION_LOCK_INDEX)));
+                    } else if (!migrationIndexFields.get(LockEntryMeta.INDEX).containsAll(ELASTICSEARCH_MIGRATION_LOCK_MAPPING_FIELDS)) {
+                        chain = chain.thenCompose(ignored -> performRequestAsync(createLockMappingUpdate()).thenApply(response -> null));
+                    }
+                    if (!migrationIndexFields.containsKey(MigrationEntryMeta.INDEX)) {
+                        chain = chain.thenCompose(ignored -> performRequestIgnoreExistingExceptionsAsync(new CreateIndexMigration(MigrationEntryMeta.INDEX, ELASTICSEARCH_MIGRATION_VERSION_INDEX)));
+                    } else if (!migrationIndexFields.get(MigrationEntryMeta.INDEX).containsAll(ELASTICSEARCH_MIGRATION_VERSION_MAPPING_FIELDS)) {
+                        chain = chain.thenCompose(ignored -> performRequestAsync(createVersionMappingUpdate()).thenApply(response -> null));
+                    }
+                    return chain;
+                })
+                .thenRun(clusterTopologyCache::bootstrapped);
     }
 
     private void init() {
-        if (!init) {
-            init = true;
-            numberOfNodesInCluster = getNumberOfNodesInCluster();
-            performRequestIgnoreExistingExceptions(new CreateIndexMigration(LockEntryMeta.INDEX, ELASTICSEARCH_MIGRATION_LOCK_INDEX));
-            performRequestIgnoreExistingExceptions(new CreateIndexMigration(MigrationEntryMeta.INDEX, ELASTICSEARCH_MIGRATION_VERSION_INDEX));
+        if (!clusterTopologyCache.isBootstrapped()) {
+            final Map<String, Set<String>> migrationIndexFields = getMigrationIndexFields();
+            if (!migrationIndexFields.containsKey(LockEntryMeta.INDEX)) {
+                performRequestIgnoreExistingExceptions(new CreateIndexMigration(LockEntryMeta.INDEX, ELASTICSEARCH_MIGRATION_LOCK_INDEX));
+            } else if (!migrationIndexFields.get(LockEntryMeta.INDEX).containsAll(ELASTICSEARCH_MIGRATION_LOCK_MAPPING_FIELDS)) {
+                performRequest(createLockMappingUpdate());
+            }
+            if (!migrationIndexFields.containsKey(MigrationEntryMeta.INDEX)) {
+                performRequestIgnoreExistingExceptions(new CreateIndexMigration(MigrationEntryMeta.INDEX, ELASTICSEARCH_MIGRATION_VERSION_INDEX));
+            } else if (!migrationIndexFields.get(MigrationEntryMeta.INDEX).containsAll(ELASTICSEARCH_MIGRATION_VERSION_MAPPING_FIELDS)) {
+                performRequest(createVersionMappingUpdate());
+            }
+            clusterTopologyCache.bootstrapped();
+        }
+    }
+
+    private Map<String, Set<String>> getMigrationIndexFields() {
+        try {
+            return toMigrationIndexFields(restHighLevelClient.getLowLevelClient().performRequest(createMigrationIndexFieldsRequest()));
+        } catch (ResponseException e) {
+            throw new MigrationFailedException("Error performing migration", e);
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    /**
+     * One request telling which of the migration indices exist and which fields they map. Missing indices are left out
+     * of the response instead of failing it.
+     */
+    private Request createMigrationIndexFieldsRequest() {
+        final Request request = new Request("GET", "/" + LockEntryMeta.INDEX + "," + MigrationEntryMeta.INDEX + "/_mapping");
+        request.addParameter("ignore_unavailable", "true");
+        request.addParameter("allow_no_indices", "true");
+        request.addParameter("filter_path", "*.mappings.properties.*.type");
+        return request;
+    }
+
+    private Map<String, Set<String>> toMigrationIndexFields(final Response response) {
+        try {
+            final JsonNode root = objectMapper.readTree(response.getEntity().getContent());
+            final Map<String, Set<String>> migrationIndexFields = new HashMap<>();
+            root.fields().forEachRemaining(index -> migrationIndexFields.put(
+                    index.getKey(),
+                    ImmutableSet.copyOf(index.getValue().path("mappings").path("properties").fieldNames())
+            ));
+            return migrationIndexFields;
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
         }
     }
 
+    /**
+     * Adds the fields introduced after 1.0.0 to version indices created by older releases.
+     */
+    private Migration createVersionMappingUpdate() {
+        return new UpdateMappingMigration(ImmutableSet.of(MigrationEntryMeta.INDEX), ELASTICSEARCH_MIGRATION_VERSION_MAPPING);
+    }
+
+    /**
+     * Adds the lease fields to lock indices created by older releases.
+     */
+    private Migration createLockMappingUpdate() {
+        return new UpdateMappingMigration(ImmutableSet.of(LockEntryMeta.INDEX), ELASTICSEARCH_MIGRATION_LOCK_MAPPING);
+    }
+
     private ObjectMapper createObjectMapper() {
         final ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
@@ -152,56 +340,819 @@ public class DefaultMigrationClient implements MigrationClient {
 
     @Override
     public void applyMigrationSet(final MigrationSet migrationSet) {
+        final String fingerprint = fingerprint(migrationSet);
+        if (isUpToDate(fingerprint, getFingerprint())) {
+            return;
+        }
+
+        init();
+
+        final long deadlineInMillis = getLockWaitDeadlineInMillis();
+        while (true) {
+            try {
+                applyPendingMigrations(migrationSet, fingerprint);
+                return;
+            } catch (MigrationLockedException e) {
+                log.info("Migration locked. Waiting for the lock holder");
+                if (lockWaiter.await(fingerprint, deadlineInMillis, e) == LockWaiter.Outcome.COMPLETED) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void applyPendingMigrations(final MigrationSet migrationSet, final String fingerprint) {
+        performUnderGlobalLock(lease -> {
+            final List<MigrationEntry> allMigrations = getAllMigrations(migrationSet);
+            final List<MigrationSetEntry> pendingMigrationSetEntries = getPendingMigrationSetEntries(migrationSet, allMigrations);
+            final Map<String, MigrationEntry> unfinishedMigrationEntries = getUnfinishedMigrationEntries(allMigrations);
+            if (!pendingMigrationSetEntries.isEmpty()) {
+                deleteFingerprint();
+            }
+            if (executionConfig.getVersionParallelism() > 1) {
+                applyMigrationSetEntriesInParallel(pendingMigrationSetEntries, unfinishedMigrationEntries, lease);
+            } else {
+                pendingMigrationSetEntries.forEach(e -> applyMigrationSetEntry(e, Optional.ofNullable(unfinishedMigrationEntries.get(e.getMigrationMeta().getVersion())), lease));
+            }
+            final boolean deletesPending = deleteDueIndices(lease);
+            if (isFingerprintable(allMigrations) && !deletesPending) {
+                lease.checkHeld();
+                storeFingerprint(fingerprint);
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * Applies versions and their changes one after another, {@link ExecutionConfig#getParallelism()} and
+     * {@link ExecutionConfig#getVersionParallelism()} only apply to {@link #applyMigrationSet(MigrationSet)}.
+     */
+    @Override
+    public CompletableFuture<MigrationResult> applyMigrationSetAsync(final MigrationSet migrationSet) {
+        if (executionConfig.getParallelism() > 1 || executionConfig.getVersionParallelism() > 1) {
+            log.warn("parallelism and versionParallelism are ignored by the asynchronous migration, versions and their changes are applied one after another");
+        }
+
+        final String fingerprint = fingerprint(migrationSet);
+        return getFingerprintAsync().thenCompose(storedFingerprint -> {
+            if (isUpToDate(fingerprint, storedFingerprint)) {
+                return CompletableFuture.completedFuture(new MigrationResult(identifier, Collections.emptyList()));
+            }
+
+            return initAsync().thenCompose(ignored -> applyMigrationSetAsync(migrationSet, fingerprint, getLockWaitDeadlineInMillis()));
+        });
+    }
+
+    private CompletableFuture<MigrationResult> applyMigrationSetAsync(final MigrationSet migrationSet, final String fingerprint, final long deadlineInMillis) {
+        return performUnderGlobalLockAsync(lease ->
+                getAllMigrationsAsync(migrationSet).thenCompose(allMigrations -> {
+                    final List<MigrationSetEntry> pendingMigrationSetEntries = getPendingMigrationSetEntries(migrationSet, allMigrations);
+                    final Map<String, MigrationEntry> unfinishedMigrationEntries = getUnfinishedMigrationEntries(allMigrations);
+
+                    CompletableFuture<Void> chain = pendingMigrationSetEntries.isEmpty() ? CompletableFuture.completedFuture(null) : deleteFingerprintAsync();
+                    for (MigrationSetEntry migrationSetEntry : pendingMigrationSetEntries) {
+                        final Optional<MigrationEntry> unfinishedMigrationEntry = Optional.ofNullable(unfinishedMigrationEntries.get(migrationSetEntry.getMigrationMeta().getVersion()));
+                        chain = chain.thenCompose(previous -> applyMigrationSetEntryAsync(migrationSetEntry, unfinishedMigrationEntry, lease));
+                    }
+                    chain = chain
+                            .thenCompose(previous -> deleteDueIndicesAsync(lease))
+                            .thenCompose(deletesPending -> {
+                                if (!isFingerprintable(allMigrations) || deletesPending) {
+                                    return CompletableFuture.<Void>completedFuture(null);
+                                }
+                                lease.checkHeld();
+                                return storeFingerprintAsync(fingerprint);
+                            });
+
+                    return chain.thenApply(previous -> new MigrationResult(
+                            identifier,
+                            pendingMigrationSetEntries.stream().map(e -> e.getMigrationMeta().getVersion()).collect(Collectors.toList())
+                    ));
+                })
+        ).handle((result, throwable) -> {
+            if (throwable == null) {
+                return CompletableFuture.completedFuture(result);
+            }
+
+            final Throwable cause = FutureUtils.unwrap(throwable);
+            if (cause instanceof MigrationLockedException) {
+                log.info("Migration locked. Waiting for the lock holder");
+                return lockWaiter.awaitAsync(fingerprint, deadlineInMillis, (MigrationLockedException) cause).thenCompose(outcome -> outcome == LockWaiter.Outcome.COMPLETED ?
+                        CompletableFuture.completedFuture(new MigrationResult(identifier, Collections.emptyList())) :
+                        applyMigrationSetAsync(migrationSet, fingerprint, deadlineInMillis));
+            }
+
+            return FutureUtils.<MigrationResult>failed(cause);
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Waiting for the lock is bounded by the time the former fixed backoff would have taken for all retries.
+     */
+    private long getLockWaitDeadlineInMillis() {
+        return System.currentTimeMillis() + (long) retryCount * backoffPeriodInMillis;
+    }
+
+    private String fingerprint(final MigrationSet migrationSet) {
+        return migrationSetFingerprinter.fingerprint(migrationSet.getMigrations().stream().map(MigrationSetEntry::getMigrationMeta).collect(Collectors.toList()));
+    }
+
+    private boolean isUpToDate(final String fingerprint, final Optional<String> storedFingerprint) {
+        if (storedFingerprint.isPresent() && storedFingerprint.get().equals(fingerprint)) {
+            log.info("Migration set of " + identifier + " matches the applied one. Nothing to do.");
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * The fingerprint short-cuts all checks, so it is only stored if the history holds nothing those checks would reject
+     * on the next run. Failures ignored via ignorePreviousFailures keep the full path, so do pending deletes of old indices.
+     */
+    private boolean isFingerprintable(final List<MigrationEntry> allMigrations) {
+        return allMigrations.stream().allMatch(e -> e.getState() == State.SUCCESS || e.isResumable() || e.isPending());
+    }
+
+    private Optional<String> getFingerprint() {
+        try {
+            return toFingerprint(restHighLevelClient.get(createFingerprintGetRequest(), RequestOptions.DEFAULT));
+        } catch (ElasticsearchStatusException e) {
+            if (e.status() == RestStatus.NOT_FOUND) {
+                return Optional.empty();
+            }
+            throw new MigrationFailedException("Error reading fingerprint", e);
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    private CompletableFuture<Optional<String>> getFingerprintAsync() {
+        final CompletableFuture<GetResponse> future = new CompletableFuture<>();
+        restHighLevelClient.getAsync(createFingerprintGetRequest(), RequestOptions.DEFAULT, FutureUtils.toActionListener(future));
+        return future.handle((response, throwable) -> {
+            if (throwable == null) {
+                return toFingerprint(response);
+            }
+
+            final Throwable cause = FutureUtils.unwrap(throwable);
+            if (cause instanceof ElasticsearchStatusException && ((ElasticsearchStatusException) cause).status() == RestStatus.NOT_FOUND) {
+                return Optional.empty();
+            }
+            throw new MigrationFailedException("Error reading fingerprint", cause);
+        });
+    }
+
+    private GetRequest createFingerprintGetRequest() {
+        // Realtime by default, no refresh needed
+        return new GetRequest(MigrationEntryMeta.INDEX, identifier + MigrationEntryMeta.FINGERPRINT_ID_SUFFIX);
+    }
+
+    private Optional<String> toFingerprint(final GetResponse response) {
+        return response.isExists() ?
+                Optional.ofNullable(transformSourceFromEs(response.getSourceAsString(), FingerprintEntry.class)).map(FingerprintEntry::getFingerprint) :
+                Optional.empty();
+    }
+
+    private void storeFingerprint(final String fingerprint) {
         try {
-            init();
-
-            performUnderGlobalLock(() -> {
-                refreshIndices(MigrationEntryMeta.INDEX);
-
-                final List<MigrationSetEntry> orderedMigrationSetEntries = Lists.newArrayList(migrationSet.getMigrations());
-                orderedMigrationSetEntries.sort(new VersionComparator<>(VERSION_REGEX_PATTERN, 1, ".", e -> e.getMigrationMeta().getVersion()));
-
-                final List<MigrationEntry> allMigrations = getAllMigrations();
-                log.info("Running checks...");
-                checkAllPreviousMigrationsAppliedSuccessfully(allMigrations);
-                checkForMetadataConflicts(allMigrations, orderedMigrationSetEntries.stream().map(e -> e.getMigrationMeta()).collect(Collectors.toList()));
-                log.info("Checks done");
-
-                final Set<String> appliedVersions = allMigrations.stream().map(e -> e.getVersion()).collect(Collectors.toSet());
-                for (MigrationSetEntry migrationSetEntry : orderedMigrationSetEntries) {
-                    log.info("Applying migration version " + migrationSetEntry.getMigrationMeta().getVersion());
-                    if (appliedVersions.contains(migrationSetEntry.getMigrationMeta().getVersion())) {
-                        log.info("Skipping migration. Already applied.");
-                    } else {
-                        try {
-                            insertNewMigrationEntry(migrationSetEntry);
-                            for (Migration migration : migrationSetEntry.getMigration()) {
-                                log.info("Applying change " + migration.getClass().getSimpleName());
-                                performRequest(migration);
+            restHighLevelClient.index(createFingerprintIndexRequest(fingerprint), RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    private CompletableFuture<Void> storeFingerprintAsync(final String fingerprint) {
+        final CompletableFuture<IndexResponse> future = new CompletableFuture<>();
+        try {
+            restHighLevelClient.indexAsync(createFingerprintIndexRequest(fingerprint), RequestOptions.DEFAULT, FutureUtils.toActionListener(future));
+        } catch (JsonProcessingException e) {
+            return FutureUtils.failed(new MigrationFailedException("Error storing fingerprint", e));
+        }
+        return future.thenApply(response -> null);
+    }
+
+    private IndexRequest createFingerprintIndexRequest(final String fingerprint) throws JsonProcessingException {
+        return new IndexRequest().index(MigrationEntryMeta.INDEX)
+                .id(identifier + MigrationEntryMeta.FINGERPRINT_ID_SUFFIX)
+                .source(objectMapper.writeValueAsString(new FingerprintEntry(fingerprint, Instant.now())), XContentType.JSON);
+    }
+
+    private void deleteFingerprint() {
+        try {
+            restHighLevelClient.delete(createFingerprintDeleteRequest(), RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    private CompletableFuture<Void> deleteFingerprintAsync() {
+        final CompletableFuture<DeleteResponse> future = new CompletableFuture<>();
+        restHighLevelClient.deleteAsync(createFingerprintDeleteRequest(), RequestOptions.DEFAULT, FutureUtils.toActionListener(future));
+        return future.thenApply(response -> null);
+    }
+
+    private DeleteRequest createFingerprintDeleteRequest() {
+        return new DeleteRequest().index(MigrationEntryMeta.INDEX).id(identifier + MigrationEntryMeta.FINGERPRINT_ID_SUFFIX);
+    }
+
+    private CompletableFuture<Void> applyMigrationSetEntryAsync(final MigrationSetEntry migrationSetEntry, final Optional<MigrationEntry> unfinishedMigrationEntry, final LeaseLock.Lease lease) {
+        final String version = migrationSetEntry.getMigrationMeta().getVersion();
+        final Optional<MigrationEntry> resumableMigrationEntry = unfinishedMigrationEntry.filter(MigrationEntry::isResumable);
+        final List<Migration> plannedMigrations = planMigrations(migrationSetEntry);
+        final Optional<BulkIngestPlanner.Plan> bulkIngestPlan = planBulkIngest(migrationSetEntry, plannedMigrations);
+        final List<Migration> migrations = bulkIngestPlan.map(BulkIngestPlanner.Plan::getMigrations).orElse(plannedMigrations);
+
+        final CompletableFuture<Void> started;
+        if (resumableMigrationEntry.isPresent()) {
+            started = CompletableFuture.completedFuture(null);
+        } else {
+            started = CompletableFuture.completedFuture(null).thenCompose(ignored -> {
+                lease.checkHeld();
+                log.info("Applying migration version " + version);
+                return unfinishedMigrationEntry.isPresent() ?
+                        updateMigrationEntryAsync(version, State.IN_PROGRESS, "") :
+                        insertNewMigrationEntryAsync(migrationSetEntry, State.IN_PROGRESS);
+            });
+        }
+
+        return started
+                .thenCompose(ignored -> bulkIngestPlan.isPresent() ?
+                        startBulkIngestAsync(version, bulkIngestPlan.get(), resumableMigrationEntry) :
+                        CompletableFuture.completedFuture(Collections.<String, Map<String, String>>emptyMap()))
+                .thenCompose(originalSettings -> applyChangesAsync(version, migrations, resumableMigrationEntry, lease)
+                        .handle((result, throwable) -> finishBulkIngestAsync(originalSettings).handle((restored, restoreThrowable) -> {
+                            if (throwable != null) {
+                                final Throwable cause = FutureUtils.unwrap(throwable);
+                                if (restoreThrowable != null) {
+                                    cause.addSuppressed(FutureUtils.unwrap(restoreThrowable));
+                                }
+                                throw new CompletionException(cause);
+                            } else if (restoreThrowable != null) {
+                                throw new CompletionException(FutureUtils.unwrap(restoreThrowable));
                             }
-                            updateMigrationEntry(migrationSetEntry.getMigrationMeta().getVersion(), State.SUCCESS, "");
-                        } catch (Exception e) {
-                            updateMigrationEntry(migrationSetEntry.getMigrationMeta().getVersion(), State.FAILURE, e.getCause().getMessage());
-                            throw new MigrationFailedException("Performing migration version " + migrationSetEntry.getMigrationMeta().getVersion() + " failed. Message: " + e.getCause().getMessage(), e);
-                        }
+                            return (Void) null;
+                        }))
+                        .thenCompose(Function.identity()))
+                .thenCompose(previous -> {
+                    lease.checkHeld();
+                    return updateMigrationEntryAsync(version, State.SUCCESS, "");
+                })
+                .handle((result, throwable) -> {
+                    if (throwable == null) {
+                        return CompletableFuture.<Void>completedFuture(null);
                     }
+
+                    final Throwable cause = FutureUtils.unwrap(throwable);
+                    if (lease.isLost()) {
+                        return FutureUtils.<Void>failed(createLostLeaseException(version, cause));
+                    }
+                    final String message = getFailureMessage(cause);
+                    return updateMigrationEntryAsync(version, State.FAILURE, message)
+                            .thenCompose(ignored -> FutureUtils.<Void>failed(new MigrationFailedException("Performing migration version " + version + " failed. Message: " + message, cause)));
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private CompletableFuture<Void> applyChangesAsync(final String version, final List<Migration> migrations, final Optional<MigrationEntry> resumableMigrationEntry, final LeaseLock.Lease lease) {
+        CompletableFuture<Void> chain;
+        final int firstChange;
+        if (resumableMigrationEntry.isPresent()) {
+            final MigrationEntry migrationEntry = resumableMigrationEntry.get();
+            firstChange = migrationEntry.getTaskChange() + 1;
+            chain = CompletableFuture.completedFuture(null).thenRun(() -> checkResumable(migrations, migrationEntry))
+                    .thenCompose(ignored -> taskTracker.awaitCompletionAsync(migrationEntry.getTaskId(), lease::checkHeld))
+                    .thenCompose(ignored -> {
+                        lease.checkHeld();
+                        return updateMigrationEntryTaskAsync(version, null, null);
+                    });
+        } else {
+            firstChange = 0;
+            chain = CompletableFuture.completedFuture(null);
+        }
+
+        for (int i = firstChange; i < migrations.size(); i++) {
+            final int position = i;
+            final Migration migration = migrations.get(i);
+            chain = chain.thenCompose(previous -> {
+                lease.checkHeld();
+                log.info("Applying change " + migration.getClass().getSimpleName());
+                return applyChangeAsync(version, position, migration, lease);
+            });
+        }
+
+        return chain;
+    }
+
+    private String getFailureMessage(final Throwable throwable) {
+        return throwable.getCause() != null ? throwable.getCause().getMessage() : throwable.getMessage();
+    }
+
+    private List<MigrationSetEntry> getPendingMigrationSetEntries(final MigrationSet migrationSet, final List<MigrationEntry> allMigrations) {
+        final List<MigrationSetEntry> orderedMigrationSetEntries = Lists.newArrayList(migrationSet.getMigrations());
+        orderedMigrationSetEntries.sort(new VersionComparator<>(VERSION_REGEX_PATTERN, 1, ".", e -> e.getMigrationMeta().getVersion()));
+
+        log.info("Running checks...");
+        checkAllPreviousMigrationsAppliedSuccessfully(allMigrations);
+        checkForMetadataConflicts(allMigrations, orderedMigrationSetEntries.stream().map(e -> e.getMigrationMeta()).collect(Collectors.toList()));
+        log.info("Checks done");
+
+        final Set<String> appliedVersions = allMigrations.stream().filter(e -> !e.isResumable() && !e.isPending()).map(e -> e.getVersion()).collect(Collectors.toSet());
+        final List<MigrationSetEntry> pendingMigrationSetEntries = new ArrayList<>();
+        for (MigrationSetEntry migrationSetEntry : orderedMigrationSetEntries) {
+            if (appliedVersions.contains(migrationSetEntry.getMigrationMeta().getVersion())) {
+                log.info("Skipping migration version " + migrationSetEntry.getMigrationMeta().getVersion() + ". Already applied.");
+            } else {
+                pendingMigrationSetEntries.add(migrationSetEntry);
+            }
+        }
+
+        return pendingMigrationSetEntries;
+    }
+
+    /**
+     * Entries of versions to continue: resumable ones attach to their task, pending ones were never started.
+     */
+    private Map<String, MigrationEntry> getUnfinishedMigrationEntries(final List<MigrationEntry> allMigrations) {
+        return allMigrations.stream().filter(e -> e.isResumable() || e.isPending()).collect(Collectors.toMap(MigrationEntry::getVersion, Function.identity()));
+    }
+
+    private void checkResumable(final List<Migration> migrations, final MigrationEntry migrationEntry) {
+        final int taskChange = migrationEntry.getTaskChange();
+        if (taskChange >= migrations.size() || !isTaskMigration(migrations.get(taskChange))) {
+            throw new MigrationFailedException("Cannot resume migration version " + migrationEntry.getVersion() + ". Change #" + taskChange + " is not a task");
+        }
+        log.info("Resuming migration version " + migrationEntry.getVersion() + " at task " + migrationEntry.getTaskId());
+    }
+
+    private void applyMigrationSetEntry(final MigrationSetEntry migrationSetEntry, final Optional<MigrationEntry> unfinishedMigrationEntry, final LeaseLock.Lease lease) {
+        final String version = migrationSetEntry.getMigrationMeta().getVersion();
+        final Optional<MigrationEntry> resumableMigrationEntry = unfinishedMigrationEntry.filter(MigrationEntry::isResumable);
+        try {
+            final List<Migration> plannedMigrations = planMigrations(migrationSetEntry);
+            final Optional<BulkIngestPlanner.Plan> bulkIngestPlan = planBulkIngest(migrationSetEntry, plannedMigrations);
+            final List<Migration> migrations = bulkIngestPlan.map(BulkIngestPlanner.Plan::getMigrations).orElse(plannedMigrations);
+            if (!resumableMigrationEntry.isPresent()) {
+                lease.checkHeld();
+                log.info("Applying migration version " + version);
+                if (unfinishedMigrationEntry.isPresent()) {
+                    updateMigrationEntry(version, State.IN_PROGRESS, "");
+                } else {
+                    insertNewMigrationEntry(migrationSetEntry, State.IN_PROGRESS);
                 }
+            }
+
+            final Map<String, Map<String, String>> originalSettings = bulkIngestPlan.isPresent() ?
+                    startBulkIngest(version, bulkIngestPlan.get(), resumableMigrationEntry) :
+                    Collections.emptyMap();
+            try {
+                if (resumableMigrationEntry.isPresent()) {
+                    final MigrationEntry migrationEntry = resumableMigrationEntry.get();
+                    checkResumable(migrations, migrationEntry);
+                    taskTracker.awaitCompletion(migrationEntry.getTaskId(), lease::checkHeld);
+                    lease.checkHeld();
+                    updateMigrationEntryTask(version, null, null);
+                    applyChanges(version, migrations, migrationEntry.getTaskChange() + 1, lease);
+                } else {
+                    applyChanges(version, migrations, 0, lease);
+                }
+            } catch (RuntimeException e) {
+                try {
+                    finishBulkIngest(originalSettings);
+                } catch (RuntimeException restoreException) {
+                    e.addSuppressed(restoreException);
+                }
+                throw e;
+            }
+            finishBulkIngest(originalSettings);
+
+            lease.checkHeld();
+            updateMigrationEntry(migrationSetEntry.getMigrationMeta().getVersion(), State.SUCCESS, "");
+        } catch (Exception e) {
+            if (lease.isLost()) {
+                throw createLostLeaseException(version, e);
+            }
+            updateMigrationEntry(migrationSetEntry.getMigrationMeta().getVersion(), State.FAILURE, getFailureMessage(e));
+            throw new MigrationFailedException("Performing migration version " + migrationSetEntry.getMigrationMeta().getVersion() + " failed. Message: " + getFailureMessage(e), e);
+        }
+    }
+
+    /**
+     * The version entry now belongs to the process which took the lock over, it is left as it is.
+     */
+    private MigrationFailedException createLostLeaseException(final String version, final Throwable cause) {
+        return new MigrationFailedException("Migration version " + version + " aborted, the migration lock was lost. Its version entry is left to the new lock holder", cause);
+    }
+
+    private Optional<BulkIngestPlanner.Plan> planBulkIngest(final MigrationSetEntry migrationSetEntry, final List<Migration> migrations) {
+        return migrationSetEntry.getBulkIngest() ? Optional.of(bulkIngestPlanner.plan(migrations)) : Optional.empty();
+    }
+
+    /**
+     * Records the current settings of the bulk ingest targets on the version entry and tunes the ones that already exist.
+     * A resumed version restores the settings recorded by the first run.
+     */
+    private Map<String, Map<String, String>> startBulkIngest(final String version, final BulkIngestPlanner.Plan plan, final Optional<MigrationEntry> resumableMigrationEntry) {
+        if (resumableMigrationEntry.isPresent() && resumableMigrationEntry.get().getOriginalSettings() != null) {
+            return resumableMigrationEntry.get().getOriginalSettings();
+        }
+
+        final Map<String, Map<String, String>> existingIndexSettings = plan.getExistingIndices().isEmpty() ? Collections.emptyMap() : getIndexSettings(plan.getExistingIndices());
+        final Map<String, Map<String, String>> originalSettings = new LinkedHashMap<>(plan.getCreatedIndexSettings());
+        originalSettings.putAll(existingIndexSettings);
+        updateMigrationEntryOriginalSettings(version, originalSettings);
+
+        if (!existingIndexSettings.isEmpty()) {
+            log.info("Disabling replicas and refresh for bulk ingest into " + existingIndexSettings.keySet());
+            performRequest(bulkIngestPlanner.createTuning(existingIndexSettings.keySet()));
+        }
 
+        return originalSettings;
+    }
+
+    private void finishBulkIngest(final Map<String, Map<String, String>> originalSettings) {
+        final Set<String> restoredIndices = new LinkedHashSet<>();
+        for (Map.Entry<String, Map<String, String>> entry : originalSettings.entrySet()) {
+            try {
+                performRequest(bulkIngestPlanner.createRestore(entry.getKey(), entry.getValue()));
+                restoredIndices.add(entry.getKey());
+            } catch (MigrationFailedException e) {
+                if (!isNotFoundException(e)) {
+                    throw e;
+                }
+                log.info("Index {} no longer exists. Not restoring its settings", entry.getKey());
+            }
+        }
+
+        if (!restoredIndices.isEmpty()) {
+            log.info("Restored settings of " + restoredIndices + ". Waiting for recovery");
+            final long deadlineInMillis = System.currentTimeMillis() + executionConfig.getRecoveryTimeoutInMillis();
+            while (!isGreen(restoredIndices, deadlineInMillis)) {
+                if (System.currentTimeMillis() >= deadlineInMillis) {
+                    logRecoveryTimeout(restoredIndices);
+                    return;
+                }
+                log.info("Waiting for recovery of " + restoredIndices);
+            }
+        }
+    }
+
+    private CompletableFuture<Map<String, Map<String, String>>> startBulkIngestAsync(final String version, final BulkIngestPlanner.Plan plan, final Optional<MigrationEntry> resumableMigrationEntry) {
+        if (resumableMigrationEntry.isPresent() && resumableMigrationEntry.get().getOriginalSettings() != null) {
+            return CompletableFuture.completedFuture(resumableMigrationEntry.get().getOriginalSettings());
+        }
+
+        final CompletableFuture<Map<String, Map<String, String>>> existingIndexSettings = plan.getExistingIndices().isEmpty() ?
+                CompletableFuture.completedFuture(Collections.emptyMap()) :
+                getIndexSettingsAsync(plan.getExistingIndices());
+        return existingIndexSettings.thenCompose(existing -> {
+            final Map<String, Map<String, String>> originalSettings = new LinkedHashMap<>(plan.getCreatedIndexSettings());
+            originalSettings.putAll(existing);
+
+            CompletableFuture<Void> chain = updateMigrationEntryOriginalSettingsAsync(version, originalSettings);
+            if (!existing.isEmpty()) {
+                chain = chain.thenCompose(ignored -> {
+                    log.info("Disabling replicas and refresh for bulk ingest into " + existing.keySet());
+                    return performRequestAsync(bulkIngestPlanner.createTuning(existing.keySet())).thenApply(response -> null);
+                });
+            }
+
+            return chain.thenApply(ignored -> originalSettings);
+        });
+    }
+
+    private CompletableFuture<Void> finishBulkIngestAsync(final Map<String, Map<String, String>> originalSettings) {
+        final Set<String> restoredIndices = ConcurrentHashMap.newKeySet();
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        for (Map.Entry<String, Map<String, String>> entry : originalSettings.entrySet()) {
+            chain = chain.thenCompose(ignored -> performRequestAsync(bulkIngestPlanner.createRestore(entry.getKey(), entry.getValue())).handle((response, throwable) -> {
+                final Throwable cause = throwable == null ? null : FutureUtils.unwrap(throwable);
+                if (cause == null) {
+                    restoredIndices.add(entry.getKey());
+                } else if (cause instanceof MigrationFailedException && isNotFoundException((MigrationFailedException) cause)) {
+                    log.info("Index {} no longer exists. Not restoring its settings", entry.getKey());
+                } else {
+                    throw new CompletionException(cause);
+                }
                 return null;
+            }));
+        }
+
+        return chain.thenCompose(ignored -> {
+            if (restoredIndices.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            log.info("Restored settings of " + restoredIndices + ". Waiting for recovery");
+            return awaitGreenAsync(restoredIndices, System.currentTimeMillis() + executionConfig.getRecoveryTimeoutInMillis());
+        });
+    }
+
+    private CompletableFuture<Void> awaitGreenAsync(final Set<String> indices, final long deadlineInMillis) {
+        final CompletableFuture<Response> future = new CompletableFuture<>();
+        restHighLevelClient.getLowLevelClient().performRequestAsync(createGreenHealthRequest(indices, deadlineInMillis), FutureUtils.toResponseListener(future));
+        return future.thenCompose(response -> {
+            if (isGreen(response)) {
+                return CompletableFuture.completedFuture(null);
+            }
+            if (System.currentTimeMillis() >= deadlineInMillis) {
+                logRecoveryTimeout(indices);
+                return CompletableFuture.completedFuture(null);
+            }
+            log.info("Waiting for recovery of " + indices);
+            return awaitGreenAsync(indices, deadlineInMillis);
+        });
+    }
+
+    /**
+     * The data and the settings are in place at this point, only replicas are missing. A cluster that can't allocate
+     * them (e.g. a single node) must not block the migration forever.
+     */
+    private void logRecoveryTimeout(final Set<String> indices) {
+        log.warn("Indices " + indices + " not green after " + executionConfig.getRecoveryTimeoutInMillis() + "ms. Continuing, their replicas recover in the background");
+    }
+
+    private void applyChanges(final String version, final List<Migration> migrations, final int firstChange, final LeaseLock.Lease lease) {
+        if (executionConfig.getParallelism() > 1) {
+            new ParallelMigrationExecutor(executionConfig.getParallelism(), migrationResourceResolver, (migration, position) -> {
+                lease.checkHeld();
+                applyChange(version, position, migration, lease);
+            }).execute(migrations, firstChange);
+            return;
+        }
+
+        for (int i = firstChange; i < migrations.size(); i++) {
+            final Migration migration = migrations.get(i);
+            lease.checkHeld();
+            log.info("Applying change " + migration.getClass().getSimpleName());
+            applyChange(version, i, migration, lease);
+        }
+    }
+
+    /**
+     * Applies a single change. The id of a started task is stored on the version entry until the task finishes,
+     * so a restarted process can attach to it instead of starting it again.
+     */
+    private void applyChange(final String version, final int position, final Migration migration, final LeaseLock.Lease lease) {
+        if (migration instanceof AliasSwapMigration) {
+            swapAlias(version, (AliasSwapMigration) migration);
+            return;
+        } else if (!isTaskMigration(migration)) {
+            performRequest(migration);
+            return;
+        }
+
+        final String taskId = taskTracker.getTaskId(submitRequest(migration));
+        lease.checkHeld();
+        updateMigrationEntryTask(version, taskId, position);
+        taskTracker.awaitCompletion(taskId, lease::checkHeld);
+        lease.checkHeld();
+        updateMigrationEntryTask(version, null, null);
+    }
+
+    private CompletableFuture<Void> applyChangeAsync(final String version, final int position, final Migration migration, final LeaseLock.Lease lease) {
+        if (migration instanceof AliasSwapMigration) {
+            return swapAliasAsync(version, (AliasSwapMigration) migration);
+        } else if (isBulkLoadMigration(migration)) {
+            return bulkLoader.loadAsync((BulkLoadMigration) RefreshDeferringMigration.unwrap(migration), isRefresh(migration));
+        } else if (isTransformMigration(migration)) {
+            return documentTransformPipeline.runAsync((TransformMigration) RefreshDeferringMigration.unwrap(migration), isRefresh(migration));
+        } else if (migration instanceof JavaCodeMigration) {
+            return FutureUtils.runBlocking(() -> migrateJava((JavaCodeMigration) migration));
+        }
+
+        final CompletableFuture<Response> submitted = performRequestAsync(migration).thenApply(response -> {
+            verifyResponse(migration, response);
+            return response;
+        });
+        if (!isTaskMigration(migration)) {
+            return submitted.thenApply(response -> null);
+        }
+
+        return submitted.thenCompose(response -> {
+            final String taskId = taskTracker.getTaskId(response);
+            lease.checkHeld();
+            return updateMigrationEntryTaskAsync(version, taskId, position)
+                    .thenCompose(ignored -> taskTracker.awaitCompletionAsync(taskId, lease::checkHeld))
+                    .thenCompose(ignored -> {
+                        lease.checkHeld();
+                        return updateMigrationEntryTaskAsync(version, null, null);
+                    });
+        });
+    }
+
+    /**
+     * Moves the alias in one <code>_aliases</code> call. Old indices with a grace period are recorded on the version entry
+     * and deleted by the first run after it passed, so the lock isn't held while waiting and a crash doesn't lose them.
+     */
+    private void swapAlias(final String version, final AliasSwapMigration aliasSwapMigration) {
+        final Set<String> currentIndices = getAliasedIndices(aliasSwapMigration.getAlias());
+        log.info("Moving alias {} from {} to {}", aliasSwapMigration.getAlias(), currentIndices, aliasSwapMigration.getIndex());
+        submitRequest(aliasSwapMigration.createSwap(currentIndices));
+
+        final Set<String> oldIndices = getOldIndices(aliasSwapMigration, currentIndices);
+        if (aliasSwapMigration.getDeleteOldIndicesAfter().isPresent() && !oldIndices.isEmpty()) {
+            final long gracePeriod = getGracePeriodInMillis(aliasSwapMigration);
+            if (gracePeriod <= 0) {
+                deleteIndices(oldIndices);
+            } else {
+                log.info("Deleting {} in {}ms, on the first migration run after", oldIndices, gracePeriod);
+                performRequest(createMigrationEntryPendingDeletesUpdate(version, oldIndices, System.currentTimeMillis() + gracePeriod));
+            }
+        }
+    }
+
+    private CompletableFuture<Void> swapAliasAsync(final String version, final AliasSwapMigration aliasSwapMigration) {
+        return getAliasedIndicesAsync(aliasSwapMigration.getAlias()).thenCompose(currentIndices -> {
+            log.info("Moving alias {} from {} to {}", aliasSwapMigration.getAlias(), currentIndices, aliasSwapMigration.getIndex());
+            final CompletableFuture<Void> swapped = performRequestAsync(aliasSwapMigration.createSwap(currentIndices)).thenApply(response -> null);
+
+            final Set<String> oldIndices = getOldIndices(aliasSwapMigration, currentIndices);
+            if (!aliasSwapMigration.getDeleteOldIndicesAfter().isPresent() || oldIndices.isEmpty()) {
+                return swapped;
+            }
+
+            return swapped.thenCompose(ignored -> {
+                final long gracePeriod = getGracePeriodInMillis(aliasSwapMigration);
+                if (gracePeriod <= 0) {
+                    return deleteIndicesAsync(oldIndices);
+                }
+                log.info("Deleting {} in {}ms, on the first migration run after", oldIndices, gracePeriod);
+                return performRequestAsync(createMigrationEntryPendingDeletesUpdate(version, oldIndices, System.currentTimeMillis() + gracePeriod)).thenApply(response -> null);
             });
-        } catch (MigrationLockedException e) {
-            if (currentTry.getAndIncrement() < retryCount) {
+        });
+    }
+
+    /**
+     * Deletes the old indices of alias swaps whose grace period has passed and clears them from their version entries.
+     *
+     * @return whether deletes are still waiting for their grace period
+     */
+    private boolean deleteDueIndices(final LeaseLock.Lease lease) {
+        boolean deletesPending = false;
+        for (MigrationEntry migrationEntry : migrationHistoryLoader.loadPendingDeletes()) {
+            if (!isDue(migrationEntry)) {
+                deletesPending = true;
+                continue;
+            }
+            lease.checkHeld();
+            log.info("Deleting {} left by migration version {}", migrationEntry.getPendingDeletes(), migrationEntry.getVersion());
+            deleteIndices(migrationEntry.getPendingDeletes());
+            performRequest(createMigrationEntryPendingDeletesClear(migrationEntry.getVersion()));
+        }
+
+        return deletesPending;
+    }
+
+    private CompletableFuture<Boolean> deleteDueIndicesAsync(final LeaseLock.Lease lease) {
+        return migrationHistoryLoader.loadPendingDeletesAsync().thenCompose(migrationEntries -> {
+            CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+            for (MigrationEntry migrationEntry : migrationEntries) {
+                if (isDue(migrationEntry)) {
+                    chain = chain.thenCompose(previous -> {
+                        lease.checkHeld();
+                        log.info("Deleting {} left by migration version {}", migrationEntry.getPendingDeletes(), migrationEntry.getVersion());
+                        return deleteIndicesAsync(migrationEntry.getPendingDeletes());
+                    }).thenCompose(ignored -> performRequestAsync(createMigrationEntryPendingDeletesClear(migrationEntry.getVersion())).thenApply(response -> null));
+                }
+            }
+
+            return chain.thenApply(ignored -> migrationEntries.stream().anyMatch(e -> !isDue(e)));
+        });
+    }
+
+    private boolean isDue(final MigrationEntry migrationEntry) {
+        return migrationEntry.getPendingDeletesDue() == null || migrationEntry.getPendingDeletesDue() <= System.currentTimeMillis();
+    }
+
+    private void deleteIndices(final Collection<String> indices) {
+        indices.forEach(e -> {
+            try {
+                submitRequest(new DeleteIndexMigration(e));
+            } catch (MigrationFailedException ex) {
+                if (!isNotFoundException(ex)) {
+                    throw ex;
+                }
+            }
+        });
+    }
+
+    private CompletableFuture<Void> deleteIndicesAsync(final Collection<String> indices) {
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        for (String index : indices) {
+            chain = chain.thenCompose(previous -> performRequestAsync(new DeleteIndexMigration(index)).handle((response, throwable) -> {
+                final Throwable cause = throwable == null ? null : FutureUtils.unwrap(throwable);
+                if (cause != null && !(cause instanceof MigrationFailedException && isNotFoundException((MigrationFailedException) cause))) {
+                    throw new CompletionException(cause);
+                }
+                return null;
+            }));
+        }
+        return chain;
+    }
+
+    private Set<String> getOldIndices(final AliasSwapMigration aliasSwapMigration, final Set<String> currentIndices) {
+        return currentIndices.stream().filter(e -> !e.equals(aliasSwapMigration.getIndex())).collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    private long getGracePeriodInMillis(final AliasSwapMigration aliasSwapMigration) {
+        return TimeValue.parseTimeValue(aliasSwapMigration.getDeleteOldIndicesAfter().get(), "deleteOldIndicesAfter").millis();
+    }
+
+    private Set<String> getAliasedIndices(final String alias) {
+        try {
+            return toAliasedIndices(restHighLevelClient.getLowLevelClient().performRequest(createGetAliasRequest(alias)));
+        } catch (ResponseException e) {
+            throw new MigrationFailedException("Error performing migration", e);
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    private CompletableFuture<Set<String>> getAliasedIndicesAsync(final String alias) {
+        final CompletableFuture<Response> future = new CompletableFuture<>();
+        restHighLevelClient.getLowLevelClient().performRequestAsync(createGetAliasRequest(alias), FutureUtils.toResponseListener(future));
+        return future.thenApply(this::toAliasedIndices);
+    }
+
+    private Request createGetAliasRequest(final String alias) {
+        final Request request = new Request("GET", "/_alias/" + alias);
+        request.addParameter("ignore", "404");
+        return request;
+    }
+
+    private Set<String> toAliasedIndices(final Response response) {
+        if (response.getStatusLine().getStatusCode() == 404) {
+            return Collections.emptySet();
+        }
+
+        try {
+            final Set<String> indices = new LinkedHashSet<>();
+            objectMapper.readTree(EntityUtils.toString(response.getEntity(), Charsets.UTF_8)).fieldNames().forEachRemaining(indices::add);
+            return indices;
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    private boolean isTaskMigration(final Migration migration) {
+        return RefreshDeferringMigration.unwrap(migration) instanceof TaskMigration;
+    }
+
+    private boolean isBulkLoadMigration(final Migration migration) {
+        return RefreshDeferringMigration.unwrap(migration) instanceof BulkLoadMigration;
+    }
+
+    private boolean isTransformMigration(final Migration migration) {
+        return RefreshDeferringMigration.unwrap(migration) instanceof TransformMigration;
+    }
+
+    private void migrateJava(final JavaCodeMigration javaCodeMigration) {
+        final String name = javaCodeMigration.getJavaMigration().getClass().getName();
+        log.info("Running java migration {}", name);
+        try {
+            javaCodeMigration.getJavaMigration().migrate(javaMigrationContext);
+        } catch (MigrationFailedException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MigrationFailedException("Java migration " + name + " was interrupted", e);
+        } catch (Exception e) {
+            throw new MigrationFailedException("Java migration " + name + " failed", e);
+        }
+    }
+
+    /**
+     * Deferred refreshes strip the parameter, the index is then refreshed by a later {@link RefreshMigration}.
+     */
+    private boolean isRefresh(final Migration migration) {
+        return migration.getParameters().containsKey(RefreshDeferringMigration.REFRESH_PARAMETER);
+    }
+
+    /**
+     * Every scheduled version gets a {@link State#PENDING} entry in version order before any of them starts, so the history
+     * in ES has no gaps even if the process dies after a later version succeeded. Versions not started because an earlier
+     * one failed stay pending and are applied by the next run.
+     */
+    private void applyMigrationSetEntriesInParallel(final List<MigrationSetEntry> pendingMigrationSetEntries, final Map<String, MigrationEntry> unfinishedMigrationEntries, final LeaseLock.Lease lease) {
+        final Map<String, MigrationEntry> scheduledMigrationEntries = new HashMap<>(unfinishedMigrationEntries);
+        for (MigrationSetEntry migrationSetEntry : pendingMigrationSetEntries) {
+            final String version = migrationSetEntry.getMigrationMeta().getVersion();
+            if (!scheduledMigrationEntries.containsKey(version)) {
+                lease.checkHeld();
                 try {
-                    log.info("Migration locked. Retrying in {}ms", backoffPeriodInMillis);
-                    Thread.sleep(backoffPeriodInMillis);
-                    applyMigrationSet(migrationSet);
-                } catch (InterruptedException e1) {
-                    // Should never happen
+                    scheduledMigrationEntries.put(version, insertNewMigrationEntry(migrationSetEntry, State.PENDING));
+                } catch (JsonProcessingException e) {
+                    throw new MigrationFailedException("Scheduling migration version " + version + " failed", e);
                 }
-            } else {
-                throw e;
             }
         }
+
+        versionExecutor.execute(
+                pendingMigrationSetEntries,
+                migrationSetEntry -> migrationSetEntry.getMigration().stream().flatMap(e -> migrationResourceResolver.resolve(e).stream()).collect(Collectors.toSet()),
+                migrationSetEntry -> applyMigrationSetEntry(migrationSetEntry, Optional.ofNullable(scheduledMigrationEntries.get(migrationSetEntry.getMigrationMeta().getVersion())), lease)
+        ).rethrowFailure();
     }
 
     private void refreshIndices(final String... index) {
@@ -213,28 +1164,64 @@ public class DefaultMigrationClient implements MigrationClient {
         }
     }
 
-    private void insertNewMigrationEntry(MigrationSetEntry migrationSetEntry) throws JsonProcessingException {
-        performRequest(
-                new IndexDocumentMigration(
-                        MigrationEntryMeta.INDEX,
-                        Optional.of(identifier + "-" + migrationSetEntry.getMigrationMeta().getVersion()),
-                        Optional.of(OpType.CREATE),
-                        objectMapper.writeValueAsString(
-                                new MigrationEntry(
-                                        identifier,
-                                        migrationSetEntry.getMigrationMeta().getVersion(),
-                                        migrationSetEntry.getMigrationMeta().getName(),
-                                        migrationSetEntry.getMigrationMeta().getSha256Checksum(),
-                                        State.IN_PROGRESS,
-                                        null,
-                                        Instant.now()
-                                )
-                        )
-                )
+    private CompletableFuture<Void> refreshIndicesAsync(final String... index) {
+        final CompletableFuture<RefreshResponse> future = new CompletableFuture<>();
+        restHighLevelClient.indices().refreshAsync(new RefreshRequest(index), RequestOptions.DEFAULT, FutureUtils.toActionListener(future));
+        return future.thenApply(response -> null);
+    }
+
+    /**
+     * The version goes into the history snapshot first, so the snapshot lists every version entry.
+     */
+    private MigrationEntry insertNewMigrationEntry(final MigrationSetEntry migrationSetEntry, final State state) throws JsonProcessingException {
+        final MigrationEntry migrationEntry = createNewMigrationEntry(migrationSetEntry, state);
+        historySnapshot.put(migrationEntry);
+        performRequest(createNewMigrationEntryMigration(migrationEntry));
+        return migrationEntry;
+    }
+
+    private CompletableFuture<Void> insertNewMigrationEntryAsync(final MigrationSetEntry migrationSetEntry, final State state) {
+        final MigrationEntry migrationEntry = createNewMigrationEntry(migrationSetEntry, state);
+        return historySnapshot.putAsync(migrationEntry).thenCompose(ignored -> {
+            try {
+                return performRequestAsync(createNewMigrationEntryMigration(migrationEntry)).thenApply(response -> null);
+            } catch (JsonProcessingException e) {
+                return FutureUtils.<Void>failed(new MigrationFailedException("Performing migration version " + migrationEntry.getVersion() + " failed", e));
+            }
+        });
+    }
+
+    private MigrationEntry createNewMigrationEntry(final MigrationSetEntry migrationSetEntry, final State state) {
+        return new MigrationEntry(
+                identifier,
+                migrationSetEntry.getMigrationMeta().getVersion(),
+                migrationSetEntry.getMigrationMeta().getName(),
+                migrationSetEntry.getMigrationMeta().getSha256Checksum(),
+                state,
+                null,
+                Instant.now()
+        );
+    }
+
+    private Migration createNewMigrationEntryMigration(final MigrationEntry migrationEntry) throws JsonProcessingException {
+        return new IndexDocumentMigration(
+                MigrationEntryMeta.INDEX,
+                Optional.of(identifier + "-" + migrationEntry.getVersion()),
+                Optional.of(OpType.CREATE),
+                objectMapper.writeValueAsString(migrationEntry)
         );
     }
 
     private void updateMigrationEntry(String version, State state, String failureMessage) {
+        try {
+            performRequest(createMigrationEntryUpdate(version, state, failureMessage));
+        } catch (Exception e) {
+            throw new MigrationFailedException("Performing migration version " + version + " failed. Message: " + e.getCause().getMessage());
+        }
+        historySnapshot.updateState(version, state);
+    }
+
+    private Migration createMigrationEntryUpdate(String version, State state, String failureMessage) throws JsonProcessingException {
         final Map<String, Map<String, String>> update = ImmutableMap.of(
                 "doc",
                 ImmutableMap.of(
@@ -243,23 +1230,119 @@ public class DefaultMigrationClient implements MigrationClient {
                 )
         );
 
+        return new UpdateDocumentMigration(
+                MigrationEntryMeta.INDEX,
+                identifier + "-" + version,
+                objectMapper.writeValueAsString(update)
+        );
+    }
+
+    private void updateMigrationEntryTask(final String version, final String taskId, final Integer taskChange) {
         try {
-            performRequest(
-                    new UpdateDocumentMigration(
-                            MigrationEntryMeta.INDEX,
-                            identifier + "-" + version,
-                            objectMapper.writeValueAsString(update)
-                    )
-            );
-        } catch (Exception e) {
-            throw new MigrationFailedException("Performing migration version " + version + " failed. Message: " + e.getCause().getMessage());
+            performRequest(createMigrationEntryTaskUpdate(version, taskId, taskChange));
+        } catch (JsonProcessingException e) {
+            throw new MigrationFailedException("Recording task of migration version " + version + " failed", e);
+        }
+    }
+
+    private CompletableFuture<Void> updateMigrationEntryTaskAsync(final String version, final String taskId, final Integer taskChange) {
+        try {
+            return performRequestAsync(createMigrationEntryTaskUpdate(version, taskId, taskChange)).thenApply(response -> null);
+        } catch (JsonProcessingException e) {
+            return FutureUtils.failed(new MigrationFailedException("Recording task of migration version " + version + " failed", e));
+        }
+    }
+
+    private Migration createMigrationEntryTaskUpdate(final String version, final String taskId, final Integer taskChange) throws JsonProcessingException {
+        // Explicit nulls clear the fields once the task finished
+        final ObjectNode doc = objectMapper.createObjectNode();
+        doc.put(MigrationEntryMeta.TASK_ID_FIELD, taskId);
+        doc.put(MigrationEntryMeta.TASK_CHANGE_FIELD, taskChange);
+
+        final ObjectNode update = objectMapper.createObjectNode();
+        update.set("doc", doc);
+
+        return new UpdateDocumentMigration(
+                MigrationEntryMeta.INDEX,
+                identifier + "-" + version,
+                objectMapper.writeValueAsString(update)
+        );
+    }
+
+    private void updateMigrationEntryOriginalSettings(final String version, final Map<String, Map<String, String>> originalSettings) {
+        try {
+            performRequest(createMigrationEntryOriginalSettingsUpdate(version, originalSettings));
+        } catch (JsonProcessingException e) {
+            throw new MigrationFailedException("Recording settings of migration version " + version + " failed", e);
+        }
+    }
+
+    private CompletableFuture<Void> updateMigrationEntryOriginalSettingsAsync(final String version, final Map<String, Map<String, String>> originalSettings) {
+        try {
+            return performRequestAsync(createMigrationEntryOriginalSettingsUpdate(version, originalSettings)).thenApply(response -> null);
+        } catch (JsonProcessingException e) {
+            return FutureUtils.failed(new MigrationFailedException("Recording settings of migration version " + version + " failed", e));
+        }
+    }
+
+    private Migration createMigrationEntryOriginalSettingsUpdate(final String version, final Map<String, Map<String, String>> originalSettings) throws JsonProcessingException {
+        return new UpdateDocumentMigration(
+                MigrationEntryMeta.INDEX,
+                identifier + "-" + version,
+                objectMapper.writeValueAsString(ImmutableMap.of("doc", ImmutableMap.of(MigrationEntryMeta.ORIGINAL_SETTINGS_FIELD, originalSettings)))
+        );
+    }
+
+    /**
+     * Scripted, so old indices of several alias swaps of the same version add up. The latest due time wins.
+     */
+    private Migration createMigrationEntryPendingDeletesUpdate(final String version, final Set<String> indices, final long dueInMillis) {
+        final ObjectNode script = objectMapper.createObjectNode();
+        script.put("lang", "painless");
+        script.put("source", PENDING_DELETES_SCRIPT);
+        final ObjectNode params = script.putObject("params");
+        final ArrayNode indicesParam = params.putArray("indices");
+        indices.forEach(indicesParam::add);
+        params.put("due", dueInMillis);
+
+        final ObjectNode update = objectMapper.createObjectNode();
+        update.set("script", script);
+
+        return new UpdateDocumentMigration(
+                MigrationEntryMeta.INDEX,
+                identifier + "-" + version,
+                update.toString()
+        );
+    }
+
+    private Migration createMigrationEntryPendingDeletesClear(final String version) {
+        final ObjectNode doc = objectMapper.createObjectNode();
+        doc.putNull(MigrationEntryMeta.PENDING_DELETES_FIELD);
+        doc.putNull(MigrationEntryMeta.PENDING_DELETES_DUE_FIELD);
+
+        final ObjectNode update = objectMapper.createObjectNode();
+        update.set("doc", doc);
+
+        return new UpdateDocumentMigration(
+                MigrationEntryMeta.INDEX,
+                identifier + "-" + version,
+                update.toString()
+        );
+    }
+
+    private CompletableFuture<Void> updateMigrationEntryAsync(String version, State state, String failureMessage) {
+        try {
+            return performRequestAsync(createMigrationEntryUpdate(version, state, failureMessage))
+                    .thenCompose(response -> historySnapshot.updateStateAsync(version, state));
+        } catch (JsonProcessingException e) {
+            return FutureUtils.failed(new MigrationFailedException("Performing migration version " + version + " failed", e));
         }
     }
 
     private void checkAllPreviousMigrationsAppliedSuccessfully(final List<MigrationEntry> migrationEntries) {
         if (!ignorePreviousFailures) {
             for (MigrationEntry migrationEntry : migrationEntries) {
-                if (migrationEntry.getState() != State.SUCCESS) {
+                if (migrationEntry.getState() != State.SUCCESS && !migrationEntry.isResumable() && !migrationEntry.isPending()) {
                     throw new PreviousMigrationFailedException("Previous migration in FAILED state. Message: " + migrationEntry.getFailureMessage());
                 }
             }
@@ -294,53 +1377,106 @@ public class DefaultMigrationClient implements MigrationClient {
         try {
             performRequest(migration);
         } catch (MigrationFailedException e) {
-            if (e.getCause() instanceof ResponseException) {
-                final ResponseException responseException = (ResponseException) e.getCause();
-                if (responseException.getResponse().getStatusLine().getStatusCode() == 400 &&
-                        (responseException.getMessage().contains("index_already_exists_exception") || // ES 5.x
-                                responseException.getMessage().contains("resource_already_exists_exception") || // ES 6.x
-                                responseException.getMessage().contains("IndexAlreadyExistsException"))) { // ES 1.x and 2.x
-                    return;
-                }
+            if (!isAlreadyExistsException(e)) {
+                throw e;
             }
+        }
+    }
 
-            throw e;
+    private boolean isNotFoundException(final MigrationFailedException e) {
+        return e.getCause() instanceof ResponseException && ((ResponseException) e.getCause()).getResponse().getStatusLine().getStatusCode() == 404;
+    }
+
+    private boolean isAlreadyExistsException(final MigrationFailedException e) {
+        if (e.getCause() instanceof ResponseException) {
+            final ResponseException responseException = (ResponseException) e.getCause();
+            return responseException.getResponse().getStatusLine().getStatusCode() == 400 &&
+                    (responseException.getMessage().contains("index_already_exists_exception") || // ES 5.x
+                            responseException.getMessage().contains("resource_already_exists_exception") || // ES 6.x
+                            responseException.getMessage().contains("IndexAlreadyExistsException")); // ES 1.x and 2.x
         }
+
+        return false;
     }
 
-    private List<MigrationEntry> getAllMigrations() {
-        try {
-            final QueryBuilder queryBuilder = QueryBuilders.boolQuery().must(QueryBuilders.termQuery(MigrationEntryMeta.IDENTIFIER_FIELD, identifier));
-            final SearchRequest searchRequest = new SearchRequest()
-                    .indices(MigrationEntryMeta.INDEX)
-                    .searchType(SearchType.DEFAULT)
-                    .source(SearchSourceBuilder.searchSource().query(queryBuilder).fetchSource(true).size(1000));
-
-            final SearchResponse searchResponse = restHighLevelClient.search(searchRequest, RequestOptions.DEFAULT);
-            if (searchResponse.status() == RestStatus.OK) {
-                final List<MigrationEntry> migrationEntries = transformHitsFromEs(searchResponse.getHits(), MigrationEntry.class);
-                migrationEntries.sort(new VersionComparator<>(VERSION_REGEX_PATTERN, 1, ".", e -> e.getVersion()));
-                return migrationEntries;
-            } else {
-                throw new MigrationFailedException("Could not access '" + MigrationEntryMeta.INDEX + "' index. Failures: " + Arrays.asList(searchResponse.getShardFailures()));
+    /**
+     * Reads the history from its snapshot. Without one, e.g. for histories written before snapshots existed, the version
+     * entries are read and the snapshot is created from them.
+     */
+    private List<MigrationEntry> getAllMigrations(final MigrationSet migrationSet) {
+        final Optional<List<MigrationEntry>> snapshot = historySnapshot.load(getVersions(migrationSet));
+        if (snapshot.isPresent()) {
+            return snapshot.get();
+        }
+
+        final List<MigrationEntry> migrationEntries = loadAllMigrations(migrationSet);
+        historySnapshot.store(migrationEntries);
+        return migrationEntries;
+    }
+
+    private CompletableFuture<List<MigrationEntry>> getAllMigrationsAsync(final MigrationSet migrationSet) {
+        return historySnapshot.loadAsync(getVersions(migrationSet)).thenCompose(snapshot -> {
+            if (snapshot.isPresent()) {
+                return CompletableFuture.completedFuture(snapshot.get());
             }
-        } catch (IOException e) {
-            throw new MigrationFailedException("IO Exception during migration", e);
+
+            return loadAllMigrationsAsync(migrationSet).thenCompose(migrationEntries -> historySnapshot.storeAsync(migrationEntries).thenApply(ignored -> migrationEntries));
+        });
+    }
+
+    private List<MigrationEntry> loadAllMigrations(final MigrationSet migrationSet) {
+        if (executionConfig.getRealtimeHistoryLookup()) {
+            return sortMigrationEntries(migrationHistoryLoader.loadRealtime(getVersions(migrationSet)));
+        }
+
+        refreshIndices(MigrationEntryMeta.INDEX);
+        return sortMigrationEntries(migrationHistoryLoader.load());
+    }
+
+    private CompletableFuture<List<MigrationEntry>> loadAllMigrationsAsync(final MigrationSet migrationSet) {
+        if (executionConfig.getRealtimeHistoryLookup()) {
+            return migrationHistoryLoader.loadRealtimeAsync(getVersions(migrationSet)).thenApply(this::sortMigrationEntries);
         }
+
+        return refreshIndicesAsync(MigrationEntryMeta.INDEX)
+                .thenCompose(ignored -> migrationHistoryLoader.loadAsync())
+                .thenApply(this::sortMigrationEntries);
+    }
+
+    private List<String> getVersions(final MigrationSet migrationSet) {
+        return migrationSet.getMigrations().stream().map(e -> e.getMigrationMeta().getVersion()).collect(Collectors.toList());
+    }
+
+    private List<MigrationEntry> sortMigrationEntries(final List<MigrationEntry> migrationEntries) {
+        migrationEntries.sort(new VersionComparator<>(VERSION_REGEX_PATTERN, 1, ".", e -> e.getVersion()));
+        return migrationEntries;
     }
 
     public void performRequest(final Migration migration) {
-        try {
-            final StringEntity stringEntity = new StringEntity(migration.getBody(), ContentType.APPLICATION_JSON);
-            final Request request = new Request(migration.getMethod().name(), migration.getUrl());
-            request.addParameters(augmentParameters(migration.getParameters()));
-            request.setEntity(stringEntity);
+        if (isBulkLoadMigration(migration)) {
+            bulkLoader.load((BulkLoadMigration) RefreshDeferringMigration.unwrap(migration), isRefresh(migration));
+            return;
+        } else if (isTransformMigration(migration)) {
+            documentTransformPipeline.run((TransformMigration) RefreshDeferringMigration.unwrap(migration), isRefresh(migration));
+            return;
+        } else if (migration instanceof JavaCodeMigration) {
+            migrateJava((JavaCodeMigration) migration);
+            return;
+        }
 
-            final RequestOptions.Builder builder = RequestOptions.DEFAULT.toBuilder();
-            migration.getHeaders().entries().forEach(e -> builder.addHeader(e.getKey(), e.getValue()));
-            request.setOptions(builder.build());
+        final Response response = submitRequest(migration);
+        if (isTaskMigration(migration)) {
+            taskTracker.awaitCompletion(taskTracker.getTaskId(response));
+        }
+    }
 
-            restHighLevelClient.getLowLevelClient().performRequest(request);
+    private Response submitRequest(final Migration migration) {
+        try {
+            final Response response = restHighLevelClient.getLowLevelClient().performRequest(
+                    createRequest(migration, isNumberOfNodesInClusterNeeded(migration) ? getNumberOfNodesInCluster() : 1)
+            );
+            verifyResponse(migration, response);
+            return response;
         } catch (ResponseException e) {
             throw new MigrationFailedException("Error performing migration", e);
         } catch (IOException e) {
@@ -348,7 +1484,79 @@ public class DefaultMigrationClient implements MigrationClient {
         }
     }
 
-    private Map<String, String> augmentParameters(Map<String, String> originalParameters) {
+    private List<Migration> planMigrations(final MigrationSetEntry migrationSetEntry) {
+        final List<Migration> migrations = bulkMigrationCoalescer.coalesce(migrationSetEntry.getMigration());
+        final RefreshPolicy refreshPolicy = migrationSetEntry.getRefreshPolicy().orElse(executionConfig.getRefreshPolicy());
+        return refreshPolicy == RefreshPolicy.DEFERRED ? deferredRefreshPlanner.plan(migrations) : migrations;
+    }
+
+    private void verifyResponse(final Migration migration, final Response response) {
+        final Migration unwrapped = RefreshDeferringMigration.unwrap(migration);
+        if (unwrapped instanceof BulkMigration) {
+            try {
+                ((BulkMigration) unwrapped).verifyResponse(EntityUtils.toString(response.getEntity(), Charsets.UTF_8));
+            } catch (IOException e) {
+                throw new MigrationFailedException("IO Exception during migration", e);
+            }
+        }
+    }
+
+    public CompletableFuture<Response> performRequestAsync(final Migration migration) {
+        final CompletableFuture<Integer> numberOfNodesInCluster = isNumberOfNodesInClusterNeeded(migration) ?
+                getNumberOfNodesInClusterAsync() :
+                CompletableFuture.completedFuture(1);
+        return numberOfNodesInCluster.thenCompose(numberOfNodes -> {
+            final CompletableFuture<Response> future = new CompletableFuture<>();
+            restHighLevelClient.getLowLevelClient().performRequestAsync(createRequest(migration, numberOfNodes), FutureUtils.toResponseListener(future));
+            return future;
+        }).handle((response, throwable) -> {
+            if (throwable == null) {
+                return response;
+            }
+
+            final Throwable cause = FutureUtils.unwrap(throwable);
+            if (cause instanceof MigrationFailedException) {
+                throw (MigrationFailedException) cause;
+            } else if (cause instanceof ResponseException) {
+                throw new MigrationFailedException("Error performing migration", cause);
+            }
+            throw new MigrationFailedException("IO Exception during migration", cause);
+        });
+    }
+
+    private CompletableFuture<Void> performRequestIgnoreExistingExceptionsAsync(final Migration migration) {
+        return performRequestAsync(migration).handle((response, throwable) -> {
+            final Throwable cause = throwable == null ? null : FutureUtils.unwrap(throwable);
+            if (cause instanceof MigrationFailedException && !isAlreadyExistsException((MigrationFailedException) cause)) {
+                throw (MigrationFailedException) cause;
+            }
+
+            return null;
+        });
+    }
+
+    private Request createRequest(final Migration migration, final int numberOfNodesInCluster) {
+        final StringEntity stringEntity = new StringEntity(migration.getBody(), ContentType.APPLICATION_JSON);
+        final Request request = new Request(migration.getMethod().name(), migration.getUrl());
+        request.addParameters(augmentParameters(migration.getParameters(), numberOfNodesInCluster));
+        request.setEntity(stringEntity);
+
+        final RequestOptions.Builder builder = RequestOptions.DEFAULT.toBuilder();
+        migration.getHeaders().entries().forEach(e -> builder.addHeader(e.getKey(), e.getValue()));
+        request.setOptions(builder.build());
+
+        return request;
+    }
+
+    /**
+     * A single active copy never has to be capped, so the node count is only fetched for changes waiting for replicas.
+     */
+    private boolean isNumberOfNodesInClusterNeeded(final Migration migration) {
+        final String waitForActiveShards = migration.getParameters().get(WAIT_FOR_ACTIVE_SHARDS_FIELD);
+        return waitForActiveShards != null && Integer.valueOf(waitForActiveShards) > 1;
+    }
+
+    private Map<String, String> augmentParameters(Map<String, String> originalParameters, int numberOfNodesInCluster) {
         final Map<String, String> augmentedParameters = new HashMap<>(originalParameters);
         augmentedParameters.remove(WAIT_FOR_ACTIVE_SHARDS_FIELD);
 
@@ -362,9 +1570,13 @@ public class DefaultMigrationClient implements MigrationClient {
 
 
     public int getNumberOfNodesInCluster() {
+        final Optional<Integer> cachedNumberOfNodes = clusterTopologyCache.getNumberOfNodes();
+        if (cachedNumberOfNodes.isPresent()) {
+            return cachedNumberOfNodes.get();
+        }
+
         try {
-            final Response response = restHighLevelClient.getLowLevelClient().performRequest(new Request("GET", "/_nodes"));
-            return JsonPath.read(IOUtils.toString(response.getEntity().getContent(), Charsets.UTF_8), "$._nodes.total");
+            return toNumberOfNodesInCluster(restHighLevelClient.getLowLevelClient().performRequest(createNumberOfNodesRequest()));
         } catch (ResponseException e) {
             throw new MigrationFailedException("Error performing migration", e);
         } catch (IOException e) {
@@ -372,10 +1584,40 @@ public class DefaultMigrationClient implements MigrationClient {
         }
     }
 
-    public int getNumberOfShards(String index) {
+    private CompletableFuture<Integer> getNumberOfNodesInClusterAsync() {
+        final Optional<Integer> cachedNumberOfNodes = clusterTopologyCache.getNumberOfNodes();
+        if (cachedNumberOfNodes.isPresent()) {
+            return CompletableFuture.completedFuture(cachedNumberOfNodes.get());
+        }
+
+        final CompletableFuture<Response> future = new CompletableFuture<>();
+        restHighLevelClient.getLowLevelClient().performRequestAsync(createNumberOfNodesRequest(), FutureUtils.toResponseListener(future));
+        return future.thenApply(this::toNumberOfNodesInCluster);
+    }
+
+    /**
+     * Cluster health is answered by the master alone, unlike _nodes which collects the full info of every node.
+     */
+    private Request createNumberOfNodesRequest() {
+        final Request request = new Request("GET", "/_cluster/health");
+        request.addParameter("filter_path", "number_of_nodes");
+        return request;
+    }
+
+    private int toNumberOfNodesInCluster(final Response response) {
         try {
-            final Response response = restHighLevelClient.getLowLevelClient().performRequest(new Request("GET", "/" + index + "_settings"));
-            return JsonPath.read(IOUtils.toString(response.getEntity().getContent(), Charsets.UTF_8), "$." + index + ".settings.index.number_of_shards");
+            final int numberOfNodes = JsonPath.read(IOUtils.toString(response.getEntity().getContent(), Charsets.UTF_8), "$.number_of_nodes");
+            clusterTopologyCache.setNumberOfNodes(numberOfNodes);
+            return numberOfNodes;
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    private Map<String, Map<String, String>> getIndexSettings(final Set<String> indices) {
+        try {
+            final Response response = restHighLevelClient.getLowLevelClient().performRequest(createIndexSettingsRequest(indices));
+            return bulkIngestPlanner.parseSettings(EntityUtils.toString(response.getEntity(), Charsets.UTF_8));
         } catch (ResponseException e) {
             throw new MigrationFailedException("Error performing migration", e);
         } catch (IOException e) {
@@ -383,53 +1625,91 @@ public class DefaultMigrationClient implements MigrationClient {
         }
     }
 
-
-    private <T> T performUnderGlobalLock(Action0<T> action) {
-        if (acquireGlobalLock()) {
+    private CompletableFuture<Map<String, Map<String, String>>> getIndexSettingsAsync(final Set<String> indices) {
+        final CompletableFuture<Response> future = new CompletableFuture<>();
+        restHighLevelClient.getLowLevelClient().performRequestAsync(createIndexSettingsRequest(indices), FutureUtils.toResponseListener(future));
+        return future.thenApply(response -> {
             try {
-                return action.call();
-            } finally {
-                releaseGlobalLock();
+                return bulkIngestPlanner.parseSettings(EntityUtils.toString(response.getEntity(), Charsets.UTF_8));
+            } catch (IOException e) {
+                throw new MigrationFailedException("IO Exception during migration", e);
             }
-        } else {
-            throw new MigrationLockedException("Migration is locked by another process");
-        }
+        });
     }
 
-    private boolean acquireGlobalLock() {
+    private Request createIndexSettingsRequest(final Set<String> indices) {
+        final Request request = new Request("GET", "/" + Joiner.on(",").join(indices) + "/_settings/index.number_of_replicas,index.refresh_interval");
+        request.addParameter("ignore_unavailable", "true");
+        request.addParameter("allow_no_indices", "true");
+        return request;
+    }
+
+    private boolean isGreen(final Set<String> indices, final long deadlineInMillis) {
         try {
-            final IndexRequest indexRequest = new IndexRequest().index(LockEntryMeta.INDEX)
-                    .create(true)
-                    .id(identifier + "-global")
-                    .source(objectMapper.writeValueAsString(new LockEntry(Instant.now())), XContentType.JSON);
-            restHighLevelClient.index(indexRequest, RequestOptions.DEFAULT);
-            return true;
-        } catch (ElasticsearchStatusException e) {
-            if (e.status() == RestStatus.CONFLICT &&
-                    (e.getMessage().contains("version_conflict_engine_exception"))) {  // ES 6.x
-                return false;
-            }
+            return isGreen(restHighLevelClient.getLowLevelClient().performRequest(createGreenHealthRequest(indices, deadlineInMillis)));
+        } catch (ResponseException e) {
+            throw new MigrationFailedException("Error performing migration", e);
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
 
-            throw new MigrationFailedException("Error acquiring lock", e);
+    private boolean isGreen(final Response response) {
+        try {
+            return !(Boolean) JsonPath.read(IOUtils.toString(response.getEntity().getContent(), Charsets.UTF_8), "$.timed_out");
         } catch (IOException e) {
             throw new MigrationFailedException("IO Exception during migration", e);
         }
     }
 
-    private boolean releaseGlobalLock() {
+    /**
+     * Waits server side for a bounded time only, callers repeat until the indices are green or the deadline has passed.
+     */
+    private Request createGreenHealthRequest(final Set<String> indices, final long deadlineInMillis) {
+        final long timeoutInMillis = Math.max(0, Math.min(20000, deadlineInMillis - System.currentTimeMillis()));
+        final Request request = new Request("GET", "/_cluster/health/" + Joiner.on(",").join(indices));
+        request.addParameter("wait_for_status", "green");
+        request.addParameter("timeout", timeoutInMillis + "ms");
+        request.addParameter("ignore", "408");
+        return request;
+    }
+
+    public int getNumberOfShards(String index) {
         try {
-            final DeleteRequest deleteRequest = new DeleteRequest().index(LockEntryMeta.INDEX).id(identifier + "-global");
-            restHighLevelClient.delete(deleteRequest, RequestOptions.DEFAULT);
-            return true;
+            final Response response = restHighLevelClient.getLowLevelClient().performRequest(new Request("GET", "/" + index + "_settings"));
+            return JsonPath.read(IOUtils.toString(response.getEntity().getContent(), Charsets.UTF_8), "$." + index + ".settings.index.number_of_shards");
+        } catch (ResponseException e) {
+            throw new MigrationFailedException("Error performing migration", e);
         } catch (IOException e) {
             throw new MigrationFailedException("IO Exception during migration", e);
         }
     }
 
-    private <T> List<T> transformHitsFromEs(SearchHits hits, Class<T> clazz) {
-        return Arrays.asList(hits.getHits()).stream()
-                .map(hit -> transformSourceFromEs(hit.getSourceAsString(), clazz))
-                .collect(Collectors.toList());
+
+    private <T> T performUnderGlobalLock(LeasedAction<T> action) {
+        final LeaseLock.Lease lease = leaseLock.acquire();
+        try {
+            return action.call(lease);
+        } finally {
+            lease.release();
+        }
+    }
+
+    private <T> CompletableFuture<T> performUnderGlobalLockAsync(LeasedAction<CompletableFuture<T>> action) {
+        return leaseLock.acquireAsync().thenCompose(lease -> {
+            CompletableFuture<T> result;
+            try {
+                result = action.call(lease);
+            } catch (RuntimeException e) {
+                result = FutureUtils.failed(e);
+            }
+
+            return result
+                    .handle((value, throwable) -> lease.releaseAsync().thenCompose(ignored ->
+                            throwable == null ? CompletableFuture.completedFuture(value) : FutureUtils.<T>failed(FutureUtils.unwrap(throwable))
+                    ))
+                    .thenCompose(Function.identity());
+        });
     }
 
     private <T> T transformSourceFromEs(String source, Class<T> clazz) {
@@ -445,8 +1725,11 @@ public class DefaultMigrationClient implements MigrationClient {
         }
     }
 
+    /**
+     * Runs while the lease is held. Every write for the migration has to be preceded by {@link LeaseLock.Lease#checkHeld()}.
+     */
     @FunctionalInterface
-    private interface Action0<T> {
-        T call();
+    private interface LeasedAction<T> {
+        T call(LeaseLock.Lease lease);
     }
 }
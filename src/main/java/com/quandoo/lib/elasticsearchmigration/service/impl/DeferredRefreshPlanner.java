@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.quandoo.lib.elasticsearchmigration.model.migration.Method;
+import com.quandoo.lib.elasticsearchmigration.model.migration.Migration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.RefreshDeferringMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.RefreshMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.ResourceAccess;
+import com.quandoo.lib.elasticsearchmigration.model.migration.ResourceType;
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Implements {@link com.quandoo.lib.elasticsearchmigration.model.migration.RefreshPolicy#DEFERRED}. Writes are sent without
+ * refreshing, the indices they dirtied are tracked and refreshed with a single request before a later change reads them
+ * and at the end of the version.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class DeferredRefreshPlanner {
+
+    private final MigrationResourceResolver migrationResourceResolver;
+
+    public DeferredRefreshPlanner(@NonNull final MigrationResourceResolver migrationResourceResolver) {
+        this.migrationResourceResolver = migrationResourceResolver;
+    }
+
+    public List<Migration> plan(final List<Migration> migrations) {
+        final List<Migration> result = new ArrayList<>(migrations.size() + 1);
+        final Set<String> dirtyIndices = new LinkedHashSet<>();
+
+        for (Migration migration : migrations) {
+            final Set<ResourceAccess> accesses = migrationResourceResolver.resolve(migration);
+            final Set<String> readIndices = indexNames(accesses, false);
+            final Set<String> writtenIndices = indexNames(accesses, true);
+
+            // Barrier: the change reads data written before
+            final Set<String> toRefresh = intersect(dirtyIndices, readIndices);
+            if (!toRefresh.isEmpty()) {
+                result.add(new RefreshMigration(toRefresh));
+                dirtyIndices.removeAll(toRefresh);
+            }
+
+            if (isDeleteIndex(migration)) {
+                if (writtenIndices.contains(ResourceAccess.ANY)) {
+                    dirtyIndices.clear();
+                } else {
+                    dirtyIndices.removeAll(writtenIndices);
+                }
+            }
+
+            if (migration.getParameters().containsKey(RefreshDeferringMigration.REFRESH_PARAMETER)) {
+                result.add(new RefreshDeferringMigration(migration));
+                dirtyIndices.addAll(writtenIndices);
+            } else {
+                result.add(migration);
+            }
+        }
+
+        if (!dirtyIndices.isEmpty()) {
+            result.add(new RefreshMigration(dirtyIndices));
+        }
+
+        return result;
+    }
+
+    private boolean isDeleteIndex(final Migration migration) {
+        return migration.getMethod() == Method.DELETE && migration.getUrl().lastIndexOf('/') == 0;
+    }
+
+    private Set<String> intersect(final Set<String> dirtyIndices, final Set<String> readIndices) {
+        if (dirtyIndices.isEmpty() || readIndices.isEmpty()) {
+            return new LinkedHashSet<>();
+        } else if (readIndices.contains(ResourceAccess.ANY) || dirtyIndices.contains(ResourceAccess.ANY)) {
+            return new LinkedHashSet<>(dirtyIndices);
+        }
+
+        return dirtyIndices.stream().filter(readIndices::contains).collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    private Set<String> indexNames(final Set<ResourceAccess> accesses, final boolean write) {
+        return accesses.stream()
+                .filter(e -> (e.getType() == ResourceType.INDEX && e.isWrite() == write) || e.getType() == ResourceType.CLUSTER)
+                .map(ResourceAccess::getName)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+}
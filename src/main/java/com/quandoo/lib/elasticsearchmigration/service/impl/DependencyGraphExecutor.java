@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.quandoo.lib.elasticsearchmigration.model.migration.ResourceAccess;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Runs an ordered list of items on a bounded pool. An item only starts after every earlier item whose resources
+ * conflict with its own has finished, so conflicting items keep their order while independent ones overlap.
+ * Once an item fails no later item is started, earlier items still run as they would have sequentially.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Slf4j
+public class DependencyGraphExecutor {
+
+    private final int parallelism;
+    private final String threadNameFormat;
+
+    public DependencyGraphExecutor(final int parallelism, @NonNull final String threadNameFormat) {
+        checkArgument(parallelism > 0, "parallelism must be greater than 0");
+        this.parallelism = parallelism;
+        this.threadNameFormat = threadNameFormat;
+    }
+
+    /**
+     * Blocks until all started items finished.
+     *
+     * @return the outcome of every item in input order and the failure of the first failed item
+     */
+    public <T> Result execute(final List<T> items, final Function<T, Set<ResourceAccess>> resourceFunction, final Consumer<T> action) {
+        if (items.isEmpty()) {
+            return new Result(new ArrayList<>(), Optional.empty());
+        }
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(
+                Math.min(parallelism, items.size()),
+                new ThreadFactoryBuilder().setNameFormat(threadNameFormat).setDaemon(true).build()
+        );
+        try {
+            return execute(items, resourceFunction, action, executorService);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private <T> Result execute(final List<T> items,
+                               final Function<T, Set<ResourceAccess>> resourceFunction,
+                               final Consumer<T> action,
+                               final ExecutorService executorService) {
+        final List<Set<ResourceAccess>> accesses = items.stream().map(resourceFunction).collect(Collectors.toList());
+        final List<CompletableFuture<Void>> futures = new ArrayList<>(items.size());
+        final AtomicReferenceArray<RuntimeException> failures = new AtomicReferenceArray<>(items.size());
+        final AtomicReferenceArray<Outcome> outcomes = new AtomicReferenceArray<>(items.size());
+        final AtomicInteger firstFailure = new AtomicInteger(Integer.MAX_VALUE);
+
+        for (int i = 0; i < items.size(); i++) {
+            final List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+            for (int j = 0; j < i; j++) {
+                if (conflicts(accesses.get(i), accesses.get(j))) {
+                    dependencies.add(futures.get(j));
+                }
+            }
+
+            final int index = i;
+            final T item = items.get(i);
+            futures.add(
+                    CompletableFuture.allOf(dependencies.toArray(new CompletableFuture[0]))
+                            .thenRunAsync(() -> {
+                                if (firstFailure.get() < index) {
+                                    log.info("Skipping {} after previous failure", item);
+                                    outcomes.set(index, Outcome.SKIPPED);
+                                    return;
+                                }
+                                try {
+                                    action.accept(item);
+                                    outcomes.set(index, Outcome.APPLIED);
+                                } catch (RuntimeException e) {
+                                    failures.set(index, e);
+                                    outcomes.set(index, Outcome.FAILED);
+                                    firstFailure.accumulateAndGet(index, Math::min);
+                                }
+                            }, executorService)
+            );
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        final List<Outcome> result = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            result.add(outcomes.get(i));
+        }
+
+        return new Result(result, firstFailure.get() == Integer.MAX_VALUE ? Optional.empty() : Optional.of(failures.get(firstFailure.get())));
+    }
+
+    private boolean conflicts(final Set<ResourceAccess> first, final Set<ResourceAccess> second) {
+        for (ResourceAccess firstAccess : first) {
+            for (ResourceAccess secondAccess : second) {
+                if (firstAccess.conflictsWith(secondAccess)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    public enum Outcome {
+        APPLIED,
+        FAILED,
+        SKIPPED
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Result {
+
+        @NonNull
+        private final List<Outcome> outcomes;
+        @NonNull
+        private final Optional<RuntimeException> failure;
+
+        public Result rethrowFailure() {
+            if (failure.isPresent()) {
+                throw failure.get();
+            }
+
+            return this;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Charsets;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.model.es.Document;
+import com.quandoo.lib.elasticsearchmigration.model.migration.TransformMigration;
+import com.quandoo.lib.elasticsearchmigration.util.FutureUtils;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestClient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a {@link TransformMigration} in three stages: one scroll per slice reads the source page by page, the documents
+ * of a page are transformed on a shared worker pool and the results are handed to a {@link BulkWriter}. A scroll only
+ * fetches its next page once the previous one has been transformed and accepted by the writer, so at most one page per
+ * slice plus the requests in flight are held in memory.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Slf4j
+public class DocumentTransformPipeline {
+
+    private static final String SCROLL_KEEP_ALIVE = "5m";
+
+    private final RestClient restClient;
+    private final ExecutorService transformExecutor;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public DocumentTransformPipeline(@NonNull final RestClient restClient, @NonNull final ExecutorService transformExecutor) {
+        this.restClient = restClient;
+        this.transformExecutor = transformExecutor;
+    }
+
+    /**
+     * The scrolls block, so the migration runs on separate threads.
+     */
+    public CompletableFuture<Void> runAsync(final TransformMigration migration, final boolean refresh) {
+        return FutureUtils.runBlocking(() -> run(migration, refresh));
+    }
+
+    public void run(final TransformMigration migration, final boolean refresh) {
+        final int slices = migration.getSlices().orElseGet(() -> getNumberOfShards(migration.getSourceIndex()));
+        final BulkWriter bulkWriter = new BulkWriter(restClient, migration.getConcurrency());
+        final AtomicLong documents = new AtomicLong();
+
+        final List<CompletableFuture<Void>> scrolls = new ArrayList<>(slices);
+        for (int i = 0; i < slices; i++) {
+            final int slice = i;
+            scrolls.add(FutureUtils.runBlocking(() -> scroll(migration, slice, slices, bulkWriter, documents)));
+        }
+        try {
+            CompletableFuture.allOf(scrolls.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            bulkWriter.fail(new MigrationFailedException("Transforming " + migration.getSourceIndex() + " failed", FutureUtils.unwrap(e)));
+        }
+
+        bulkWriter.awaitCompletion();
+        if (refresh) {
+            refresh(migration.getDestIndex());
+        }
+        log.info("Transformed {} documents from {} into {}", documents.get(), migration.getSourceIndex(), migration.getDestIndex());
+    }
+
+    private void scroll(final TransformMigration migration, final int slice, final int slices, final BulkWriter bulkWriter, final AtomicLong documents) {
+        String scrollId = null;
+        try {
+            JsonNode page = search("/" + migration.getSourceIndex() + "/_search", createSearchBody(migration, slice, slices));
+            while (true) {
+                scrollId = page.path("_scroll_id").asText(null);
+                final JsonNode hits = page.path("hits").path("hits");
+                if (hits.size() == 0 || bulkWriter.isFailed()) {
+                    return;
+                }
+
+                final Batch batch = transform(migration, hits);
+                if (!batch.getIds().isEmpty()) {
+                    bulkWriter.submit(migration.getUrl(), batch.getBody().toString(), i -> "document " + migration.getDestIndex() + "/" + batch.getIds().get(i));
+                }
+                documents.addAndGet(batch.getIds().size());
+
+                final ObjectNode scrollBody = objectMapper.createObjectNode().put("scroll", SCROLL_KEEP_ALIVE).put("scroll_id", scrollId);
+                page = search("/_search/scroll", objectMapper.writeValueAsString(scrollBody));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            bulkWriter.fail(new MigrationFailedException("Interrupted while transforming " + migration.getSourceIndex(), e));
+        } catch (ResponseException e) {
+            bulkWriter.fail(new MigrationFailedException("Error reading " + migration.getSourceIndex(), e));
+        } catch (IOException e) {
+            bulkWriter.fail(new MigrationFailedException("IO Exception during migration", e));
+        } catch (MigrationFailedException e) {
+            bulkWriter.fail(e);
+        } finally {
+            clearScroll(scrollId);
+        }
+    }
+
+    String createSearchBody(final TransformMigration migration, final int slice, final int slices) throws IOException {
+        final ObjectNode body = objectMapper.createObjectNode();
+        body.put("size", migration.getBatchSize());
+        // Scrolls sorted by _doc are the cheapest to keep open
+        body.putArray("sort").add("_doc");
+        if (migration.getQuery().isPresent()) {
+            body.set("query", objectMapper.readTree(migration.getQuery().get()));
+        }
+        if (slices > 1) {
+            body.putObject("slice").put("id", slice).put("max", slices);
+        }
+
+        return objectMapper.writeValueAsString(body);
+    }
+
+    /**
+     * Transforms the documents of a page in parallel and returns the results in the order of the page.
+     */
+    Batch transform(final TransformMigration migration, final JsonNode hits) throws JsonProcessingException {
+        final List<String> ids = new ArrayList<>(hits.size());
+        final List<CompletableFuture<Optional<Document>>> results = new ArrayList<>(hits.size());
+        for (JsonNode hit : hits) {
+            final String id = hit.path("_id").asText();
+            final JsonNode source = hit.path("_source");
+            if (!source.isObject()) {
+                throw new MigrationFailedException("Document " + migration.getSourceIndex() + "/" + id + " has no _source");
+            }
+
+            final Document document = new Document(id, (ObjectNode) source);
+            ids.add(id);
+            results.add(CompletableFuture.supplyAsync(() -> migration.getTransformer().transform(document), transformExecutor));
+        }
+
+        final Batch batch = new Batch();
+        final Iterator<String> idIterator = ids.iterator();
+        for (CompletableFuture<Optional<Document>> result : results) {
+            final String id = idIterator.next();
+            final Optional<Document> transformed;
+            try {
+                transformed = result.join();
+            } catch (CompletionException e) {
+                throw new MigrationFailedException("Transforming document " + migration.getSourceIndex() + "/" + id + " failed", FutureUtils.unwrap(e));
+            }
+
+            if (transformed.isPresent()) {
+                batch.add(transformed.get().getId(), objectMapper.writeValueAsString(createAction(transformed.get())), objectMapper.writeValueAsString(transformed.get().getSource()));
+            }
+        }
+
+        return batch;
+    }
+
+    private JsonNode createAction(final Document document) {
+        return objectMapper.createObjectNode().set("index", objectMapper.createObjectNode().put("_id", document.getId()));
+    }
+
+    private JsonNode search(final String url, final String body) throws IOException {
+        final Request request = new Request("POST", url);
+        if (!url.startsWith("/_search/scroll")) {
+            request.addParameter("scroll", SCROLL_KEEP_ALIVE);
+        }
+        request.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+
+        return objectMapper.readTree(EntityUtils.toString(restClient.performRequest(request).getEntity(), Charsets.UTF_8));
+    }
+
+    private void clearScroll(final String scrollId) {
+        if (scrollId == null) {
+            return;
+        }
+
+        try {
+            final Request request = new Request("DELETE", "/_search/scroll");
+            request.setEntity(new StringEntity(objectMapper.writeValueAsString(objectMapper.createObjectNode().put("scroll_id", scrollId)), ContentType.APPLICATION_JSON));
+            restClient.performRequest(request);
+        } catch (IOException e) {
+            // The scroll expires on its own
+            log.debug("Clearing scroll failed", e);
+        }
+    }
+
+    private int getNumberOfShards(final String index) {
+        try {
+            final Request request = new Request("GET", "/" + index + "/_settings/index.number_of_shards");
+            final JsonNode settings = objectMapper.readTree(EntityUtils.toString(restClient.performRequest(request).getEntity(), Charsets.UTF_8));
+            int shards = 0;
+            for (JsonNode indexSettings : settings) {
+                shards += indexSettings.path("settings").path("index").path("number_of_shards").asInt(1);
+            }
+
+            return Math.max(shards, 1);
+        } catch (ResponseException e) {
+            throw new MigrationFailedException("Error reading settings of " + index, e);
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    private void refresh(final String index) {
+        try {
+            restClient.performRequest(new Request("POST", "/" + index + "/_refresh"));
+        } catch (ResponseException e) {
+            throw new MigrationFailedException("Error refreshing " + index, e);
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    @Getter
+    static class Batch {
+        private final List<String> ids = new ArrayList<>();
+        private final StringBuilder body = new StringBuilder();
+
+        private void add(final String id, final String action, final String source) {
+            ids.add(id);
+            body.append(action).append('\n').append(source).append('\n');
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.model.es.MigrationEntry;
+import com.quandoo.lib.elasticsearchmigration.model.es.MigrationEntryMeta;
+import com.quandoo.lib.elasticsearchmigration.model.es.SnapshotEntry;
+import com.quandoo.lib.elasticsearchmigration.model.es.SnapshotVersion;
+import com.quandoo.lib.elasticsearchmigration.model.es.State;
+import com.quandoo.lib.elasticsearchmigration.util.FutureUtils;
+import com.quandoo.lib.elasticsearchmigration.util.VersionComparator;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.seqno.SequenceNumbers;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps one document per identifier holding its history ordered by version. Every change is written with a
+ * compare-and-set on the sequence number of the last write, so a process which lost the global lock never overwrites
+ * the snapshot of the new holder.
+ * <p>
+ * The snapshot is written before a version entry is created and after its state changed, so it lists every version
+ * entry and a version is only {@link State#SUCCESS} in the snapshot once its entry is. All other versions are read
+ * from their entries, which stay the source of truth, and the snapshot is repaired if they disagree. So are the local
+ * versions missing from the snapshot, which finds entries written without updating it, e.g. by an older release.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Slf4j
+public class HistorySnapshot {
+
+    private static final Pattern VERSION_REGEX_PATTERN = Pattern.compile("^((?:\\d+\\.)*\\d)$");
+    private static final Comparator<SnapshotVersion> VERSION_COMPARATOR = new VersionComparator<>(VERSION_REGEX_PATTERN, 1, ".", SnapshotVersion::getVersion);
+    private static final Comparator<MigrationEntry> ENTRY_VERSION_COMPARATOR = new VersionComparator<>(VERSION_REGEX_PATTERN, 1, ".", MigrationEntry::getVersion);
+
+    private final RestHighLevelClient restHighLevelClient;
+    private final ObjectMapper objectMapper;
+    private final MigrationHistoryLoader migrationHistoryLoader;
+    private final String identifier;
+
+    private List<SnapshotVersion> versions = Collections.emptyList();
+    private long seqNo = SequenceNumbers.UNASSIGNED_SEQ_NO;
+    private long primaryTerm = SequenceNumbers.UNASSIGNED_PRIMARY_TERM;
+    private CompletableFuture<Void> pendingWrite = CompletableFuture.completedFuture(null);
+
+    public HistorySnapshot(@NonNull final RestHighLevelClient restHighLevelClient,
+                           @NonNull final ObjectMapper objectMapper,
+                           @NonNull final MigrationHistoryLoader migrationHistoryLoader,
+                           @NonNull final String identifier) {
+        this.restHighLevelClient = restHighLevelClient;
+        this.objectMapper = objectMapper;
+        this.migrationHistoryLoader = migrationHistoryLoader;
+        this.identifier = identifier;
+    }
+
+    /**
+     * @param localVersions versions of the local migration set, read from their entries if the snapshot doesn't list them
+     * @return the history ordered by version or empty if there is no snapshot yet
+     */
+    public Optional<List<MigrationEntry>> load(@NonNull final Collection<String> localVersions) {
+        final Optional<List<SnapshotVersion>> snapshotVersions;
+        try {
+            snapshotVersions = read(restHighLevelClient.get(createGetRequest(), RequestOptions.DEFAULT));
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+        if (!snapshotVersions.isPresent()) {
+            return Optional.empty();
+        }
+
+        final List<MigrationEntry> unsettled = migrationHistoryLoader.loadVersions(getVersionsToRead(snapshotVersions.get(), localVersions));
+        final List<MigrationEntry> migrationEntries = resolve(identifier, snapshotVersions.get(), unsettled);
+        if (!isConsistent(snapshotVersions.get(), migrationEntries)) {
+            log.info("History snapshot of {} is behind its version entries. Repairing it", identifier);
+            store(migrationEntries);
+        }
+        return Optional.of(migrationEntries);
+    }
+
+    public CompletableFuture<Optional<List<MigrationEntry>>> loadAsync(@NonNull final Collection<String> localVersions) {
+        final CompletableFuture<GetResponse> future = new CompletableFuture<>();
+        restHighLevelClient.getAsync(createGetRequest(), RequestOptions.DEFAULT, FutureUtils.toActionListener(future));
+
+        return future.thenApply(this::read).thenCompose(snapshotVersions -> {
+            if (!snapshotVersions.isPresent()) {
+                return CompletableFuture.completedFuture(Optional.<List<MigrationEntry>>empty());
+            }
+
+            return migrationHistoryLoader.loadVersionsAsync(getVersionsToRead(snapshotVersions.get(), localVersions)).thenCompose(unsettled -> {
+                final List<MigrationEntry> migrationEntries = resolve(identifier, snapshotVersions.get(), unsettled);
+                if (isConsistent(snapshotVersions.get(), migrationEntries)) {
+                    return CompletableFuture.completedFuture(Optional.of(migrationEntries));
+                }
+
+                log.info("History snapshot of {} is behind its version entries. Repairing it", identifier);
+                return storeAsync(migrationEntries).thenApply(ignored -> Optional.of(migrationEntries));
+            });
+        });
+    }
+
+    /**
+     * Replaces the snapshot with the given history, e.g. one built from the version entries.
+     */
+    public void store(@NonNull final List<MigrationEntry> migrationEntries) {
+        update(current -> toSnapshotVersions(migrationEntries));
+    }
+
+    public CompletableFuture<Void> storeAsync(@NonNull final List<MigrationEntry> migrationEntries) {
+        return updateAsync(current -> toSnapshotVersions(migrationEntries));
+    }
+
+    /**
+     * Adds the version of the given entry or replaces it.
+     */
+    public void put(@NonNull final MigrationEntry migrationEntry) {
+        update(current -> put(current, toSnapshotVersion(migrationEntry)));
+    }
+
+    public CompletableFuture<Void> putAsync(@NonNull final MigrationEntry migrationEntry) {
+        return updateAsync(current -> put(current, toSnapshotVersion(migrationEntry)));
+    }
+
+    public void updateState(@NonNull final String version, @NonNull final State state) {
+        update(current -> updateState(current, version, state));
+    }
+
+    public CompletableFuture<Void> updateStateAsync(@NonNull final String version, @NonNull final State state) {
+        return updateAsync(current -> updateState(current, version, state));
+    }
+
+    /**
+     * The change is only taken over once it is written, a failed write leaves the snapshot as it was.
+     */
+    private synchronized void update(final UnaryOperator<List<SnapshotVersion>> change) {
+        final List<SnapshotVersion> snapshotVersions = change.apply(versions);
+        try {
+            written(restHighLevelClient.index(createIndexRequest(snapshotVersions), RequestOptions.DEFAULT), snapshotVersions);
+        } catch (ElasticsearchStatusException e) {
+            throw toWriteException(e);
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    /**
+     * Writes are chained, each one needs the sequence number returned by the previous one. The change is applied to the
+     * last written versions once the previous write finished, a failed write doesn't fail the ones chained after it.
+     */
+    private synchronized CompletableFuture<Void> updateAsync(final UnaryOperator<List<SnapshotVersion>> change) {
+        pendingWrite = pendingWrite.handle((result, throwable) -> null).thenCompose(ignored -> {
+            final List<SnapshotVersion> snapshotVersions = apply(change);
+            final CompletableFuture<IndexResponse> future = new CompletableFuture<>();
+            try {
+                restHighLevelClient.indexAsync(createIndexRequest(snapshotVersions), RequestOptions.DEFAULT, FutureUtils.toActionListener(future));
+            } catch (JsonProcessingException e) {
+                return FutureUtils.<Void>failed(new MigrationFailedException("Error writing history snapshot", e));
+            }
+            return future.handle((response, throwable) -> {
+                if (throwable != null) {
+                    throw toWriteException(FutureUtils.unwrap(throwable));
+                }
+                written(response, snapshotVersions);
+                return null;
+            });
+        });
+        return pendingWrite;
+    }
+
+    private synchronized Optional<List<SnapshotVersion>> read(final GetResponse response) {
+        pendingWrite = CompletableFuture.completedFuture(null);
+        if (!response.isExists()) {
+            versions = Collections.emptyList();
+            seqNo = SequenceNumbers.UNASSIGNED_SEQ_NO;
+            primaryTerm = SequenceNumbers.UNASSIGNED_PRIMARY_TERM;
+            return Optional.empty();
+        }
+
+        try {
+            versions = objectMapper.readValue(response.getSourceAsString(), SnapshotEntry.class).getVersions();
+        } catch (IOException e) {
+            throw new MigrationFailedException("Error reading history snapshot", e);
+        }
+        seqNo = response.getSeqNo();
+        primaryTerm = response.getPrimaryTerm();
+        return Optional.of(versions);
+    }
+
+    synchronized List<SnapshotVersion> getVersions() {
+        return versions;
+    }
+
+    private synchronized List<SnapshotVersion> apply(final UnaryOperator<List<SnapshotVersion>> change) {
+        return change.apply(versions);
+    }
+
+    private synchronized void written(final IndexResponse response, final List<SnapshotVersion> snapshotVersions) {
+        versions = snapshotVersions;
+        seqNo = response.getSeqNo();
+        primaryTerm = response.getPrimaryTerm();
+    }
+
+    private GetRequest createGetRequest() {
+        return new GetRequest(MigrationEntryMeta.INDEX, identifier + MigrationEntryMeta.SNAPSHOT_ID_SUFFIX).realtime(true);
+    }
+
+    private synchronized IndexRequest createIndexRequest(final List<SnapshotVersion> snapshotVersions) throws JsonProcessingException {
+        final IndexRequest request = new IndexRequest().index(MigrationEntryMeta.INDEX)
+                .id(identifier + MigrationEntryMeta.SNAPSHOT_ID_SUFFIX)
+                .source(objectMapper.writeValueAsString(new SnapshotEntry(snapshotVersions, Instant.now())), XContentType.JSON);
+        return seqNo == SequenceNumbers.UNASSIGNED_SEQ_NO ? request.create(true) : request.setIfSeqNo(seqNo).setIfPrimaryTerm(primaryTerm);
+    }
+
+    private MigrationFailedException toWriteException(final Throwable throwable) {
+        if (throwable instanceof ElasticsearchStatusException && ((ElasticsearchStatusException) throwable).status() == RestStatus.CONFLICT) {
+            return new MigrationFailedException("History snapshot of " + identifier + " was changed by another process", throwable);
+        }
+        return new MigrationFailedException("Error writing history snapshot", throwable);
+    }
+
+    /**
+     * Unsettled versions of the snapshot and local versions it doesn't know.
+     */
+    static Set<String> getVersionsToRead(final List<SnapshotVersion> snapshotVersions, final Collection<String> localVersions) {
+        final Set<String> versions = snapshotVersions.stream().filter(e -> e.getState() != State.SUCCESS).map(SnapshotVersion::getVersion).collect(Collectors.toCollection(LinkedHashSet::new));
+        final Set<String> snapshotted = snapshotVersions.stream().map(SnapshotVersion::getVersion).collect(Collectors.toSet());
+        localVersions.stream().filter(e -> !snapshotted.contains(e)).forEach(versions::add);
+        return versions;
+    }
+
+    /**
+     * Unsettled versions without an entry were never started. Entries of versions the snapshot doesn't list are added.
+     */
+    static List<MigrationEntry> resolve(final String identifier, final List<SnapshotVersion> snapshotVersions, final List<MigrationEntry> unsettled) {
+        final Map<String, MigrationEntry> unsettledByVersion = new HashMap<>();
+        unsettled.forEach(e -> unsettledByVersion.put(e.getVersion(), e));
+
+        final List<MigrationEntry> migrationEntries = new ArrayList<>();
+        for (SnapshotVersion snapshotVersion : snapshotVersions) {
+            if (snapshotVersion.getState() == State.SUCCESS) {
+                migrationEntries.add(new MigrationEntry(
+                        identifier,
+                        snapshotVersion.getVersion(),
+                        snapshotVersion.getName(),
+                        snapshotVersion.getSha256Checksum(),
+                        State.SUCCESS,
+                        null,
+                        snapshotVersion.getCreated()
+                ));
+            } else if (unsettledByVersion.containsKey(snapshotVersion.getVersion())) {
+                migrationEntries.add(unsettledByVersion.get(snapshotVersion.getVersion()));
+            }
+            unsettledByVersion.remove(snapshotVersion.getVersion());
+        }
+
+        if (!unsettledByVersion.isEmpty()) {
+            migrationEntries.addAll(unsettledByVersion.values());
+            migrationEntries.sort(ENTRY_VERSION_COMPARATOR);
+        }
+        return migrationEntries;
+    }
+
+    static boolean isConsistent(final List<SnapshotVersion> snapshotVersions, final List<MigrationEntry> migrationEntries) {
+        if (snapshotVersions.size() != migrationEntries.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < snapshotVersions.size(); i++) {
+            if (snapshotVersions.get(i).getState() != migrationEntries.get(i).getState()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static List<SnapshotVersion> put(final List<SnapshotVersion> snapshotVersions, final SnapshotVersion snapshotVersion) {
+        final List<SnapshotVersion> result = snapshotVersions.stream()
+                .filter(e -> !e.getVersion().equals(snapshotVersion.getVersion()))
+                .collect(Collectors.toCollection(ArrayList::new));
+        result.add(snapshotVersion);
+        result.sort(VERSION_COMPARATOR);
+        return result;
+    }
+
+    private static List<SnapshotVersion> updateState(final List<SnapshotVersion> snapshotVersions, final String version, final State state) {
+        return snapshotVersions.stream().map(e -> e.getVersion().equals(version) ? e.withState(state) : e).collect(Collectors.toList());
+    }
+
+    private static List<SnapshotVersion> toSnapshotVersions(final List<MigrationEntry> migrationEntries) {
+        final List<SnapshotVersion> result = migrationEntries.stream().map(HistorySnapshot::toSnapshotVersion).collect(Collectors.toCollection(ArrayList::new));
+        result.sort(VERSION_COMPARATOR);
+        return result;
+    }
+
+    private static SnapshotVersion toSnapshotVersion(final MigrationEntry migrationEntry) {
+        return new SnapshotVersion(migrationEntry.getVersion(), migrationEntry.getName(), migrationEntry.getSha256Checksum(), migrationEntry.getState(), migrationEntry.getCreated());
+    }
+}
@@ -0,0 +1,331 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationLockedException;
+import com.quandoo.lib.elasticsearchmigration.model.es.LockEntry;
+import com.quandoo.lib.elasticsearchmigration.model.es.LockEntryMeta;
+import com.quandoo.lib.elasticsearchmigration.util.FutureUtils;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Global lock held as a lease. The holder renews the lock document every third of the lease duration. A lock whose lease
+ * ran out, e.g. because its holder was killed, is taken over with a compare-and-set on its sequence number so only one
+ * waiter wins. Every write of the holder is conditional as well, a holder that lost its lease never touches the new one.
+ * The holder has to call {@link Lease#checkHeld()} before each of its own writes, the lease is considered lost once a
+ * renewal conflicted or once no renewal succeeded for a whole lease duration.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Slf4j
+public class LeaseLock {
+
+    private final RestHighLevelClient restHighLevelClient;
+    private final ObjectMapper objectMapper;
+    private final String id;
+    private final long leaseDurationInMillis;
+    private final String owner;
+
+    public LeaseLock(@NonNull final RestHighLevelClient restHighLevelClient,
+                     @NonNull final ObjectMapper objectMapper,
+                     @NonNull final String id,
+                     final long leaseDurationInMillis) {
+        this.restHighLevelClient = restHighLevelClient;
+        this.objectMapper = objectMapper;
+        this.id = id;
+        this.leaseDurationInMillis = leaseDurationInMillis;
+        this.owner = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+    }
+
+    /**
+     * @throws MigrationLockedException if another process holds an unexpired lease
+     */
+    public Lease acquire() {
+        final long requestedAtInMillis = System.currentTimeMillis();
+        try {
+            return new Lease(restHighLevelClient.index(createLeaseRequest().create(true), RequestOptions.DEFAULT), requestedAtInMillis);
+        } catch (ElasticsearchStatusException e) {
+            if (!isConflict(e)) {
+                throw new MigrationFailedException("Error acquiring lock", e);
+            }
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+
+        try {
+            final GetResponse current = restHighLevelClient.get(new GetRequest(LockEntryMeta.INDEX, id), RequestOptions.DEFAULT);
+            checkExpired(current);
+            final long takeoverRequestedAtInMillis = System.currentTimeMillis();
+            return new Lease(restHighLevelClient.index(createTakeoverRequest(current), RequestOptions.DEFAULT), takeoverRequestedAtInMillis);
+        } catch (ElasticsearchStatusException e) {
+            if (isConflict(e)) {
+                throw new MigrationLockedException("Expired lock was taken over by another process");
+            }
+            throw new MigrationFailedException("Error acquiring lock", e);
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    public CompletableFuture<Lease> acquireAsync() {
+        final long requestedAtInMillis = System.currentTimeMillis();
+        final CompletableFuture<IndexResponse> created = new CompletableFuture<>();
+        try {
+            restHighLevelClient.indexAsync(createLeaseRequest().create(true), RequestOptions.DEFAULT, FutureUtils.toActionListener(created));
+        } catch (JsonProcessingException e) {
+            return FutureUtils.failed(new MigrationFailedException("Error acquiring lock", e));
+        }
+
+        return created.handle((response, throwable) -> {
+            if (throwable == null) {
+                return CompletableFuture.completedFuture(new Lease(response, requestedAtInMillis));
+            }
+
+            final Throwable cause = FutureUtils.unwrap(throwable);
+            if (!isConflict(cause)) {
+                return FutureUtils.<Lease>failed(new MigrationFailedException("Error acquiring lock", cause));
+            }
+            return takeOverAsync();
+        }).thenCompose(lease -> lease);
+    }
+
+    /**
+     * The lease is counted from before reading the expired lock, earlier than the takeover itself.
+     */
+    private CompletableFuture<Lease> takeOverAsync() {
+        final long requestedAtInMillis = System.currentTimeMillis();
+        final CompletableFuture<GetResponse> current = new CompletableFuture<>();
+        restHighLevelClient.getAsync(new GetRequest(LockEntryMeta.INDEX, id), RequestOptions.DEFAULT, FutureUtils.toActionListener(current));
+
+        return current.thenCompose(response -> {
+            checkExpired(response);
+
+            final CompletableFuture<IndexResponse> takenOver = new CompletableFuture<>();
+            try {
+                restHighLevelClient.indexAsync(createTakeoverRequest(response), RequestOptions.DEFAULT, FutureUtils.toActionListener(takenOver));
+            } catch (JsonProcessingException e) {
+                return FutureUtils.<IndexResponse>failed(new MigrationFailedException("Error acquiring lock", e));
+            }
+            return takenOver;
+        }).handle((response, throwable) -> {
+            if (throwable == null) {
+                return new Lease(response, requestedAtInMillis);
+            }
+
+            final Throwable cause = FutureUtils.unwrap(throwable);
+            if (cause instanceof MigrationLockedException) {
+                throw (MigrationLockedException) cause;
+            } else if (isConflict(cause)) {
+                throw new MigrationLockedException("Expired lock was taken over by another process");
+            }
+            throw new MigrationFailedException("Error acquiring lock", cause);
+        });
+    }
+
+    private void checkExpired(final GetResponse current) {
+        if (!current.isExists()) {
+            throw new MigrationLockedException("Migration lock was released concurrently", 0L);
+        }
+
+        final LockEntry lockEntry = readLockEntry(current);
+        if (lockEntry.getExpires() == null) {
+            throw new MigrationLockedException("Migration is locked by another process");
+        }
+
+        final long expiresInMillis = Duration.between(Instant.now(), lockEntry.getExpires()).toMillis();
+        if (expiresInMillis > 0) {
+            throw new MigrationLockedException("Migration is locked by " + lockEntry.getOwner() + " until " + lockEntry.getExpires(), expiresInMillis);
+        }
+
+        log.warn("Lock of {} expired at {}. Taking it over", lockEntry.getOwner(), lockEntry.getExpires());
+    }
+
+    private LockEntry readLockEntry(final GetResponse current) {
+        try {
+            return objectMapper.readValue(current.getSourceAsString(), LockEntry.class);
+        } catch (IOException e) {
+            throw new MigrationFailedException("Error reading lock", e);
+        }
+    }
+
+    private IndexRequest createLeaseRequest() throws JsonProcessingException {
+        final Instant now = Instant.now();
+        return new IndexRequest().index(LockEntryMeta.INDEX)
+                .id(id)
+                .source(objectMapper.writeValueAsString(new LockEntry(now, owner, now.plusMillis(leaseDurationInMillis))), XContentType.JSON);
+    }
+
+    private IndexRequest createTakeoverRequest(final GetResponse current) throws JsonProcessingException {
+        return createLeaseRequest().setIfSeqNo(current.getSeqNo()).setIfPrimaryTerm(current.getPrimaryTerm());
+    }
+
+    private boolean isConflict(final Throwable throwable) {
+        return throwable instanceof ElasticsearchStatusException && ((ElasticsearchStatusException) throwable).status() == RestStatus.CONFLICT;
+    }
+
+    /**
+     * A held lock. Renewed in the background until {@link #release()} is called.
+     */
+    public final class Lease {
+
+        private volatile long seqNo;
+        private volatile long primaryTerm;
+        private volatile boolean lost = false;
+        /**
+         * Counted from before the last successful write of the lock, so it never outlives the lease stored in ES.
+         */
+        private volatile long expiresAtInMillis;
+        private boolean released = false;
+        private CompletableFuture<Void> renewal = CompletableFuture.completedFuture(null);
+
+        private Lease(final IndexResponse response, final long requestedAtInMillis) {
+            this.seqNo = response.getSeqNo();
+            this.primaryTerm = response.getPrimaryTerm();
+            this.expiresAtInMillis = requestedAtInMillis + leaseDurationInMillis;
+            scheduleRenewal();
+        }
+
+        /**
+         * True once a renewal found the lock deleted or taken over, or once renewals kept failing until the lease ran
+         * out and another process may have taken it over.
+         */
+        public boolean isLost() {
+            return lost || System.currentTimeMillis() >= expiresAtInMillis;
+        }
+
+        /**
+         * @throws MigrationFailedException if the lease is lost, nothing may be written for the migration any more
+         */
+        public void checkHeld() {
+            if (isLost()) {
+                throw new MigrationFailedException("Lost migration lock " + id + ". It was deleted, taken over by another process or not renewed in time. Aborting");
+            }
+        }
+
+        public void release() {
+            stopRenewal().join();
+            if (lost) {
+                return;
+            }
+
+            try {
+                restHighLevelClient.delete(createReleaseRequest(), RequestOptions.DEFAULT);
+            } catch (ElasticsearchStatusException e) {
+                if (!isConflict(e)) {
+                    throw new MigrationFailedException("Error releasing lock", e);
+                }
+                log.warn("Lock {} was taken over by another process before it was released", id);
+            } catch (IOException e) {
+                throw new MigrationFailedException("IO Exception during migration", e);
+            }
+        }
+
+        public CompletableFuture<Void> releaseAsync() {
+            return stopRenewal().thenCompose(ignored -> {
+                if (lost) {
+                    return CompletableFuture.<Void>completedFuture(null);
+                }
+
+                final CompletableFuture<DeleteResponse> future = new CompletableFuture<>();
+                restHighLevelClient.deleteAsync(createReleaseRequest(), RequestOptions.DEFAULT, FutureUtils.toActionListener(future));
+                return future.handle((response, throwable) -> {
+                    final Throwable cause = throwable == null ? null : FutureUtils.unwrap(throwable);
+                    if (cause != null && !isConflict(cause)) {
+                        throw new MigrationFailedException("Error releasing lock", cause);
+                    } else if (cause != null) {
+                        log.warn("Lock {} was taken over by another process before it was released", id);
+                    }
+                    return null;
+                });
+            });
+        }
+
+        private DeleteRequest createReleaseRequest() {
+            return new DeleteRequest().index(LockEntryMeta.INDEX).id(id).setIfSeqNo(seqNo).setIfPrimaryTerm(primaryTerm);
+        }
+
+        /**
+         * Prevents further renewals and returns the one in flight, the release has to be sent with its sequence number.
+         */
+        private synchronized CompletableFuture<Void> stopRenewal() {
+            released = true;
+            return renewal;
+        }
+
+        private void scheduleRenewal() {
+            FutureUtils.delay(leaseDurationInMillis / 3).thenRun(this::renew);
+        }
+
+        private synchronized void renew() {
+            if (released) {
+                return;
+            }
+
+            renewal = sendRenewal().thenRun(() -> {
+                if (!lost) {
+                    scheduleRenewal();
+                }
+            });
+        }
+
+        private CompletableFuture<Void> sendRenewal() {
+            final long requestedAtInMillis = System.currentTimeMillis();
+            final CompletableFuture<IndexResponse> future = new CompletableFuture<>();
+            try {
+                restHighLevelClient.indexAsync(createLeaseRequest().setIfSeqNo(seqNo).setIfPrimaryTerm(primaryTerm), RequestOptions.DEFAULT, FutureUtils.toActionListener(future));
+            } catch (JsonProcessingException e) {
+                future.completeExceptionally(e);
+            }
+
+            return future.handle((response, throwable) -> {
+                if (throwable == null) {
+                    seqNo = response.getSeqNo();
+                    primaryTerm = response.getPrimaryTerm();
+                    expiresAtInMillis = requestedAtInMillis + leaseDurationInMillis;
+                } else if (isConflict(FutureUtils.unwrap(throwable))) {
+                    lost = true;
+                    log.error("Lost lock {}. It was deleted or taken over by another process", id);
+                } else {
+                    log.warn("Renewing lock {} failed. Retrying", id, FutureUtils.unwrap(throwable));
+                }
+                return null;
+            });
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationLockedException;
+import com.quandoo.lib.elasticsearchmigration.model.es.FingerprintEntry;
+import com.quandoo.lib.elasticsearchmigration.model.es.LockEntry;
+import com.quandoo.lib.elasticsearchmigration.model.es.LockEntryMeta;
+import com.quandoo.lib.elasticsearchmigration.model.es.MigrationEntryMeta;
+import com.quandoo.lib.elasticsearchmigration.util.FutureUtils;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Waits for a locked migration to end. The lock and the fingerprint documents are polled together with a realtime
+ * <code>_mget</code>, starting at a short interval which doubles up to a maximum, each delay jittered so many waiters
+ * don't poll in lockstep. Waiting ends once the holder stored the fingerprint the waiter wants to reach, then there
+ * is nothing left to do, or once the lock is free to be acquired.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Slf4j
+public class LockWaiter {
+
+    public enum Outcome {
+        COMPLETED,
+        RELEASED
+    }
+
+    private final RestHighLevelClient restHighLevelClient;
+    private final ObjectMapper objectMapper;
+    private final String lockId;
+    private final String fingerprintId;
+    private final long pollIntervalInMillis;
+    private final long maxPollIntervalInMillis;
+
+    public LockWaiter(@NonNull final RestHighLevelClient restHighLevelClient,
+                      @NonNull final ObjectMapper objectMapper,
+                      @NonNull final String lockId,
+                      @NonNull final String fingerprintId,
+                      final long pollIntervalInMillis,
+                      final long maxPollIntervalInMillis) {
+        this.restHighLevelClient = restHighLevelClient;
+        this.objectMapper = objectMapper;
+        this.lockId = lockId;
+        this.fingerprintId = fingerprintId;
+        this.pollIntervalInMillis = pollIntervalInMillis;
+        this.maxPollIntervalInMillis = maxPollIntervalInMillis;
+    }
+
+    /**
+     * @throws MigrationLockedException the given one, if the lock is still held at the deadline
+     */
+    public Outcome await(final String fingerprint, final long deadlineInMillis, final MigrationLockedException lockedException) {
+        long interval = pollIntervalInMillis;
+        while (true) {
+            sleep(nextDelay(interval, deadlineInMillis, lockedException));
+            final MultiGetResponse response;
+            try {
+                response = restHighLevelClient.mget(createPollRequest(), RequestOptions.DEFAULT);
+            } catch (IOException e) {
+                throw new MigrationFailedException("IO Exception during migration", e);
+            }
+
+            final Outcome outcome = toOutcome(response, fingerprint);
+            if (outcome != null) {
+                return outcome;
+            }
+            interval = Math.min(interval * 2, maxPollIntervalInMillis);
+        }
+    }
+
+    public CompletableFuture<Outcome> awaitAsync(final String fingerprint, final long deadlineInMillis, final MigrationLockedException lockedException) {
+        return awaitAsync(fingerprint, deadlineInMillis, lockedException, pollIntervalInMillis);
+    }
+
+    private CompletableFuture<Outcome> awaitAsync(final String fingerprint, final long deadlineInMillis, final MigrationLockedException lockedException, final long interval) {
+        final long delay;
+        try {
+            delay = nextDelay(interval, deadlineInMillis, lockedException);
+        } catch (MigrationLockedException e) {
+            return FutureUtils.failed(e);
+        }
+
+        return FutureUtils.delay(delay)
+                .thenCompose(ignored -> {
+                    final CompletableFuture<MultiGetResponse> future = new CompletableFuture<>();
+                    restHighLevelClient.mgetAsync(createPollRequest(), RequestOptions.DEFAULT, FutureUtils.toActionListener(future));
+                    return future;
+                })
+                .thenCompose(response -> {
+                    final Outcome outcome = toOutcome(response, fingerprint);
+                    return outcome != null ?
+                            CompletableFuture.completedFuture(outcome) :
+                            awaitAsync(fingerprint, deadlineInMillis, lockedException, Math.min(interval * 2, maxPollIntervalInMillis));
+                });
+    }
+
+    /**
+     * Half of the interval is fixed, the other half random.
+     */
+    long nextDelay(final long interval, final long deadlineInMillis, final MigrationLockedException lockedException) {
+        final long delay = interval / 2 + ThreadLocalRandom.current().nextLong(interval / 2 + 1);
+        if (System.currentTimeMillis() + delay > deadlineInMillis) {
+            throw lockedException;
+        }
+
+        return delay;
+    }
+
+    private MultiGetRequest createPollRequest() {
+        // Realtime by default, sees the documents before the next refresh
+        return new MultiGetRequest()
+                .add(LockEntryMeta.INDEX, lockId)
+                .add(MigrationEntryMeta.INDEX, fingerprintId);
+    }
+
+    /**
+     * @return null while the lock is held by someone else
+     */
+    private Outcome toOutcome(final MultiGetResponse response, final String fingerprint) {
+        final GetResponse lock = getResponse(response.getResponses()[0]);
+        final GetResponse storedFingerprint = getResponse(response.getResponses()[1]);
+
+        if (storedFingerprint.isExists() && fingerprint.equals(read(storedFingerprint, FingerprintEntry.class).getFingerprint())) {
+            log.info("Migration completed by the lock holder");
+            return Outcome.COMPLETED;
+        } else if (!lock.isExists()) {
+            return Outcome.RELEASED;
+        }
+
+        final Instant expires = read(lock, LockEntry.class).getExpires();
+        return expires != null && !expires.isAfter(Instant.now()) ? Outcome.RELEASED : null;
+    }
+
+    private GetResponse getResponse(final MultiGetItemResponse itemResponse) {
+        if (itemResponse.isFailed()) {
+            throw new MigrationFailedException("Error polling lock. Message: " + itemResponse.getFailure().getMessage(), itemResponse.getFailure().getFailure());
+        }
+
+        return itemResponse.getResponse();
+    }
+
+    private <T> T read(final GetResponse response, final Class<T> clazz) {
+        try {
+            return objectMapper.readValue(response.getSourceAsString(), clazz);
+        } catch (IOException e) {
+            throw new MigrationFailedException("Error reading " + response.getId(), e);
+        }
+    }
+
+    private void sleep(final long delay) {
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MigrationFailedException("Interrupted while waiting for lock " + lockId, e);
+        }
+    }
+}
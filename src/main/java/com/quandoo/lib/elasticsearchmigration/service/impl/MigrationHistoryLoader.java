@@ -0,0 +1,373 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.model.es.MigrationEntry;
+import com.quandoo.lib.elasticsearchmigration.model.es.MigrationEntryMeta;
+import com.quandoo.lib.elasticsearchmigration.model.es.State;
+import com.quandoo.lib.elasticsearchmigration.util.FutureUtils;
+import lombok.Getter;
+import lombok.NonNull;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Loads the version entries of an identifier page by page using <code>search_after</code> on the version, so histories of
+ * any length are read completely. Only the fields needed to check and resume the history are fetched and every page is
+ * read with a streaming parser. The failure message is only fetched for entries which failed.
+ * <p>
+ * With {@link #loadRealtime(Collection)} the known versions are read by id instead, which sees entries not yet refreshed.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class MigrationHistoryLoader {
+
+    static final int DEFAULT_PAGE_SIZE = 1000;
+
+    private static final List<String> SOURCE_FIELDS = ImmutableList.of(
+            MigrationEntryMeta.IDENTIFIER_FIELD,
+            MigrationEntryMeta.VERSION_FIELD,
+            MigrationEntryMeta.NAME_FIELD,
+            MigrationEntryMeta.SHA_256_CHECKSUM_FIELD,
+            MigrationEntryMeta.STATE_FIELD,
+            MigrationEntryMeta.CREATED_FIELD,
+            MigrationEntryMeta.TASK_ID_FIELD,
+            MigrationEntryMeta.TASK_CHANGE_FIELD,
+            MigrationEntryMeta.ORIGINAL_SETTINGS_FIELD
+    );
+
+    private final RestClient restClient;
+    private final ObjectMapper objectMapper;
+    private final String identifier;
+    private final int pageSize;
+
+    public MigrationHistoryLoader(@NonNull final RestClient restClient, @NonNull final ObjectMapper objectMapper, @NonNull final String identifier) {
+        this(restClient, objectMapper, identifier, DEFAULT_PAGE_SIZE);
+    }
+
+    MigrationHistoryLoader(final RestClient restClient, final ObjectMapper objectMapper, final String identifier, final int pageSize) {
+        this.restClient = restClient;
+        this.objectMapper = objectMapper;
+        this.identifier = identifier;
+        this.pageSize = pageSize;
+    }
+
+    public List<MigrationEntry> load() {
+        return withFailureMessages(search(Collections.emptyList()));
+    }
+
+    public CompletableFuture<List<MigrationEntry>> loadAsync() {
+        return searchAsync(Collections.emptyList(), new ArrayList<>(), Optional.empty()).thenCompose(this::withFailureMessagesAsync);
+    }
+
+    /**
+     * Gets the entries of the given versions with a realtime <code>_mget</code> by id, so no refresh is needed to see the
+     * latest writes. Entries of other versions are still searched for, those are only visible after a refresh.
+     */
+    public List<MigrationEntry> loadRealtime(@NonNull final Collection<String> versions) {
+        final List<MigrationEntry> migrationEntries = versions.isEmpty() ?
+                new ArrayList<>() :
+                readEntries(perform(createGetRequest(versions, true)), "docs").getMigrationEntries();
+        migrationEntries.addAll(search(versions));
+        return withFailureMessages(migrationEntries);
+    }
+
+    public CompletableFuture<List<MigrationEntry>> loadRealtimeAsync(@NonNull final Collection<String> versions) {
+        final CompletableFuture<List<MigrationEntry>> migrationEntries = versions.isEmpty() ?
+                CompletableFuture.completedFuture(new ArrayList<>()) :
+                performAsync(createGetRequest(versions, true)).thenApply(response -> readEntries(response, "docs").getMigrationEntries());
+        return migrationEntries
+                .thenCompose(entries -> searchAsync(versions, entries, Optional.empty()))
+                .thenCompose(this::withFailureMessagesAsync);
+    }
+
+    /**
+     * Gets the complete entries of the given versions with a realtime <code>_mget</code>. Versions without an entry are left out.
+     */
+    public List<MigrationEntry> loadVersions(@NonNull final Collection<String> versions) {
+        return versions.isEmpty() ? new ArrayList<>() : readEntries(perform(createGetRequest(versions, false)), "docs").getMigrationEntries();
+    }
+
+    public CompletableFuture<List<MigrationEntry>> loadVersionsAsync(@NonNull final Collection<String> versions) {
+        return versions.isEmpty() ?
+                CompletableFuture.completedFuture(new ArrayList<>()) :
+                performAsync(createGetRequest(versions, false)).thenApply(response -> readEntries(response, "docs").getMigrationEntries());
+    }
+
+    /**
+     * Searches the entries with old indices left to delete after an alias swap. Only a few are expected, a single page is read.
+     */
+    public List<MigrationEntry> loadPendingDeletes() {
+        return readEntries(perform(createPendingDeletesRequest()), "hits", "hits").getMigrationEntries();
+    }
+
+    public CompletableFuture<List<MigrationEntry>> loadPendingDeletesAsync() {
+        return performAsync(createPendingDeletesRequest()).thenApply(response -> readEntries(response, "hits", "hits").getMigrationEntries());
+    }
+
+    private List<MigrationEntry> search(final Collection<String> excludedVersions) {
+        final List<MigrationEntry> migrationEntries = new ArrayList<>();
+        Optional<String> searchAfter = Optional.empty();
+        do {
+            final Page page = toPage(readEntries(perform(createPageRequest(excludedVersions, searchAfter)), "hits", "hits"));
+            migrationEntries.addAll(page.getMigrationEntries());
+            searchAfter = page.getLastVersion();
+        } while (searchAfter.isPresent());
+
+        return migrationEntries;
+    }
+
+    private CompletableFuture<List<MigrationEntry>> searchAsync(final Collection<String> excludedVersions, final List<MigrationEntry> migrationEntries, final Optional<String> searchAfter) {
+        return performAsync(createPageRequest(excludedVersions, searchAfter)).thenCompose(response -> {
+            final Page page = toPage(readEntries(response, "hits", "hits"));
+            migrationEntries.addAll(page.getMigrationEntries());
+            return page.getLastVersion().isPresent() ?
+                    searchAsync(excludedVersions, migrationEntries, page.getLastVersion()) :
+                    CompletableFuture.completedFuture(migrationEntries);
+        });
+    }
+
+    private List<MigrationEntry> withFailureMessages(final List<MigrationEntry> migrationEntries) {
+        final List<String> failedVersions = getFailedVersions(migrationEntries);
+        return failedVersions.isEmpty() ?
+                migrationEntries :
+                withFailureMessages(migrationEntries, readEntries(perform(createGetRequest(failedVersions, false)), "docs").getMigrationEntries());
+    }
+
+    private CompletableFuture<List<MigrationEntry>> withFailureMessagesAsync(final List<MigrationEntry> migrationEntries) {
+        final List<String> failedVersions = getFailedVersions(migrationEntries);
+        if (failedVersions.isEmpty()) {
+            return CompletableFuture.completedFuture(migrationEntries);
+        }
+
+        return performAsync(createGetRequest(failedVersions, false))
+                .thenApply(response -> withFailureMessages(migrationEntries, readEntries(response, "docs").getMigrationEntries()));
+    }
+
+    Request createPageRequest(final Collection<String> excludedVersions, final Optional<String> searchAfter) {
+        final ObjectNode body = objectMapper.createObjectNode();
+        body.put("size", pageSize);
+        body.put("track_total_hits", false);
+        final ObjectNode bool = body.putObject("query").putObject("bool");
+        bool.putArray("filter").addObject().putObject("term").put(MigrationEntryMeta.IDENTIFIER_FIELD, identifier);
+        if (!excludedVersions.isEmpty()) {
+            bool.putArray("must_not").addObject().putObject("ids").set("values", toIds(excludedVersions));
+        }
+        body.putArray("sort").addObject().put(MigrationEntryMeta.VERSION_FIELD, "asc");
+        final ArrayNode source = body.putArray("_source");
+        SOURCE_FIELDS.forEach(source::add);
+        searchAfter.ifPresent(version -> body.putArray("search_after").add(version));
+
+        final Request request = new Request("POST", "/" + MigrationEntryMeta.INDEX + "/_search");
+        request.addParameter("filter_path", "hits.hits._source,hits.hits.sort");
+        request.setEntity(new StringEntity(body.toString(), ContentType.APPLICATION_JSON));
+        return request;
+    }
+
+    Request createPendingDeletesRequest() {
+        final ObjectNode body = objectMapper.createObjectNode();
+        body.put("size", pageSize);
+        body.put("track_total_hits", false);
+        final ArrayNode filter = body.putObject("query").putObject("bool").putArray("filter");
+        filter.addObject().putObject("term").put(MigrationEntryMeta.IDENTIFIER_FIELD, identifier);
+        filter.addObject().putObject("exists").put("field", MigrationEntryMeta.PENDING_DELETES_FIELD);
+        final ArrayNode source = body.putArray("_source");
+        SOURCE_FIELDS.forEach(source::add);
+        source.add(MigrationEntryMeta.PENDING_DELETES_FIELD);
+        source.add(MigrationEntryMeta.PENDING_DELETES_DUE_FIELD);
+
+        final Request request = new Request("POST", "/" + MigrationEntryMeta.INDEX + "/_search");
+        request.addParameter("filter_path", "hits.hits._source");
+        request.setEntity(new StringEntity(body.toString(), ContentType.APPLICATION_JSON));
+        return request;
+    }
+
+    Request createGetRequest(final Collection<String> versions, final boolean sourceFieldsOnly) {
+        final ObjectNode body = objectMapper.createObjectNode();
+        body.set("ids", toIds(versions));
+
+        final Request request = new Request("POST", "/" + MigrationEntryMeta.INDEX + "/_mget");
+        request.addParameter("realtime", "true");
+        request.addParameter("filter_path", "docs._source");
+        if (sourceFieldsOnly) {
+            request.addParameter("_source_includes", String.join(",", SOURCE_FIELDS));
+        }
+        request.setEntity(new StringEntity(body.toString(), ContentType.APPLICATION_JSON));
+        return request;
+    }
+
+    private ArrayNode toIds(final Collection<String> versions) {
+        final ArrayNode ids = objectMapper.createArrayNode();
+        versions.forEach(version -> ids.add(identifier + "-" + version));
+        return ids;
+    }
+
+    Page readPage(final InputStream inputStream) throws IOException {
+        return toPage(readEntries(inputStream, "hits", "hits"));
+    }
+
+    /**
+     * A page shorter than the page size is the last one, no need to ask for the next.
+     */
+    private Page toPage(final Page page) {
+        return page.getMigrationEntries().size() < pageSize ? new Page(page.getMigrationEntries(), Optional.empty()) : page;
+    }
+
+    private Page readEntries(final Response response, final String... path) {
+        try (InputStream inputStream = response.getEntity().getContent()) {
+            return readEntries(inputStream, path);
+        } catch (IOException e) {
+            throw new MigrationFailedException("Could not read '" + MigrationEntryMeta.INDEX + "' index", e);
+        }
+    }
+
+    /**
+     * Streams over the documents of a search or multi get response, only their source and sort values are read.
+     */
+    private Page readEntries(final InputStream inputStream, final String... path) throws IOException {
+        final List<MigrationEntry> migrationEntries = new ArrayList<>();
+        String lastVersion = null;
+        try (JsonParser parser = objectMapper.getFactory().createParser(inputStream)) {
+            if (moveToArray(parser, path)) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        final String field = parser.getCurrentName();
+                        parser.nextToken();
+                        if ("_source".equals(field)) {
+                            migrationEntries.add(objectMapper.readValue(parser, MigrationEntry.class));
+                        } else if ("sort".equals(field)) {
+                            parser.nextToken();
+                            lastVersion = parser.getValueAsString();
+                            parser.skipChildren();
+                            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                                parser.skipChildren();
+                            }
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+            }
+        }
+
+        return new Page(migrationEntries, Optional.ofNullable(lastVersion));
+    }
+
+    /**
+     * Moves the parser into the array found under the given path of nested objects. Filtered responses leave out empty
+     * parts, a missing path means there is nothing to read.
+     */
+    private boolean moveToArray(final JsonParser parser, final String... path) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+
+        for (int i = 0; i < path.length; i++) {
+            boolean found = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final JsonToken value = parser.nextToken();
+                if (path[i].equals(parser.getCurrentName())) {
+                    if (value != (i == path.length - 1 ? JsonToken.START_ARRAY : JsonToken.START_OBJECT)) {
+                        return false;
+                    }
+                    found = true;
+                    break;
+                }
+                parser.skipChildren();
+            }
+            if (!found) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private List<String> getFailedVersions(final List<MigrationEntry> migrationEntries) {
+        return migrationEntries.stream()
+                .filter(e -> e.getState() != State.SUCCESS && !e.isResumable())
+                .map(MigrationEntry::getVersion)
+                .collect(Collectors.toList());
+    }
+
+    private List<MigrationEntry> withFailureMessages(final List<MigrationEntry> migrationEntries, final List<MigrationEntry> failedEntries) {
+        final Map<String, MigrationEntry> failedEntriesByVersion = new HashMap<>();
+        failedEntries.forEach(e -> failedEntriesByVersion.put(e.getVersion(), e));
+        return migrationEntries.stream().map(e -> failedEntriesByVersion.getOrDefault(e.getVersion(), e)).collect(Collectors.toList());
+    }
+
+    private Response perform(final Request request) {
+        try {
+            return restClient.performRequest(request);
+        } catch (ResponseException e) {
+            throw new MigrationFailedException("Could not access '" + MigrationEntryMeta.INDEX + "' index", e);
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    private CompletableFuture<Response> performAsync(final Request request) {
+        final CompletableFuture<Response> future = new CompletableFuture<>();
+        restClient.performRequestAsync(request, FutureUtils.toResponseListener(future));
+        return future.handle((response, throwable) -> {
+            if (throwable == null) {
+                return response;
+            }
+
+            final Throwable cause = FutureUtils.unwrap(throwable);
+            if (cause instanceof ResponseException) {
+                throw new MigrationFailedException("Could not access '" + MigrationEntryMeta.INDEX + "' index", cause);
+            }
+            throw new MigrationFailedException("IO Exception during migration", cause);
+        });
+    }
+
+    @Getter
+    static class Page {
+
+        private final List<MigrationEntry> migrationEntries;
+        private final Optional<String> lastVersion;
+
+        Page(final List<MigrationEntry> migrationEntries, final Optional<String> lastVersion) {
+            this.migrationEntries = migrationEntries;
+            this.lastVersion = lastVersion;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.quandoo.lib.elasticsearchmigration.model.input.ChecksumedMigrationFile;
+import com.quandoo.lib.elasticsearchmigration.model.input.MigrationFile;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Binary form of a migration set written at build time by {@link MigrationPlanCompiler} and read at runtime by
+ * {@link PrecompiledMigrationSetProvider}. Holds the versions in order, each with its validated and normalized
+ * migration file and checksum, or the class of a Java migration. Reading it needs no schema validation, no yaml
+ * parsing and no hashing.
+ * <p>
+ * Layout: magic, format version and entry count, followed by the entries. A yaml entry holds its file version, name,
+ * checksum and the migration file as length prefixed json, a Java entry its class name.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class MigrationPlan {
+
+    public static final String RESOURCE_NAME = "elasticsearch-migration.plan";
+
+    private static final int MAGIC = 0x45534D50;
+    private static final int FORMAT_VERSION = 1;
+    private static final byte YAML_ENTRY = 0;
+    private static final byte JAVA_ENTRY = 1;
+
+    private final ObjectMapper objectMapper = YamlParser.configureMigrationFileMapper(new ObjectMapper());
+
+    public static String getResource(final String basePackage) {
+        return basePackage.replace('.', '/') + "/" + RESOURCE_NAME;
+    }
+
+    public void write(final List<Entry> entries, final OutputStream outputStream) throws IOException {
+        final DataOutputStream out = new DataOutputStream(outputStream);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(entries.size());
+        for (Entry entry : entries) {
+            if (entry.getJavaMigrationClassName().isPresent()) {
+                out.writeByte(JAVA_ENTRY);
+                out.writeUTF(entry.getJavaMigrationClassName().get());
+            } else {
+                final ChecksumedMigrationFile checksumedMigrationFile = entry.getChecksumedMigrationFile().get();
+                final byte[] migrationFile = objectMapper.writeValueAsBytes(checksumedMigrationFile.getMigrationFile());
+                out.writeByte(YAML_ENTRY);
+                out.writeUTF(entry.getFileVersion());
+                out.writeUTF(entry.getName());
+                out.writeUTF(checksumedMigrationFile.getSha256Checksum());
+                out.writeInt(migrationFile.length);
+                out.write(migrationFile);
+            }
+        }
+        out.flush();
+    }
+
+    public List<Entry> read(final InputStream inputStream) throws IOException {
+        final DataInputStream in = new DataInputStream(inputStream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a migration plan");
+        }
+        final int formatVersion = in.readInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported migration plan format " + formatVersion + ". Recompile the plan with this version of the library");
+        }
+
+        final int size = in.readInt();
+        final List<Entry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final byte type = in.readByte();
+            if (type == JAVA_ENTRY) {
+                entries.add(Entry.java(in.readUTF()));
+            } else if (type == YAML_ENTRY) {
+                final String fileVersion = in.readUTF();
+                final String name = in.readUTF();
+                final String sha256Checksum = in.readUTF();
+                final byte[] migrationFile = new byte[in.readInt()];
+                in.readFully(migrationFile);
+                entries.add(Entry.yaml(fileVersion, name, new ChecksumedMigrationFile(objectMapper.readValue(migrationFile, MigrationFile.class), sha256Checksum)));
+            } else {
+                throw new IOException("Unknown migration plan entry type " + type);
+            }
+        }
+
+        return entries;
+    }
+
+    @Getter
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static final class Entry {
+
+        /**
+         * Version as written in the file name, e.g. 1_0_0. Not set for Java migrations.
+         */
+        private final String fileVersion;
+        private final String name;
+        private final Optional<ChecksumedMigrationFile> checksumedMigrationFile;
+        private final Optional<String> javaMigrationClassName;
+
+        public static Entry yaml(final String fileVersion, final String name, final ChecksumedMigrationFile checksumedMigrationFile) {
+            return new Entry(fileVersion, name, Optional.of(checksumedMigrationFile), Optional.empty());
+        }
+
+        public static Entry java(final String javaMigrationClassName) {
+            return new Entry(null, null, Optional.empty(), Optional.of(javaMigrationClassName));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationDiscovery;
+import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationSetEntry;
+import com.quandoo.lib.elasticsearchmigration.service.JavaMigration;
+import com.quandoo.lib.elasticsearchmigration.util.VersionComparator;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.reflections.Reflections;
+import org.reflections.scanners.ResourcesScanner;
+import org.reflections.scanners.SubTypesScanner;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Compiles the migration set of a base package into a {@link MigrationPlan} at build time. Discovers and validates the
+ * migrations like {@link YamlDirectoryMigrationSetProvider} and writes the plan to
+ * <code>{outputDirectory}/{basePackage path}/elasticsearch-migration.plan</code>, e.g. into <code>target/classes</code>
+ * from the <code>process-classes</code> phase.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Slf4j
+public class MigrationPlanCompiler {
+
+    private final YamlDirectoryMigrationSetProvider yamlDirectoryMigrationSetProvider;
+    private final YamlParser yamlParser;
+    private final MigrationPlan migrationPlan;
+
+    public MigrationPlanCompiler() {
+        this.yamlParser = new YamlParser();
+        this.yamlDirectoryMigrationSetProvider = new YamlDirectoryMigrationSetProvider(yamlParser, MigrationDiscovery.REFLECTIONS);
+        this.migrationPlan = new MigrationPlan();
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Usage: MigrationPlanCompiler <basePackage> <outputDirectory>");
+        }
+
+        new MigrationPlanCompiler().compile(args[0], Paths.get(args[1]));
+    }
+
+    /**
+     * @return the written plan
+     */
+    public Path compile(final String basePackage, final Path outputDirectory) throws IOException {
+        checkNotNull(basePackage, "basePackage must not be null");
+        checkNotNull(outputDirectory, "outputDirectory must not be null");
+
+        final Reflections reflections = new Reflections(basePackage, new ResourcesScanner(), new SubTypesScanner());
+        final List<CompiledEntry> compiledEntries = new ArrayList<>();
+        for (String resource : reflections.getResources(YamlDirectoryMigrationSetProvider.MIGRATION_FILE_PATH_PATTERN)) {
+            final Matcher matcher = YamlDirectoryMigrationSetProvider.matchMigrationFile(resource);
+            final MigrationPlan.Entry entry = MigrationPlan.Entry.yaml(matcher.group(1), matcher.group(2), yamlParser.parse(resource));
+            compiledEntries.add(new CompiledEntry(
+                    entry,
+                    yamlDirectoryMigrationSetProvider.createYamlMigrationSetEntry(entry.getFileVersion(), entry.getName(), entry.getChecksumedMigrationFile().get())
+            ));
+        }
+        for (Class<? extends JavaMigration> javaMigrationClass : YamlDirectoryMigrationSetProvider.getJavaMigrationClasses(reflections)) {
+            compiledEntries.add(new CompiledEntry(
+                    MigrationPlan.Entry.java(javaMigrationClass.getName()),
+                    yamlDirectoryMigrationSetProvider.createJavaMigrationSetEntry(javaMigrationClass)
+            ));
+        }
+
+        compiledEntries.sort(new VersionComparator<>(YamlDirectoryMigrationSetProvider.VERSION_PATTERN, 1, ".", e -> e.getMigrationSetEntry().getMigrationMeta().getVersion()));
+        YamlDirectoryMigrationSetProvider.checkUniqueVersions(compiledEntries.stream().map(CompiledEntry::getMigrationSetEntry).collect(Collectors.toList()));
+
+        final Path plan = outputDirectory.resolve(MigrationPlan.getResource(basePackage));
+        Files.createDirectories(plan.getParent());
+        try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(plan))) {
+            migrationPlan.write(compiledEntries.stream().map(CompiledEntry::getEntry).collect(Collectors.toList()), outputStream);
+        }
+
+        log.info("Compiled {} migration versions of {} into {}", compiledEntries.size(), basePackage, plan);
+        return plan;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static final class CompiledEntry {
+
+        private final MigrationPlan.Entry entry;
+        private final MigrationSetEntry migrationSetEntry;
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.quandoo.lib.elasticsearchmigration.model.migration.AliasSwapMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.BulkMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.Method;
+import com.quandoo.lib.elasticsearchmigration.model.migration.Migration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.RefreshDeferringMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.ResourceAccess;
+import com.quandoo.lib.elasticsearchmigration.model.migration.ResourceType;
+import com.quandoo.lib.elasticsearchmigration.model.migration.TaskMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.TransformMigration;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Works out which indices, aliases, templates and pipelines a {@link Migration} reads and writes based on its url and body.
+ * Names are compared literally, aliases created by earlier versions are not resolved against the cluster.
+ * Anything that can't be analysed is reported as a {@link ResourceType#CLUSTER} write which acts as a barrier.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Slf4j
+public class MigrationResourceResolver {
+
+    private static final Set<ResourceAccess> BARRIER = ImmutableSet.of(ResourceAccess.write(ResourceType.CLUSTER, ResourceAccess.ANY));
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public Set<ResourceAccess> resolve(final Migration migration) {
+        if (migration instanceof RefreshDeferringMigration) {
+            return resolve(((RefreshDeferringMigration) migration).getDelegate());
+        } else if (migration instanceof AliasSwapMigration) {
+            // Searches through the alias read the new index as soon as it is swapped
+            final Set<ResourceAccess> accesses = new HashSet<>(resolveUrl(migration));
+            accesses.add(ResourceAccess.read(ResourceType.INDEX, ((AliasSwapMigration) migration).getIndex()));
+            return accesses;
+        } else if (migration instanceof TransformMigration) {
+            final Set<ResourceAccess> accesses = new HashSet<>(resolveUrl(migration));
+            indexNames(((TransformMigration) migration).getSourceIndex()).forEach(e -> accesses.add(ResourceAccess.read(ResourceType.INDEX, e)));
+            return accesses;
+        } else if (migration instanceof BulkMigration) {
+            final Set<ResourceAccess> accesses = new HashSet<>();
+            ((BulkMigration) migration).getMigrations().forEach(e -> accesses.addAll(resolve(e)));
+            return accesses;
+        }
+
+        return resolveUrl(migration);
+    }
+
+    /**
+     * Like {@link #resolve(Migration)}, but tasks are a barrier. The version entry records one running task and a resumed
+     * version continues right after it, so every earlier change has to be done and no later one started while it runs.
+     */
+    public Set<ResourceAccess> resolveForExecution(final Migration migration) {
+        return RefreshDeferringMigration.unwrap(migration) instanceof TaskMigration ? BARRIER : resolve(migration);
+    }
+
+    private Set<ResourceAccess> resolveUrl(final Migration migration) {
+        final List<String> segments = Lists.newArrayList(Splitter.on("/").omitEmptyStrings().split(Strings.nullToEmpty(migration.getUrl())));
+        if (segments.isEmpty()) {
+            return BARRIER;
+        }
+
+        try {
+            final String first = segments.get(0);
+            if ("_template".equals(first) && segments.size() == 2) {
+                return ImmutableSet.of(ResourceAccess.write(ResourceType.TEMPLATE, segments.get(1)));
+            } else if ("_ingest".equals(first) && segments.size() == 3 && "pipeline".equals(segments.get(1))) {
+                return ImmutableSet.of(ResourceAccess.write(ResourceType.PIPELINE, segments.get(2)));
+            } else if ("_aliases".equals(first) && segments.size() == 1) {
+                return resolveAliases(readBody(migration));
+            } else if ("_reindex".equals(first) && segments.size() == 1) {
+                return resolveReindex(readBody(migration));
+            } else if (!first.startsWith("_")) {
+                return resolveIndexRequest(migration, segments);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Couldn't analyse migration {}, treating it as barrier", migration.getClass().getSimpleName(), e);
+        }
+
+        return BARRIER;
+    }
+
+    private Set<ResourceAccess> resolveIndexRequest(final Migration migration, final List<String> segments) throws IOException {
+        final Set<ResourceAccess> accesses = new HashSet<>();
+        indexNames(segments.get(0)).forEach(e -> accesses.add(ResourceAccess.write(ResourceType.INDEX, e)));
+
+        final boolean createIndex = segments.size() == 1 && migration.getMethod() == Method.PUT;
+        final boolean documentWrite = segments.size() > 1 && ("_doc".equals(segments.get(1)) || "_update".equals(segments.get(1)) || "_create".equals(segments.get(1)) || "_bulk".equals(segments.get(1)));
+        final boolean updateByQuery = segments.size() > 1 && "_update_by_query".equals(segments.get(1));
+        final boolean byQuery = updateByQuery || segments.size() > 1 && "_delete_by_query".equals(segments.get(1));
+        if (createIndex) {
+            final JsonNode aliases = readBody(migration).path("aliases");
+            aliases.fieldNames().forEachRemaining(e -> accesses.add(ResourceAccess.write(ResourceType.INDEX, e)));
+        }
+        if (byQuery) {
+            // The documents to change are searched, so earlier writes to the index have to be visible
+            indexNames(segments.get(0)).forEach(e -> accesses.add(ResourceAccess.read(ResourceType.INDEX, e)));
+        }
+        if (createIndex || documentWrite || updateByQuery) {
+            // Templates and default pipelines are applied implicitly on index creation and indexing
+            accesses.add(ResourceAccess.read(ResourceType.TEMPLATE, ResourceAccess.ANY));
+            accesses.add(ResourceAccess.read(ResourceType.PIPELINE, ResourceAccess.ANY));
+        }
+
+        return accesses;
+    }
+
+    private Set<ResourceAccess> resolveAliases(final JsonNode body) {
+        final Set<ResourceAccess> accesses = new HashSet<>();
+        for (JsonNode action : body.path("actions")) {
+            final Iterator<JsonNode> definitions = action.elements();
+            while (definitions.hasNext()) {
+                final JsonNode definition = definitions.next();
+                for (String field : new String[]{"index", "indices", "alias", "aliases"}) {
+                    textValues(definition.path(field)).forEach(e -> accesses.add(ResourceAccess.write(ResourceType.INDEX, e)));
+                }
+            }
+        }
+
+        return accesses.isEmpty() ? BARRIER : accesses;
+    }
+
+    private Set<ResourceAccess> resolveReindex(final JsonNode body) {
+        final Set<ResourceAccess> accesses = new HashSet<>();
+        textValues(body.path("source").path("index")).forEach(e -> accesses.add(ResourceAccess.read(ResourceType.INDEX, e)));
+        textValues(body.path("dest").path("index")).forEach(e -> accesses.add(ResourceAccess.write(ResourceType.INDEX, e)));
+        if (body.path("source").has("remote")) {
+            return BARRIER;
+        }
+
+        accesses.add(ResourceAccess.read(ResourceType.TEMPLATE, ResourceAccess.ANY));
+        accesses.add(ResourceAccess.read(ResourceType.PIPELINE, ResourceAccess.ANY));
+        return accesses.size() > 2 ? accesses : BARRIER;
+    }
+
+    private JsonNode readBody(final Migration migration) throws IOException {
+        final String body = migration.getBody();
+        return Strings.isNullOrEmpty(body) ? objectMapper.createObjectNode() : objectMapper.readTree(body);
+    }
+
+    private Set<String> textValues(final JsonNode node) {
+        final Set<String> values = new HashSet<>();
+        if (node.isTextual()) {
+            values.addAll(indexNames(node.asText()));
+        } else if (node.isArray()) {
+            node.forEach(e -> values.addAll(indexNames(e.asText())));
+        }
+
+        return values;
+    }
+
+    private Set<String> indexNames(final String expression) {
+        final Set<String> names = new HashSet<>();
+        for (String name : Splitter.on(",").omitEmptyStrings().trimResults().split(expression)) {
+            names.add(name.contains("*") || name.startsWith("_") || name.startsWith("-") ? ResourceAccess.ANY : name);
+        }
+
+        return names.isEmpty() ? Collections.singleton(ResourceAccess.ANY) : names;
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.google.common.base.Charsets;
+import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationMeta;
+import com.quandoo.lib.elasticsearchmigration.util.HashUtils;
+import com.quandoo.lib.elasticsearchmigration.util.VersionComparator;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Hashes the ordered versions, names and checksums of a migration set. Two sets have the same fingerprint exactly when
+ * the metadata checks against the version index would treat them as the same history.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class MigrationSetFingerprinter {
+
+    private static final Pattern VERSION_REGEX_PATTERN = Pattern.compile("^((?:\\d+\\.)*\\d)$");
+
+    public String fingerprint(final Collection<MigrationMeta> migrationMetas) {
+        final List<MigrationMeta> orderedMigrationMetas = new ArrayList<>(migrationMetas);
+        orderedMigrationMetas.sort(new VersionComparator<>(VERSION_REGEX_PATTERN, 1, ".", MigrationMeta::getVersion));
+
+        final StringBuilder value = new StringBuilder();
+        for (MigrationMeta migrationMeta : orderedMigrationMetas) {
+            value.append(migrationMeta.getVersion()).append('\n')
+                    .append(migrationMeta.getName()).append('\n')
+                    .append(migrationMeta.getSha256Checksum()).append('\n');
+        }
+
+        return HashUtils.hashSha256(ByteBuffer.wrap(value.toString().getBytes(Charsets.UTF_8)));
+    }
+}
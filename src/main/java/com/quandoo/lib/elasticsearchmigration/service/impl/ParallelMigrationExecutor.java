@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.quandoo.lib.elasticsearchmigration.model.migration.Migration;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Runs the migrations of one version on a bounded pool. A migration only starts after every earlier migration
+ * it conflicts with has finished, so conflicting migrations keep their file order while independent ones overlap.
+ * Tasks run alone, see {@link MigrationResourceResolver#resolveForExecution(Migration)}.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Slf4j
+public class ParallelMigrationExecutor {
+
+    private final DependencyGraphExecutor dependencyGraphExecutor;
+    private final MigrationResourceResolver migrationResourceResolver;
+    private final ObjIntConsumer<Migration> action;
+
+    /**
+     * @param action applies a migration, gets its position within the version
+     */
+    public ParallelMigrationExecutor(final int parallelism,
+                                     @NonNull final MigrationResourceResolver migrationResourceResolver,
+                                     @NonNull final ObjIntConsumer<Migration> action) {
+        this.dependencyGraphExecutor = new DependencyGraphExecutor(parallelism, "es-migration-%d");
+        this.migrationResourceResolver = migrationResourceResolver;
+        this.action = action;
+    }
+
+    public void execute(final List<Migration> migrations) {
+        execute(migrations, 0);
+    }
+
+    /**
+     * Applies the migrations from <code>firstChange</code> on, e.g. the ones following a resumed task.
+     */
+    public void execute(final List<Migration> migrations, final int firstChange) {
+        final List<Change> changes = IntStream.range(firstChange, migrations.size())
+                .mapToObj(e -> new Change(e, migrations.get(e)))
+                .collect(Collectors.toList());
+
+        dependencyGraphExecutor.execute(
+                changes,
+                change -> migrationResourceResolver.resolveForExecution(change.getMigration()),
+                change -> {
+                    log.info("Applying change " + change.getMigration().getClass().getSimpleName());
+                    action.accept(change.getMigration(), change.getPosition());
+                }
+        ).rethrowFailure();
+    }
+
+    @Value
+    private static class Change {
+
+        private final int position;
+        private final Migration migration;
+    }
+}
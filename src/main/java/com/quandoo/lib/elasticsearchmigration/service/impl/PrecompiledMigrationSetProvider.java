@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationDiscovery;
+import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationSet;
+import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationSetEntry;
+import com.quandoo.lib.elasticsearchmigration.service.JavaMigration;
+import com.quandoo.lib.elasticsearchmigration.service.MigrationSetProvider;
+import com.quandoo.lib.elasticsearchmigration.util.ResourceUtils;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Loads the migration set from the {@link MigrationPlan} compiled by {@link MigrationPlanCompiler} in one sequential
+ * read. Without a plan on the classpath the yaml files are parsed like {@link YamlDirectoryMigrationSetProvider} does.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Slf4j
+public class PrecompiledMigrationSetProvider implements MigrationSetProvider {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // The yaml parser loads the json schema, only pay for it when there is no plan
+    private final Supplier<YamlParser> yamlParser = Suppliers.memoize(YamlParser::new);
+    private final YamlDirectoryMigrationSetProvider yamlDirectoryMigrationSetProvider;
+    private final MigrationPlan migrationPlan = new MigrationPlan();
+
+    public PrecompiledMigrationSetProvider() {
+        this(MigrationDiscovery.REFLECTIONS);
+    }
+
+    /**
+     * @param migrationDiscovery used to find the migration files if there is no plan
+     */
+    public PrecompiledMigrationSetProvider(@NonNull final MigrationDiscovery migrationDiscovery) {
+        this.yamlDirectoryMigrationSetProvider = new YamlDirectoryMigrationSetProvider(path -> yamlParser.get().parse(path), migrationDiscovery);
+    }
+
+    @Override
+    public MigrationSet getMigrationSet(final String basePackage) {
+        checkNotNull(basePackage, "basePackage must not be null");
+
+        final String resource = MigrationPlan.getResource(basePackage);
+        final InputStream inputStream = ResourceUtils.getResourceAsStream(resource, this);
+        if (inputStream == null) {
+            log.info("No migration plan {} found. Parsing the migration files instead", resource);
+            return yamlDirectoryMigrationSetProvider.getMigrationSet(basePackage);
+        }
+
+        try (InputStream in = new BufferedInputStream(inputStream, BUFFER_SIZE)) {
+            return read(in);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read migration plan " + resource, e);
+        }
+    }
+
+    MigrationSet read(final InputStream inputStream) throws IOException {
+        final List<MigrationPlan.Entry> entries = migrationPlan.read(inputStream);
+        final List<MigrationSetEntry> migrationSetEntries = new ArrayList<>(entries.size());
+        for (MigrationPlan.Entry entry : entries) {
+            if (entry.getJavaMigrationClassName().isPresent()) {
+                migrationSetEntries.add(yamlDirectoryMigrationSetProvider.createJavaMigrationSetEntry(loadJavaMigrationClass(entry.getJavaMigrationClassName().get())));
+            } else {
+                migrationSetEntries.add(yamlDirectoryMigrationSetProvider.createYamlMigrationSetEntry(entry.getFileVersion(), entry.getName(), entry.getChecksumedMigrationFile().get()));
+            }
+        }
+
+        return new MigrationSet(migrationSetEntries);
+    }
+
+    private Class<? extends JavaMigration> loadJavaMigrationClass(final String className) {
+        try {
+            return Class.forName(className, true, Thread.currentThread().getContextClassLoader()).asSubclass(JavaMigration.class);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IllegalStateException("Java migration " + className + " of the migration plan not found. Recompile the plan", e);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.model.es.TaskProgress;
+import com.quandoo.lib.elasticsearchmigration.util.FutureUtils;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestClient;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Polls tasks started with <code>wait_for_completion=false</code> until they finish, backing off exponentially between polls.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@Slf4j
+public class TaskTracker {
+
+    private final RestClient restClient;
+    private final long pollIntervalInMillis;
+    private final long maxPollIntervalInMillis;
+    private final Consumer<TaskProgress> taskProgressListener;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public TaskTracker(@NonNull final RestClient restClient,
+                       final long pollIntervalInMillis,
+                       final long maxPollIntervalInMillis,
+                       @NonNull final Consumer<TaskProgress> taskProgressListener) {
+        this.restClient = restClient;
+        this.pollIntervalInMillis = pollIntervalInMillis;
+        this.maxPollIntervalInMillis = maxPollIntervalInMillis;
+        this.taskProgressListener = taskProgressListener;
+    }
+
+    public String getTaskId(final Response response) {
+        final JsonNode task = readTree(response).path("task");
+        if (!task.isTextual()) {
+            throw new MigrationFailedException("Response did not contain a task id");
+        }
+
+        return task.asText();
+    }
+
+    public void awaitCompletion(final String taskId) {
+        awaitCompletion(taskId, () -> {
+        });
+    }
+
+    /**
+     * @param beforePoll runs before every poll, e.g. to abort waiting by throwing
+     */
+    public void awaitCompletion(final String taskId, final Runnable beforePoll) {
+        long interval = pollIntervalInMillis;
+        while (true) {
+            beforePoll.run();
+            if (poll(taskId).isCompleted()) {
+                return;
+            }
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MigrationFailedException("Interrupted while waiting for task " + taskId, e);
+            }
+            interval = nextInterval(interval);
+        }
+    }
+
+    public CompletableFuture<Void> awaitCompletionAsync(final String taskId) {
+        return awaitCompletionAsync(taskId, () -> {
+        });
+    }
+
+    /**
+     * @param beforePoll runs before every poll, e.g. to abort waiting by throwing
+     */
+    public CompletableFuture<Void> awaitCompletionAsync(final String taskId, final Runnable beforePoll) {
+        return awaitCompletionAsync(taskId, beforePoll, pollIntervalInMillis);
+    }
+
+    private CompletableFuture<Void> awaitCompletionAsync(final String taskId, final Runnable beforePoll, final long interval) {
+        try {
+            beforePoll.run();
+        } catch (RuntimeException e) {
+            return FutureUtils.failed(e);
+        }
+
+        final CompletableFuture<Response> future = new CompletableFuture<>();
+        restClient.performRequestAsync(new Request("GET", "/_tasks/" + taskId), FutureUtils.toResponseListener(future));
+        return future
+                .thenApply(response -> publish(parseProgress(taskId, readTree(response))))
+                .thenCompose(progress -> progress.isCompleted() ?
+                        CompletableFuture.<Void>completedFuture(null) :
+                        FutureUtils.delay(interval).thenCompose(ignored -> awaitCompletionAsync(taskId, beforePoll, nextInterval(interval)))
+                );
+    }
+
+    private TaskProgress poll(final String taskId) {
+        try {
+            return publish(parseProgress(taskId, readTree(restClient.performRequest(new Request("GET", "/_tasks/" + taskId)))));
+        } catch (ResponseException e) {
+            throw new MigrationFailedException("Error polling task " + taskId, e);
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    private TaskProgress publish(final TaskProgress taskProgress) {
+        log.info("Task {}: {}", taskProgress.getTaskId(), taskProgress);
+        taskProgressListener.accept(taskProgress);
+        return taskProgress;
+    }
+
+    TaskProgress parseProgress(final String taskId, final JsonNode tasksResponse) {
+        final boolean completed = tasksResponse.path("completed").asBoolean(false);
+        if (completed) {
+            final JsonNode error = tasksResponse.path("error");
+            if (!error.isMissingNode() && !error.isNull()) {
+                throw new MigrationFailedException("Task " + taskId + " failed: " + error.toString());
+            }
+            final JsonNode failures = tasksResponse.path("response").path("failures");
+            if (failures.isArray() && failures.size() > 0) {
+                throw new MigrationFailedException("Task " + taskId + " failed: " + failures.toString());
+            }
+        }
+
+        final JsonNode status = tasksResponse.path("task").path("status");
+        return new TaskProgress(
+                taskId,
+                status.path("total").asLong(),
+                status.path("created").asLong(),
+                status.path("updated").asLong(),
+                status.path("deleted").asLong(),
+                status.path("batches").asLong(),
+                status.path("version_conflicts").asLong(),
+                status.path("throttled_millis").asLong(),
+                completed
+        );
+    }
+
+    private long nextInterval(final long interval) {
+        return Math.min(interval * 2, maxPollIntervalInMillis);
+    }
+
+    private JsonNode readTree(final Response response) {
+        try {
+            return objectMapper.readTree(EntityUtils.toString(response.getEntity(), Charsets.UTF_8));
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+}
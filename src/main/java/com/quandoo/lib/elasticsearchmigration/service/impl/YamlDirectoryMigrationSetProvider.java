@@ -15,53 +15,89 @@
  */
 package com.quandoo.lib.elasticsearchmigration.service.impl;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.quandoo.lib.elasticsearchmigration.model.input.AliasesMigrationFileEntry;
 import com.quandoo.lib.elasticsearchmigration.model.input.BaseMigrationFileEntry;
+import com.quandoo.lib.elasticsearchmigration.model.input.BulkLoadMigrationFileEntry;
 import com.quandoo.lib.elasticsearchmigration.model.input.ChecksumedMigrationFile;
 import com.quandoo.lib.elasticsearchmigration.model.input.CreateIndexMigrationFileEntry;
 import com.quandoo.lib.elasticsearchmigration.model.input.CreateOrUpdateIndexTemplateMigrationFileEntry;
 import com.quandoo.lib.elasticsearchmigration.model.input.CreateIngestPipelineMigrationFileEntry;
+import com.quandoo.lib.elasticsearchmigration.model.input.DeleteByQueryMigrationFileEntry;
 import com.quandoo.lib.elasticsearchmigration.model.input.DeleteDocumentMigrationFileEntry;
 import com.quandoo.lib.elasticsearchmigration.model.input.DeleteIndexMigrationFileEntry;
 import com.quandoo.lib.elasticsearchmigration.model.input.DeleteIndexTemplateMigrationFileEntry;
 import com.quandoo.lib.elasticsearchmigration.model.input.DeleteIngestPipelineMigrationFileEntry;
 import com.quandoo.lib.elasticsearchmigration.model.input.IndexDocumentMigrationFileEntry;
+import com.quandoo.lib.elasticsearchmigration.model.input.MigrationType;
 import com.quandoo.lib.elasticsearchmigration.model.input.ReindexMigrationFileEntry;
+import com.quandoo.lib.elasticsearchmigration.model.input.ReindexWithAliasSwapMigrationFileEntry;
+import com.quandoo.lib.elasticsearchmigration.model.input.TransformMigrationFileEntry;
+import com.quandoo.lib.elasticsearchmigration.model.input.UpdateByQueryMigrationFileEntry;
 import com.quandoo.lib.elasticsearchmigration.model.input.UpdateDocumentMigrationFileEntry;
 import com.quandoo.lib.elasticsearchmigration.model.input.UpdateIndexSettingsMigrationFileEntry;
 import com.quandoo.lib.elasticsearchmigration.model.input.UpdateMappingMigrationFileEntry;
+import com.quandoo.lib.elasticsearchmigration.model.migration.AliasSwapMigration;
 import com.quandoo.lib.elasticsearchmigration.model.migration.AliasesMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.BulkLoadMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.Conflicts;
 import com.quandoo.lib.elasticsearchmigration.model.migration.CreateIndexMigration;
 import com.quandoo.lib.elasticsearchmigration.model.migration.CreateOrUpdateIndexTemplateMigration;
 import com.quandoo.lib.elasticsearchmigration.model.migration.CreateIngestPipelineMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.DeleteByQueryMigration;
 import com.quandoo.lib.elasticsearchmigration.model.migration.DeleteDocumentMigration;
 import com.quandoo.lib.elasticsearchmigration.model.migration.DeleteIndexMigration;
 import com.quandoo.lib.elasticsearchmigration.model.migration.DeleteIndexTemplateMigration;
 import com.quandoo.lib.elasticsearchmigration.model.migration.DeleteIngestPipelineMigration;
 import com.quandoo.lib.elasticsearchmigration.model.migration.IndexDocumentMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.JavaCodeMigration;
 import com.quandoo.lib.elasticsearchmigration.model.migration.Migration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationDiscovery;
 import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationMeta;
 import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationSet;
 import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationSetEntry;
 import com.quandoo.lib.elasticsearchmigration.model.migration.OpType;
+import com.quandoo.lib.elasticsearchmigration.model.migration.RefreshPolicy;
 import com.quandoo.lib.elasticsearchmigration.model.migration.ReindexMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.TransformMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.UpdateByQueryMigration;
 import com.quandoo.lib.elasticsearchmigration.model.migration.UpdateDocumentMigration;
 import com.quandoo.lib.elasticsearchmigration.model.migration.UpdateIndexSettingsMigration;
 import com.quandoo.lib.elasticsearchmigration.model.migration.UpdateMappingMigration;
+import com.quandoo.lib.elasticsearchmigration.service.DocumentTransformer;
+import com.quandoo.lib.elasticsearchmigration.service.JavaMigration;
 import com.quandoo.lib.elasticsearchmigration.service.MigrationSetProvider;
 import com.quandoo.lib.elasticsearchmigration.service.Parser;
+import com.quandoo.lib.elasticsearchmigration.util.HashUtils;
 import com.quandoo.lib.elasticsearchmigration.util.VersionComparator;
+import lombok.NonNull;
 import org.reflections.Reflections;
 import org.reflections.scanners.ResourcesScanner;
+import org.reflections.scanners.SubTypesScanner;
 
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -70,44 +106,262 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 public class YamlDirectoryMigrationSetProvider implements MigrationSetProvider {
 
-    private static final Pattern MIGRATION_FILE_PATH_PATTERN = Pattern.compile("^.*V([0-9]{1,3}(?:_[0-9]+)*)__([a-zA-Z0-9][a-zA-Z0-9_-]*)\\.yaml$");
+    static final Pattern MIGRATION_FILE_PATH_PATTERN = Pattern.compile("^.*V([0-9]{1,3}(?:_[0-9]+)*)__([a-zA-Z0-9][a-zA-Z0-9_-]*)\\.yaml$");
+    static final Pattern JAVA_MIGRATION_CLASS_NAME_PATTERN = Pattern.compile("^V([0-9]{1,3}(?:_[0-9]+)*)__([a-zA-Z0-9][a-zA-Z0-9_]*)$");
+    static final Pattern VERSION_PATTERN = Pattern.compile("^((?:[0-9]+\\.)*[0-9]+)$");
+
+    private static final String CLASS_FILE_SUFFIX = ".class";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
     private final Parser yamlParser;
+    private final MigrationDiscovery migrationDiscovery;
+    private final int parsingParallelism;
 
     public YamlDirectoryMigrationSetProvider() {
-        this.yamlParser = new YamlParser();
+        this(MigrationDiscovery.REFLECTIONS);
+    }
+
+    public YamlDirectoryMigrationSetProvider(@NonNull final MigrationDiscovery migrationDiscovery) {
+        this(new YamlParser(), migrationDiscovery);
+    }
+
+    YamlDirectoryMigrationSetProvider(final Parser yamlParser, final MigrationDiscovery migrationDiscovery) {
+        this(yamlParser, migrationDiscovery, Runtime.getRuntime().availableProcessors());
+    }
+
+    YamlDirectoryMigrationSetProvider(final Parser yamlParser, final MigrationDiscovery migrationDiscovery, final int parsingParallelism) {
+        checkArgument(parsingParallelism > 0, "parsingParallelism must be positive");
+        this.yamlParser = yamlParser;
+        this.migrationDiscovery = migrationDiscovery;
+        this.parsingParallelism = parsingParallelism;
     }
 
     @Override
     public MigrationSet getMigrationSet(final String basePackage) {
         checkNotNull(basePackage, "basePackage must not be null");
 
-        final Set<String> resources = new Reflections(basePackage, new ResourcesScanner()).getResources(MIGRATION_FILE_PATH_PATTERN);
-        final List<String> sortedResources = new ArrayList<>(resources);
-        sortedResources.sort(new VersionComparator(MIGRATION_FILE_PATH_PATTERN, 1, "_", e -> e));
-
-        final List<MigrationSetEntry> migrationSetEntries = new LinkedList<>();
-        for (String resource : sortedResources) {
-            final String resourceName = resource.lastIndexOf("/") != -1 ? resource.substring(resource.lastIndexOf("/") + 1) : resource;
-            final Matcher matcher = MIGRATION_FILE_PATH_PATTERN.matcher(resourceName);
-            matcher.matches();
-
-            final ChecksumedMigrationFile checksumedMigrationFile = yamlParser.parse(resource);
-            migrationSetEntries.add(
-                    new MigrationSetEntry(
-                            checksumedMigrationFile.getMigrationFile().getMigrations().stream().map(this::convertToMigration).collect(Collectors.toList()),
-                            new MigrationMeta(
-                                    checksumedMigrationFile.getSha256Checksum(),
-                                    matcher.group(1).replaceAll("_", "."),
-                                    matcher.group(2)
-                            )
-                    )
-            );
+        final Collection<String> migrationFiles;
+        final List<Class<? extends JavaMigration>> javaMigrationClasses;
+        if (migrationDiscovery == MigrationDiscovery.CLASS_LOADER) {
+            final Set<String> resources = new ClassLoaderResourceScanner(getClassLoader()).scan(basePackage);
+            migrationFiles = getMigrationFiles(resources);
+            javaMigrationClasses = getJavaMigrationClasses(resources);
+        } else {
+            final Reflections reflections = new Reflections(basePackage, new ResourcesScanner(), new SubTypesScanner());
+            migrationFiles = reflections.getResources(MIGRATION_FILE_PATH_PATTERN);
+            javaMigrationClasses = getJavaMigrationClasses(reflections);
+        }
+
+        final List<MigrationSetEntry> migrationSetEntries = createYamlMigrationSetEntries(migrationFiles);
+        for (Class<? extends JavaMigration> javaMigrationClass : javaMigrationClasses) {
+            migrationSetEntries.add(createJavaMigrationSetEntry(javaMigrationClass));
         }
 
+        migrationSetEntries.sort(new VersionComparator<>(VERSION_PATTERN, 1, ".", e -> e.getMigrationMeta().getVersion()));
+        checkUniqueVersions(migrationSetEntries);
+
         return new MigrationSet(migrationSetEntries);
     }
 
+    /**
+     * Parses the files concurrently, each one on its own. Results are assembled in version order and the failure of the
+     * lowest version is thrown, no matter which file failed first.
+     */
+    private List<MigrationSetEntry> createYamlMigrationSetEntries(final Collection<String> migrationFiles) {
+        final List<String> orderedMigrationFiles = new ArrayList<>(migrationFiles);
+        orderedMigrationFiles.sort(new VersionComparator<>(VERSION_PATTERN, 1, ".", e -> matchMigrationFile(e).group(1).replaceAll("_", ".")));
+        if (parsingParallelism == 1 || orderedMigrationFiles.size() < 2) {
+            return orderedMigrationFiles.stream().map(this::createYamlMigrationSetEntry).collect(Collectors.toCollection(ArrayList::new));
+        }
+
+        final ForkJoinPool pool = createParsingPool(Math.min(parsingParallelism, orderedMigrationFiles.size()));
+        try {
+            final List<CompletableFuture<MigrationSetEntry>> futures = orderedMigrationFiles.stream()
+                    .map(e -> CompletableFuture.supplyAsync(() -> createYamlMigrationSetEntry(e), pool))
+                    .collect(Collectors.toList());
+
+            final List<MigrationSetEntry> migrationSetEntries = new ArrayList<>(futures.size());
+            for (CompletableFuture<MigrationSetEntry> future : futures) {
+                try {
+                    migrationSetEntries.add(future.join());
+                } catch (CompletionException e) {
+                    Throwables.throwIfUnchecked(e.getCause());
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return migrationSetEntries;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private MigrationSetEntry createYamlMigrationSetEntry(final String resource) {
+        final Matcher matcher = matchMigrationFile(resource);
+        return createYamlMigrationSetEntry(matcher.group(1), matcher.group(2), yamlParser.parse(resource));
+    }
+
+    /**
+     * Workers see the context class loader of the caller, resources and transformers are loaded through it.
+     */
+    private ForkJoinPool createParsingPool(final int parallelism) {
+        final ClassLoader classLoader = getClassLoader();
+        final AtomicInteger threadCount = new AtomicInteger();
+        return new ForkJoinPool(parallelism, pool -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("es-migration-parser-" + threadCount.getAndIncrement());
+            thread.setContextClassLoader(classLoader);
+            return thread;
+        }, null, false);
+    }
+
+    static Matcher matchMigrationFile(final String resource) {
+        final String resourceName = resource.lastIndexOf("/") != -1 ? resource.substring(resource.lastIndexOf("/") + 1) : resource;
+        final Matcher matcher = MIGRATION_FILE_PATH_PATTERN.matcher(resourceName);
+        matcher.matches();
+        return matcher;
+    }
+
+    static List<Class<? extends JavaMigration>> getJavaMigrationClasses(final Reflections reflections) {
+        return reflections.getSubTypesOf(JavaMigration.class).stream()
+                .filter(e -> !e.isInterface() && !Modifier.isAbstract(e.getModifiers()))
+                .collect(Collectors.toList());
+    }
+
+    private ClassLoader getClassLoader() {
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        return classLoader != null ? classLoader : getClass().getClassLoader();
+    }
+
+    /**
+     * Reflections matches the file name of a resource, so do the same.
+     */
+    private List<String> getMigrationFiles(final Set<String> resources) {
+        return resources.stream()
+                .filter(e -> MIGRATION_FILE_PATH_PATTERN.matcher(e.substring(e.lastIndexOf('/') + 1)).matches())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Without a subtype index only classes named like a Java migration are loaded and checked.
+     */
+    private List<Class<? extends JavaMigration>> getJavaMigrationClasses(final Set<String> resources) {
+        final List<Class<? extends JavaMigration>> javaMigrationClasses = new ArrayList<>();
+        for (String resource : resources) {
+            final String simpleName = resource.substring(resource.lastIndexOf('/') + 1);
+            if (!simpleName.endsWith(CLASS_FILE_SUFFIX) || !JAVA_MIGRATION_CLASS_NAME_PATTERN.matcher(simpleName.substring(0, simpleName.length() - CLASS_FILE_SUFFIX.length())).matches()) {
+                continue;
+            }
+
+            final String className = resource.substring(0, resource.length() - CLASS_FILE_SUFFIX.length()).replace('/', '.');
+            final Class<?> clazz;
+            try {
+                clazz = Class.forName(className, false, getClassLoader());
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("Java migration " + className + " could not be loaded", e);
+            }
+            if (JavaMigration.class.isAssignableFrom(clazz) && !clazz.isInterface() && !Modifier.isAbstract(clazz.getModifiers())) {
+                javaMigrationClasses.add(clazz.asSubclass(JavaMigration.class));
+            }
+        }
+        return javaMigrationClasses;
+    }
+
+    /**
+     * @param fileVersion version as written in the file name, e.g. 1_0_0
+     */
+    MigrationSetEntry createYamlMigrationSetEntry(final String fileVersion, final String name, final ChecksumedMigrationFile checksumedMigrationFile) {
+        return new MigrationSetEntry(
+                checksumedMigrationFile.getMigrationFile().getMigrations().stream()
+                        .flatMap(e -> convertToMigrations(e, fileVersion).stream())
+                        .collect(Collectors.toList()),
+                new MigrationMeta(
+                        checksumedMigrationFile.getSha256Checksum(),
+                        fileVersion.replaceAll("_", "."),
+                        name
+                ),
+                checksumedMigrationFile.getMigrationFile().getRefreshPolicy().map(e -> RefreshPolicy.valueOf(e.name())),
+                checksumedMigrationFile.getMigrationFile().getBulkIngest().orElse(false)
+        );
+    }
+
+    MigrationSetEntry createJavaMigrationSetEntry(final Class<? extends JavaMigration> javaMigrationClass) {
+        final Matcher matcher = JAVA_MIGRATION_CLASS_NAME_PATTERN.matcher(javaMigrationClass.getSimpleName());
+        if (!matcher.matches()) {
+            throw new IllegalStateException("Java migration " + javaMigrationClass.getName() + " must be named like V1_0_0__description");
+        }
+
+        final JavaMigration javaMigration;
+        try {
+            javaMigration = javaMigrationClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Java migration " + javaMigrationClass.getName() + " needs a public no-argument constructor", e);
+        }
+
+        return new MigrationSetEntry(
+                ImmutableList.of(new JavaCodeMigration(javaMigration)),
+                new MigrationMeta(
+                        javaMigration.getChecksum().orElseGet(() -> HashUtils.hashSha256(ByteBuffer.wrap(javaMigrationClass.getName().getBytes(Charsets.UTF_8)))),
+                        matcher.group(1).replaceAll("_", "."),
+                        matcher.group(2)
+                )
+        );
+    }
+
+    static void checkUniqueVersions(final List<MigrationSetEntry> migrationSetEntries) {
+        for (int i = 1; i < migrationSetEntries.size(); i++) {
+            final MigrationMeta previous = migrationSetEntries.get(i - 1).getMigrationMeta();
+            final MigrationMeta current = migrationSetEntries.get(i).getMigrationMeta();
+            if (previous.getVersion().equals(current.getVersion())) {
+                throw new IllegalStateException("Version " + current.getVersion() + " is used by " + previous.getName() + " and " + current.getName());
+            }
+        }
+    }
+
+    private List<Migration> convertToMigrations(final BaseMigrationFileEntry baseMigrationFileEntry, final String fileVersion) {
+        if (baseMigrationFileEntry.getType() == MigrationType.REINDEX_WITH_ALIAS_SWAP) {
+            final ReindexWithAliasSwapMigrationFileEntry entry = (ReindexWithAliasSwapMigrationFileEntry) baseMigrationFileEntry;
+            final String index = entry.getIndex().orElse(entry.getAlias() + "_v" + fileVersion);
+            return ImmutableList.of(
+                    new CreateIndexMigration(index, entry.getDefinition()),
+                    new ReindexMigration(
+                            createReindexDefinition(entry.getAlias(), index, entry.getScript()),
+                            entry.getSlices(),
+                            entry.getRequestsPerSecond(),
+                            entry.getMaxDocs(),
+                            entry.getScroll()
+                    ),
+                    new AliasSwapMigration(entry.getAlias(), index, entry.getDeleteOldIndicesAfter())
+            );
+        }
+
+        return ImmutableList.of(convertToMigration(baseMigrationFileEntry));
+    }
+
+    private String createReindexDefinition(final String source, final String dest, final Optional<String> script) {
+        final ObjectNode definition = JsonNodeFactory.instance.objectNode();
+        definition.putObject("source").put("index", source);
+        definition.putObject("dest").put("index", dest);
+        if (script.isPresent()) {
+            try {
+                definition.set("script", OBJECT_MAPPER.readTree(script.get()));
+            } catch (IOException e) {
+                throw new IllegalStateException("Invalid script " + script.get(), e);
+            }
+        }
+
+        return definition.toString();
+    }
+
+    private DocumentTransformer createTransformer(final String className) {
+        try {
+            final Class<?> clazz = Class.forName(className, true, Thread.currentThread().getContextClassLoader());
+            return (DocumentTransformer) clazz.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalStateException("Invalid transformer " + className, e);
+        }
+    }
+
     private Migration convertToMigration(BaseMigrationFileEntry baseMigrationFileEntry) {
         switch (baseMigrationFileEntry.getType()) {
             case CREATE_INDEX:
@@ -165,7 +419,11 @@ public class YamlDirectoryMigrationSetProvider implements MigrationSetProvider {
             case REINDEX:
                 final ReindexMigrationFileEntry reindexMigrationFileEntry = (ReindexMigrationFileEntry) baseMigrationFileEntry;
                 return new ReindexMigration(
-                        reindexMigrationFileEntry.getDefinition()
+                        reindexMigrationFileEntry.getDefinition(),
+                        reindexMigrationFileEntry.getSlices(),
+                        reindexMigrationFileEntry.getRequestsPerSecond(),
+                        reindexMigrationFileEntry.getMaxDocs(),
+                        reindexMigrationFileEntry.getScroll()
                 );
             case UPDATE_INDEX_SETTINGS:
                 final UpdateIndexSettingsMigrationFileEntry updateIndexSettingsMigrationFileEntry = (UpdateIndexSettingsMigrationFileEntry) baseMigrationFileEntry;
@@ -173,6 +431,47 @@ public class YamlDirectoryMigrationSetProvider implements MigrationSetProvider {
                         updateIndexSettingsMigrationFileEntry.getIndex(),
                         updateIndexSettingsMigrationFileEntry.getDefinition()
                 );
+            case BULK_LOAD:
+                final BulkLoadMigrationFileEntry bulkLoadMigrationFileEntry = (BulkLoadMigrationFileEntry) baseMigrationFileEntry;
+                return new BulkLoadMigration(
+                        bulkLoadMigrationFileEntry.getIndex(),
+                        bulkLoadMigrationFileEntry.getResource(),
+                        bulkLoadMigrationFileEntry.getIdField(),
+                        bulkLoadMigrationFileEntry.getChunkSize().orElse(BulkLoadMigration.DEFAULT_CHUNK_SIZE),
+                        bulkLoadMigrationFileEntry.getConcurrency().orElse(BulkLoadMigration.DEFAULT_CONCURRENCY)
+                );
+            case UPDATE_BY_QUERY:
+                final UpdateByQueryMigrationFileEntry updateByQueryMigrationFileEntry = (UpdateByQueryMigrationFileEntry) baseMigrationFileEntry;
+                return new UpdateByQueryMigration(
+                        updateByQueryMigrationFileEntry.getIndex(),
+                        updateByQueryMigrationFileEntry.getQuery(),
+                        updateByQueryMigrationFileEntry.getScript(),
+                        updateByQueryMigrationFileEntry.getPipeline(),
+                        updateByQueryMigrationFileEntry.getSlices(),
+                        updateByQueryMigrationFileEntry.getRequestsPerSecond(),
+                        updateByQueryMigrationFileEntry.getConflicts().map(e -> Conflicts.valueOf(e.name()))
+                );
+            case DELETE_BY_QUERY:
+                final DeleteByQueryMigrationFileEntry deleteByQueryMigrationFileEntry = (DeleteByQueryMigrationFileEntry) baseMigrationFileEntry;
+                return new DeleteByQueryMigration(
+                        deleteByQueryMigrationFileEntry.getIndex(),
+                        deleteByQueryMigrationFileEntry.getQuery(),
+                        deleteByQueryMigrationFileEntry.getSlices(),
+                        deleteByQueryMigrationFileEntry.getRequestsPerSecond(),
+                        deleteByQueryMigrationFileEntry.getMaxDocs(),
+                        deleteByQueryMigrationFileEntry.getConflicts().map(e -> Conflicts.valueOf(e.name()))
+                );
+            case TRANSFORM:
+                final TransformMigrationFileEntry transformMigrationFileEntry = (TransformMigrationFileEntry) baseMigrationFileEntry;
+                return new TransformMigration(
+                        transformMigrationFileEntry.getSourceIndex(),
+                        transformMigrationFileEntry.getDestIndex(),
+                        transformMigrationFileEntry.getQuery(),
+                        createTransformer(transformMigrationFileEntry.getTransformer()),
+                        transformMigrationFileEntry.getSlices(),
+                        transformMigrationFileEntry.getBatchSize().orElse(TransformMigration.DEFAULT_BATCH_SIZE),
+                        transformMigrationFileEntry.getConcurrency().orElse(TransformMigration.DEFAULT_CONCURRENCY)
+                );
             default:
                 throw new IllegalStateException("Unknown migration type " + baseMigrationFileEntry.getType());
         }
@@ -33,8 +33,10 @@ import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.io.Resources;
 import com.quandoo.lib.elasticsearchmigration.exception.InvalidSchemaException;
+import com.quandoo.lib.elasticsearchmigration.model.input.BulkLoadMigrationFileEntry;
 import com.quandoo.lib.elasticsearchmigration.model.input.ChecksumedMigrationFile;
 import com.quandoo.lib.elasticsearchmigration.model.input.MigrationFile;
+import com.quandoo.lib.elasticsearchmigration.model.input.MigrationType;
 import com.quandoo.lib.elasticsearchmigration.service.Parser;
 import com.quandoo.lib.elasticsearchmigration.util.HashUtils;
 import com.quandoo.lib.elasticsearchmigration.util.ResourceUtils;
@@ -42,16 +44,20 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.security.DigestOutputStream;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
+ * Thread safe, one instance can parse files concurrently. The mappers are configured once in the constructor and the
+ * frozen json schema keeps no state between validations.
+ *
  * @author Emir Dizdarevic
  * @since 1.0.0
  */
@@ -84,19 +90,25 @@ public class YamlParser implements Parser {
         yamlFactory.configure(YAMLGenerator.Feature.USE_NATIVE_TYPE_ID, false);
         yamlFactory.configure(YAMLGenerator.Feature.LITERAL_BLOCK_STYLE, true);
 
-        final ObjectMapper yamlMapper = new ObjectMapper(yamlFactory);
-        yamlMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        yamlMapper.configure(DeserializationFeature.READ_ENUMS_USING_TO_STRING, true);
-        yamlMapper.configure(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS, true);
-        yamlMapper.configure(DeserializationFeature.USE_BIG_INTEGER_FOR_INTS, true);
-        yamlMapper.configure(SerializationFeature.WRITE_ENUMS_USING_TO_STRING, true);
-        yamlMapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
-        yamlMapper.setSerializationInclusion(JsonInclude.Include.NON_ABSENT);
-
-        yamlMapper.registerModule(new Jdk8Module());
-        yamlMapper.registerModule(new JavaTimeModule());
+        return configureMigrationFileMapper(new ObjectMapper(yamlFactory));
+    }
 
-        return yamlMapper;
+    /**
+     * Binds {@link MigrationFile}s, shared with {@link MigrationPlan} so precompiled files bind the same way.
+     */
+    static ObjectMapper configureMigrationFileMapper(final ObjectMapper mapper) {
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        mapper.configure(DeserializationFeature.READ_ENUMS_USING_TO_STRING, true);
+        mapper.configure(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS, true);
+        mapper.configure(DeserializationFeature.USE_BIG_INTEGER_FOR_INTS, true);
+        mapper.configure(SerializationFeature.WRITE_ENUMS_USING_TO_STRING, true);
+        mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+        mapper.setSerializationInclusion(JsonInclude.Include.NON_ABSENT);
+
+        mapper.registerModule(new Jdk8Module());
+        mapper.registerModule(new JavaTimeModule());
+
+        return mapper;
     }
 
     private JsonSchema createJsonSchema() {
@@ -117,10 +129,8 @@ public class YamlParser implements Parser {
         return new ObjectMapper();
     }
 
-    private void checkSchema(String path) {
+    private void checkSchema(final String path, final JsonNode yaml) {
         try {
-            final InputStream inputStream = ResourceUtils.getResourceAsStream(path, this);
-            final JsonNode yaml = yamlMapper.readTree(inputStream);
             final ProcessingReport report = jsonSchema.validate(yaml);
             final List<String> errors = new LinkedList<>();
             if (!report.isSuccess()) {
@@ -132,28 +142,75 @@ public class YamlParser implements Parser {
         }
     }
 
+    /**
+     * Reads the file and builds its tree once; the tree is validated and then bound. The checksum is taken over the
+     * normalized yaml of the bound file, streamed into the digest, so it stays the same as in earlier versions.
+     */
     @Override
     public ChecksumedMigrationFile parse(final String path) {
         checkNotNull(StringUtils.trimToNull(path), "path must be not null");
 
         try {
-            log.info("Checking schema for file " + path);
-            checkSchema(path);
             log.info("Parsing file " + path);
-            final byte[] yaml = IOUtils.toByteArray(ResourceUtils.getResourceAsStream(path, this));
-            final MigrationFile migrationFile = yamlMapper.readValue(new ByteArrayInputStream(yaml), MigrationFile.class);
+            final byte[] yaml = readResource(path);
+            final JsonNode tree = readTree(path, yaml);
+            checkSchema(path, tree);
+            final MigrationFile migrationFile = yamlMapper.treeToValue(tree, MigrationFile.class);
 
-            final byte[] normalizedYaml = yamlMapper.writeValueAsBytes(migrationFile);
-            final String normalizedSha256Checksum = HashUtils.hashSha256(ByteBuffer.wrap(normalizedYaml));
+            final DigestOutputStream normalizedYaml = HashUtils.newSha256OutputStream();
+            yamlMapper.writeValue(normalizedYaml, migrationFile);
+            final String normalizedSha256Checksum = HashUtils.getSha256(normalizedYaml);
 
             if(log.isDebugEnabled()) {
                 log.debug("Original yaml: \n{}", new String(yaml, Charsets.UTF_8));
-                log.debug("Normalized yaml: \n{}", new String(normalizedYaml, Charsets.UTF_8));
+                log.debug("Normalized yaml: \n{}", yamlMapper.writeValueAsString(migrationFile));
             }
 
-            return new ChecksumedMigrationFile(migrationFile, normalizedSha256Checksum);
+            return new ChecksumedMigrationFile(migrationFile, addResourceChecksums(migrationFile, normalizedSha256Checksum));
         } catch (IOException e) {
             throw new InvalidSchemaException("Problem parsing yaml file " + path, e);
         }
     }
+
+    private byte[] readResource(final String path) throws IOException {
+        final InputStream inputStream = ResourceUtils.getResourceAsStream(path, this);
+        if (inputStream == null) {
+            throw new InvalidSchemaException("Problem parsing yaml file " + path + ", file not found");
+        }
+
+        try (InputStream in = inputStream) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    private JsonNode readTree(final String path, final byte[] yaml) {
+        try {
+            return yamlMapper.readTree(yaml);
+        } catch (Exception e) {
+            throw new InvalidSchemaException("Problem parsing yaml file " + path, e);
+        }
+    }
+
+    /**
+     * Resources loaded by {@link MigrationType#BULK_LOAD} are part of the migration, so changing them must change the checksum.
+     * Files without such entries keep the checksum of their yaml.
+     */
+    private String addResourceChecksums(final MigrationFile migrationFile, final String yamlSha256Checksum) throws IOException {
+        final List<String> resources = migrationFile.getMigrations().stream()
+                .filter(e -> e.getType() == MigrationType.BULK_LOAD)
+                .map(e -> ((BulkLoadMigrationFileEntry) e).getResource())
+                .collect(Collectors.toList());
+        if (resources.isEmpty()) {
+            return yamlSha256Checksum;
+        }
+
+        final StringBuilder checksums = new StringBuilder(yamlSha256Checksum);
+        for (String resource : resources) {
+            try (InputStream inputStream = ResourceUtils.openRawStream(resource, this)) {
+                checksums.append(HashUtils.hashSha256(inputStream));
+            }
+        }
+
+        return HashUtils.hashSha256(ByteBuffer.wrap(checksums.toString().getBytes(Charsets.UTF_8)));
+    }
 }
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.experimental.UtilityClass;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+@UtilityClass
+public class FutureUtils {
+
+    public <T> CompletableFuture<T> failed(final Throwable throwable) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(throwable);
+        return future;
+    }
+
+    public Throwable unwrap(final Throwable throwable) {
+        Throwable current = throwable;
+        while ((current instanceof CompletionException || current instanceof ExecutionException) && current.getCause() != null) {
+            current = current.getCause();
+        }
+
+        return current;
+    }
+
+    /**
+     * Completes after the given delay without blocking the calling thread.
+     */
+    public CompletableFuture<Void> delay(final long delayInMillis) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        SchedulerHolder.SCHEDULER.schedule(() -> future.complete(null), delayInMillis, TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    /**
+     * Runs blocking work, e.g. reading a stream or user code, on its own thread instead of the I/O reactor or the common pool.
+     */
+    public CompletableFuture<Void> runBlocking(final Runnable runnable) {
+        return CompletableFuture.runAsync(runnable, BlockingExecutorHolder.EXECUTOR);
+    }
+
+    public <T> ActionListener<T> toActionListener(final CompletableFuture<T> future) {
+        return ActionListener.wrap(future::complete, future::completeExceptionally);
+    }
+
+    public ResponseListener toResponseListener(final CompletableFuture<Response> future) {
+        return new ResponseListener() {
+            @Override
+            public void onSuccess(final Response response) {
+                future.complete(response);
+            }
+
+            @Override
+            public void onFailure(final Exception exception) {
+                future.completeExceptionally(exception);
+            }
+        };
+    }
+
+    private static final class SchedulerHolder {
+        private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("es-migration-scheduler-%d").setDaemon(true).build()
+        );
+    }
+
+    private static final class BlockingExecutorHolder {
+        private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setNameFormat("es-migration-blocking-%d").setDaemon(true).build()
+        );
+    }
+}
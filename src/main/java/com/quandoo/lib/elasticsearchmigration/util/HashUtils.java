@@ -16,12 +16,14 @@
 package com.quandoo.lib.elasticsearchmigration.util;
 
 import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
 import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -69,4 +71,26 @@ public class HashUtils {
             throw new IllegalStateException("This should never happen. HashAlgorithm is type safe", e);
         }
     }
+
+    /**
+     * Hashes everything written to the returned stream without buffering it, read the result with {@link #getSha256(DigestOutputStream)}.
+     *
+     * @since 1.3.0
+     */
+    public static DigestOutputStream newSha256OutputStream() {
+        try {
+            return new DigestOutputStream(ByteStreams.nullOutputStream(), MessageDigest.getInstance("SHA-256"));
+        } catch (NoSuchAlgorithmException e) {
+            log.error("This should never happen. Hash algorithms are type safe", e);
+            throw new IllegalStateException("This should never happen. HashAlgorithm is type safe", e);
+        }
+    }
+
+    /**
+     * @since 1.3.0
+     */
+    public static String getSha256(DigestOutputStream outputStream) {
+        checkNotNull(outputStream, "outputStream must not be null");
+        return new String(BaseEncoding.base16().lowerCase().encode(outputStream.getMessageDigest().digest()));
+    }
 }
@@ -17,7 +17,12 @@ package com.quandoo.lib.elasticsearchmigration.util;
 
 import lombok.experimental.UtilityClass;
 
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
 
 /**
  * @author Emir Dizdarevic
@@ -26,8 +31,43 @@ import java.io.InputStream;
 @UtilityClass
 public class ResourceUtils {
 
+    private static final String FILE_PREFIX = "file:";
+
     public InputStream getResourceAsStream(String resource, Object thisRef) {
         final InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(resource);
         return in == null ? thisRef.getClass().getResourceAsStream(resource) : in;
     }
+
+    /**
+     * Opens a classpath resource or, prefixed with <code>file:</code>, a file without decompressing it.
+     *
+     * @since 1.3.0
+     */
+    public InputStream openRawStream(String location, Object thisRef) throws IOException {
+        if (location.startsWith(FILE_PREFIX)) {
+            return new FileInputStream(location.substring(FILE_PREFIX.length()));
+        }
+
+        final InputStream in = getResourceAsStream(location, thisRef);
+        if (in == null) {
+            throw new FileNotFoundException("Resource " + location + " not found");
+        }
+
+        return in;
+    }
+
+    /**
+     * Like {@link #openRawStream(String, Object)} but transparently decompresses gzip content, detected by its magic bytes.
+     *
+     * @since 1.3.0
+     */
+    public InputStream openStream(String location, Object thisRef) throws IOException {
+        final InputStream in = new BufferedInputStream(openRawStream(location, thisRef));
+        in.mark(2);
+        final int first = in.read();
+        final int second = in.read();
+        in.reset();
+
+        return first == (GZIPInputStream.GZIP_MAGIC & 0xff) && second == (GZIPInputStream.GZIP_MAGIC >> 8) ? new GZIPInputStream(in) : in;
+    }
 }
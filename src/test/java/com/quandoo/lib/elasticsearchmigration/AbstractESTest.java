@@ -64,6 +64,7 @@ import org.junit.jupiter.api.BeforeEach;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Set;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
@@ -237,6 +238,13 @@ public abstract class AbstractESTest {
         return !getAliasesResponse.getAliases().isEmpty();
     }
 
+    @SneakyThrows
+    protected Set<String> getAliasedIndices(String name) {
+        final GetAliasesRequest getAliasesRequest = new GetAliasesRequest(name);
+        final GetAliasesResponse getAliasesResponse = client.indices().getAlias(getAliasesRequest, RequestOptions.DEFAULT);
+        return getAliasesResponse.getAliases().keySet();
+    }
+
     @SneakyThrows
     protected boolean checkPipelineExists(String name) {
         final GetPipelineRequest getPipelineRequest = new GetPipelineRequest(name);
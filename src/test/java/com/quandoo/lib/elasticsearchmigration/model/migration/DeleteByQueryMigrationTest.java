@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.model.migration;
+
+import com.google.common.collect.ImmutableMap;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class DeleteByQueryMigrationTest {
+
+    @Test
+    public void parametersDefaultToAutoSlices() {
+        final DeleteByQueryMigration migration = new DeleteByQueryMigration(
+                "test_index", "{\"match_all\": {}}", Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()
+        );
+
+        assertThat(migration.getUrl(), is("/test_index/_delete_by_query"));
+        assertThat(migration.getParameters(), is(ImmutableMap.of(
+                "wait_for_completion", "false",
+                "refresh", "true",
+                "slices", "auto"
+        )));
+    }
+
+    @Test
+    public void parametersCarryThrottlingMaxDocsAndConflicts() {
+        final DeleteByQueryMigration migration = new DeleteByQueryMigration(
+                "test_index", "{\"match_all\": {}}", Optional.of("4"), Optional.of(500f), Optional.of(1000L), Optional.of(Conflicts.PROCEED)
+        );
+
+        assertThat(migration.getParameters(), is(ImmutableMap.builder()
+                .put("wait_for_completion", "false")
+                .put("refresh", "true")
+                .put("slices", "4")
+                .put("requests_per_second", "500.0")
+                .put("max_docs", "1000")
+                .put("conflicts", "proceed")
+                .build()));
+    }
+
+    @Test
+    public void bodyHoldsQuery() {
+        final DeleteByQueryMigration migration = new DeleteByQueryMigration(
+                "test_index", "{\"term\": {\"status\": \"legacy\"}}", Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()
+        );
+
+        assertThat(migration.getBody(), is("{\"query\":{\"term\":{\"status\":\"legacy\"}}}"));
+    }
+
+    @Test
+    public void queryIsMandatory() {
+        assertThrows(NullPointerException.class, () -> new DeleteByQueryMigration(
+                "test_index", null, Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()
+        ));
+    }
+
+    @Test
+    public void invalidQueryFails() {
+        final DeleteByQueryMigration migration = new DeleteByQueryMigration(
+                "test_index", "{\"term\": ", Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()
+        );
+
+        assertThrows(MigrationFailedException.class, migration::getBody);
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.model.migration;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class UpdateByQueryMigrationTest {
+
+    @Test
+    public void parametersDefaultToAutoSlices() {
+        final UpdateByQueryMigration migration = new UpdateByQueryMigration(
+                "test_index", Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()
+        );
+
+        assertThat(migration.getUrl(), is("/test_index/_update_by_query"));
+        assertThat(migration.getParameters(), is(ImmutableMap.of(
+                "wait_for_completion", "false",
+                "refresh", "true",
+                "slices", "auto"
+        )));
+    }
+
+    @Test
+    public void parametersCarryThrottlingConflictsAndPipeline() {
+        final UpdateByQueryMigration migration = new UpdateByQueryMigration(
+                "test_index", Optional.empty(), Optional.empty(), Optional.of("test_pipeline"), Optional.of("4"), Optional.of(500f), Optional.of(Conflicts.PROCEED)
+        );
+
+        assertThat(migration.getParameters(), is(ImmutableMap.builder()
+                .put("wait_for_completion", "false")
+                .put("refresh", "true")
+                .put("slices", "4")
+                .put("pipeline", "test_pipeline")
+                .put("requests_per_second", "500.0")
+                .put("conflicts", "proceed")
+                .build()));
+    }
+
+    @Test
+    public void bodyHoldsQueryAndScript() {
+        final UpdateByQueryMigration migration = new UpdateByQueryMigration(
+                "test_index",
+                Optional.of("{\"term\": {\"status\": \"legacy\"}}"),
+                Optional.of("{\"source\": \"ctx._source.status = 'active'\"}"),
+                Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()
+        );
+
+        assertThat(migration.getBody(), is("{\"query\":{\"term\":{\"status\":\"legacy\"}},\"script\":{\"source\":\"ctx._source.status = 'active'\"}}"));
+    }
+
+    @Test
+    public void bodyWithoutQueryUpdatesEverything() {
+        final UpdateByQueryMigration migration = new UpdateByQueryMigration(
+                "test_index", Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()
+        );
+
+        assertThat(migration.getBody(), is("{}"));
+    }
+}
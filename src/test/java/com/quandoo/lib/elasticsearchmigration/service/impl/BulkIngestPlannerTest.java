@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.quandoo.lib.elasticsearchmigration.model.migration.CreateIndexMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.IndexDocumentMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.Migration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.ReindexMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.UpdateIndexSettingsMigration;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class BulkIngestPlannerTest {
+
+    private final BulkIngestPlanner bulkIngestPlanner = new BulkIngestPlanner(new MigrationResourceResolver());
+
+    @Test
+    public void tuneTargetsOfDataChanges() {
+        final Migration createIndex = new CreateIndexMigration("index_b", "{\"settings\": {\"number_of_replicas\": 2, \"refresh_interval\": \"5s\"}}");
+        final Migration reindex = new ReindexMigration("{\"source\": {\"index\": \"index_a\"}, \"dest\": {\"index\": \"index_b\"}}");
+        final Migration indexDocument = new IndexDocumentMigration("index_c", Optional.of("1"), Optional.empty(), "{}");
+
+        final BulkIngestPlanner.Plan plan = bulkIngestPlanner.plan(ImmutableList.of(createIndex, reindex, indexDocument));
+
+        assertThat(plan.getMigrations(), contains(
+                createIndex,
+                new UpdateIndexSettingsMigration("index_b", BulkIngestPlanner.TUNED_SETTINGS),
+                reindex,
+                indexDocument
+        ));
+        assertThat(plan.getExistingIndices(), contains("index_c"));
+        assertThat(plan.getCreatedIndexSettings(), hasEntry("index_b", ImmutableMap.of("number_of_replicas", "2", "refresh_interval", "5s")));
+    }
+
+    @Test
+    public void createdIndexWithoutSettingsRecordsNothing() {
+        assertThat(createdIndexSettings("{}"), is(ImmutableMap.of()));
+    }
+
+    @Test
+    public void createdIndexWithNestedSettings() {
+        assertThat(createdIndexSettings("{\"settings\": {\"index\": {\"number_of_replicas\": 2, \"refresh_interval\": \"5s\"}}}"), is(
+                ImmutableMap.of("number_of_replicas", "2", "refresh_interval", "5s")
+        ));
+    }
+
+    @Test
+    public void createdIndexWithFlatSettings() {
+        assertThat(createdIndexSettings("{\"settings\": {\"index.number_of_replicas\": 2, \"index.refresh_interval\": \"5s\"}}"), is(
+                ImmutableMap.of("number_of_replicas", "2", "refresh_interval", "5s")
+        ));
+    }
+
+    @Test
+    public void createdIndexWithMixedSettings() {
+        assertThat(createdIndexSettings("{\"settings\": {\"index\": {\"number_of_shards\": 3}, \"number_of_replicas\": 2, \"index.refresh_interval\": \"5s\"}}"), is(
+                ImmutableMap.of("number_of_replicas", "2", "refresh_interval", "5s")
+        ));
+    }
+
+    @Test
+    public void parseSettingsAndRestore() {
+        assertThat(bulkIngestPlanner.parseSettings("{\"index_a\": {\"settings\": {\"index\": {\"number_of_replicas\": \"1\"}}}}"), is(
+                ImmutableMap.of("index_a", ImmutableMap.of("number_of_replicas", "1"))
+        ));
+        assertThat(bulkIngestPlanner.createRestore("index_a", ImmutableMap.of("number_of_replicas", "1")).getBody(), is(
+                "{\"index\":{\"number_of_replicas\":\"1\",\"refresh_interval\":null}}"
+        ));
+    }
+
+    private Map<String, String> createdIndexSettings(final String definition) {
+        final BulkIngestPlanner.Plan plan = bulkIngestPlanner.plan(ImmutableList.of(
+                new CreateIndexMigration("index_a", definition),
+                new IndexDocumentMigration("index_a", Optional.of("1"), Optional.empty(), "{}")
+        ));
+
+        return plan.getCreatedIndexSettings().get("index_a");
+    }
+}
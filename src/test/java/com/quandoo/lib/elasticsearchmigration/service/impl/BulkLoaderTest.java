@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.model.migration.BulkLoadMigration;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class BulkLoaderTest {
+
+    private static final String RESOURCE = "com/quandoo/lib/elasticsearchmigration/service/impl/products.ndjson.gz";
+
+    private final RestClient restClient = RestClient.builder(new HttpHost("localhost", 9200)).build();
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        restClient.close();
+    }
+
+    @Test
+    public void readChunksOfCompressedResource() throws IOException {
+        final BulkLoader bulkLoader = new BulkLoader(restClient, 1024);
+        final List<BulkLoader.Chunk> chunks = new ArrayList<>();
+        bulkLoader.readChunks(new BulkLoadMigration("products", RESOURCE, Optional.of("sku"), 2, 1), chunks::add);
+
+        assertThat(chunks.size(), is(3));
+        assertThat(chunks.get(0).getLineNumbers(), contains(1, 2));
+        assertThat(chunks.get(1).getLineNumbers(), contains(4, 5));
+        assertThat(chunks.get(2).getLineNumbers(), contains(6));
+        assertThat(chunks.get(0).getBody().toString(), is(
+                "{\"index\":{\"_id\":\"a1\"}}\n{\"sku\":\"a1\",\"name\":\"Table\"}\n{\"index\":{\"_id\":\"a2\"}}\n{\"sku\":\"a2\",\"name\":\"Chair\"}\n"
+        ));
+    }
+
+    @Test
+    public void readChunksLimitedBySize() throws IOException {
+        final BulkLoader bulkLoader = new BulkLoader(restClient, 1);
+        final List<BulkLoader.Chunk> chunks = new ArrayList<>();
+        bulkLoader.readChunks(new BulkLoadMigration("products", RESOURCE, Optional.empty(), 1000, 1), chunks::add);
+
+        assertThat(chunks.size(), is(5));
+        assertThat(chunks.get(0).getBody().toString(), is("{\"index\":{}}\n{\"sku\":\"a1\",\"name\":\"Table\"}\n"));
+    }
+
+    @Test
+    public void readChunksStopsWhenConsumerDeclines() throws IOException {
+        final BulkLoader bulkLoader = new BulkLoader(restClient, 1024);
+        final List<BulkLoader.Chunk> chunks = new ArrayList<>();
+        bulkLoader.readChunks(new BulkLoadMigration("products", RESOURCE, Optional.empty(), 2, 1), chunk -> !chunks.add(chunk));
+
+        assertThat(chunks.size(), is(1));
+    }
+
+    @Test
+    public void readChunksWithMissingIdField() {
+        final BulkLoader bulkLoader = new BulkLoader(restClient, 1024);
+        final MigrationFailedException exception = assertThrows(MigrationFailedException.class, () ->
+                bulkLoader.readChunks(new BulkLoadMigration("products", RESOURCE, Optional.of("id"), 2, 1), chunk -> true)
+        );
+
+        assertThat(exception.getMessage(), containsString("Line 1 of " + RESOURCE + " has no id"));
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.model.migration.BulkMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.CreateIndexMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.DeleteDocumentMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.IndexDocumentMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.Migration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.UpdateDocumentMigration;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class BulkMigrationCoalescerTest {
+
+    @Test
+    public void coalesceConsecutiveDocumentMigrations() {
+        final BulkMigrationCoalescer bulkMigrationCoalescer = new BulkMigrationCoalescer(2, 1024 * 1024);
+
+        final List<Migration> migrations = bulkMigrationCoalescer.coalesce(ImmutableList.of(
+                new CreateIndexMigration("test_index", "{}"),
+                new IndexDocumentMigration("test_index", Optional.of("1"), Optional.empty(), "{\n  \"user\": \"kimchy\"\n}"),
+                new UpdateDocumentMigration("test_index", "1", "{\"doc\": {\"user\": \"new_user\"}}"),
+                new DeleteDocumentMigration("test_index", "1")
+        ));
+
+        assertThat(migrations, hasSize(3));
+        assertThat(migrations.get(0), instanceOf(CreateIndexMigration.class));
+        assertThat(migrations.get(1), instanceOf(BulkMigration.class));
+        assertThat(migrations.get(2), instanceOf(DeleteDocumentMigration.class));
+        assertThat(migrations.get(1).getBody(), is(
+                "{\"create\":{\"_index\":\"test_index\",\"_id\":\"1\"}}\n" +
+                        "{\"user\":\"kimchy\"}\n" +
+                        "{\"update\":{\"_index\":\"test_index\",\"_id\":\"1\"}}\n" +
+                        "{\"doc\":{\"user\":\"new_user\"}}\n"
+        ));
+    }
+
+    @Test
+    public void disabledByDefault() {
+        final BulkMigrationCoalescer bulkMigrationCoalescer = new BulkMigrationCoalescer(1, 1024 * 1024);
+        final List<Migration> migrations = ImmutableList.of(
+                new DeleteDocumentMigration("test_index", "1"),
+                new DeleteDocumentMigration("test_index", "2")
+        );
+
+        assertThat(bulkMigrationCoalescer.coalesce(migrations), contains(migrations.toArray()));
+    }
+
+    @Test
+    public void failedItemMappedToChange() {
+        final BulkMigration bulkMigration = new BulkMigration(ImmutableList.of(
+                new DeleteDocumentMigration("test_index", "1"),
+                new DeleteDocumentMigration("test_index", "2")
+        ), 3);
+
+        final MigrationFailedException exception = assertThrows(MigrationFailedException.class, () -> bulkMigration.verifyResponse(
+                "{\"errors\": true, \"items\": [{\"delete\": {\"status\": 200}}, {\"delete\": {\"status\": 404, \"error\": {\"type\": \"not_found\"}}}]}"
+        ));
+        assertThat(exception.getMessage(), is("Change #5 (DeleteDocumentMigration test_index/2) failed"));
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class BulkWriterTest {
+
+    @Test
+    public void verifyResponseWithoutErrors() throws IOException {
+        assertThat(BulkWriter.verifyResponse("{\"errors\": false, \"items\": [{\"index\": {\"status\": 201}}, {\"index\": {\"status\": 201}}]}", i -> "item " + i), is(empty()));
+    }
+
+    @Test
+    public void verifyResponseReturnsRejectedItems() throws IOException {
+        assertThat(BulkWriter.verifyResponse(
+                "{\"errors\": true, \"items\": [{\"index\": {\"status\": 429, \"error\": {\"type\": \"es_rejected_execution_exception\"}}}, " +
+                        "{\"index\": {\"status\": 201}}, {\"index\": {\"status\": 429, \"error\": {\"type\": \"es_rejected_execution_exception\"}}}]}",
+                i -> "item " + i
+        ), contains(0, 2));
+    }
+
+    @Test
+    public void selectItemsKeepsActionAndDocument() {
+        assertThat(BulkWriter.selectItems("{\"index\":{}}\n{\"a\":1}\n{\"index\":{}}\n{\"a\":2}\n{\"index\":{}}\n{\"a\":3}\n", ImmutableList.of(0, 2)), is(
+                "{\"index\":{}}\n{\"a\":1}\n{\"index\":{}}\n{\"a\":3}\n"
+        ));
+    }
+
+    @Test
+    public void backoffDoublesUpToTheMaximum() throws IOException {
+        try (RestClient restClient = RestClient.builder(new HttpHost("localhost", 9200)).build()) {
+            final BulkWriter bulkWriter = new BulkWriter(restClient, 1);
+
+            assertThat(bulkWriter.getBackoffInMillis(0), is(BulkWriter.DEFAULT_INITIAL_BACKOFF_IN_MILLIS));
+            assertThat(bulkWriter.getBackoffInMillis(3), is(BulkWriter.DEFAULT_INITIAL_BACKOFF_IN_MILLIS * 8));
+            assertThat(bulkWriter.getBackoffInMillis(30), is(BulkWriter.MAX_BACKOFF_IN_MILLIS));
+        }
+    }
+
+    @Test
+    public void verifyResponseNamesFailedItem() {
+        final MigrationFailedException exception = assertThrows(MigrationFailedException.class, () -> BulkWriter.verifyResponse(
+                "{\"errors\": true, \"items\": [{\"index\": {\"status\": 201}}, {\"index\": {\"status\": 400, \"error\": {\"type\": \"mapper_parsing_exception\"}}}]}",
+                i -> "line " + (i + 4) + " of products.ndjson"
+        ));
+
+        assertThat(exception.getMessage(), is("Line 5 of products.ndjson failed"));
+        assertThat(exception.getCause().getMessage(), containsString("mapper_parsing_exception"));
+    }
+}
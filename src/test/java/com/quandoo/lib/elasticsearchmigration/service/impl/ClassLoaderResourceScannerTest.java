@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.reflections.Reflections;
+import org.reflections.scanners.ResourcesScanner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class ClassLoaderResourceScannerTest {
+
+    private static final String BASE_PACKAGE = "com.quandoo.lib.elasticsearchmigration.service.impl";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void directoriesListSameMigrationFilesAsReflections() {
+        final Pattern yaml = Pattern.compile("^.*\\.yaml$");
+        final Set<String> resources = new ClassLoaderResourceScanner(getClass().getClassLoader()).scan(BASE_PACKAGE);
+
+        assertThat(
+                resources.stream().filter(e -> yaml.matcher(e).matches()).collect(Collectors.toSet()),
+                equalTo(new HashSet<>(new Reflections(BASE_PACKAGE, new ResourcesScanner()).getResources(yaml)))
+        );
+        assertThat(resources, hasItem("com/quandoo/lib/elasticsearchmigration/service/impl/V1_5_0__java_migration.class"));
+    }
+
+    @Test
+    public void jarListsOnlyEntriesBelowBasePackage() throws Exception {
+        final Path jar = directory.resolve("migrations.jar");
+        try (OutputStream outputStream = Files.newOutputStream(jar)) {
+            writeJar(outputStream);
+        }
+
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{jar.toUri().toURL()}, null)) {
+            assertThat(new ClassLoaderResourceScanner(classLoader).scan("es.migration"), contains("es/migration/V1_0_0__one.yaml", "es/migration/nested/V1_1_0__two.yaml"));
+        }
+    }
+
+    @Test
+    public void nestedJarListsOnlyEntriesBelowBasePackage() throws Exception {
+        final ByteArrayOutputStream nested = new ByteArrayOutputStream();
+        writeJar(nested);
+        final Path jar = directory.resolve("app.jar");
+        try (JarOutputStream jarOutputStream = new JarOutputStream(Files.newOutputStream(jar))) {
+            jarOutputStream.putNextEntry(new JarEntry("lib/"));
+            jarOutputStream.putNextEntry(new JarEntry("lib/migrations.jar"));
+            jarOutputStream.write(nested.toByteArray());
+        }
+
+        final URL url = new URL("jar:" + jar.toUri() + "!/lib/migrations.jar!/es/migration");
+        final ClassLoader classLoader = new ClassLoader(null) {
+            @Override
+            public Enumeration<URL> getResources(final String name) {
+                return Collections.enumeration(Collections.singletonList(url));
+            }
+        };
+
+        assertThat(new ClassLoaderResourceScanner(classLoader).scan("es.migration"), contains("es/migration/V1_0_0__one.yaml", "es/migration/nested/V1_1_0__two.yaml"));
+    }
+
+    private void writeJar(final OutputStream outputStream) throws IOException {
+        try (JarOutputStream jarOutputStream = new JarOutputStream(outputStream)) {
+            for (String entry : new String[]{"es/", "es/migration/", "es/migration/nested/", "es/migrationother/"}) {
+                jarOutputStream.putNextEntry(new JarEntry(entry));
+            }
+            for (String entry : new String[]{"es/migration/V1_0_0__one.yaml", "es/migration/nested/V1_1_0__two.yaml", "es/migrationother/V1_2_0__three.yaml"}) {
+                jarOutputStream.putNextEntry(new JarEntry(entry));
+                jarOutputStream.write("migrations: []".getBytes("UTF-8"));
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class ClusterTopologyCacheTest {
+
+    private final AtomicLong clock = new AtomicLong(1000L);
+    private final ClusterTopologyCache clusterTopologyCache = new ClusterTopologyCache(100L, clock::get);
+
+    @Test
+    public void bootstrapExpiresAfterTtl() {
+        assertThat(clusterTopologyCache.isBootstrapped(), is(false));
+
+        clusterTopologyCache.bootstrapped();
+        clock.addAndGet(99L);
+        assertThat(clusterTopologyCache.isBootstrapped(), is(true));
+
+        clock.addAndGet(1L);
+        assertThat(clusterTopologyCache.isBootstrapped(), is(false));
+    }
+
+    @Test
+    public void numberOfNodesExpiresAfterTtl() {
+        assertThat(clusterTopologyCache.getNumberOfNodes(), is(Optional.empty()));
+
+        clusterTopologyCache.setNumberOfNodes(3);
+        clock.addAndGet(99L);
+        assertThat(clusterTopologyCache.getNumberOfNodes(), is(Optional.of(3)));
+
+        clock.addAndGet(1L);
+        assertThat(clusterTopologyCache.getNumberOfNodes(), is(Optional.empty()));
+    }
+}
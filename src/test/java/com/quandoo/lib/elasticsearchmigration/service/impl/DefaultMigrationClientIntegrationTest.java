@@ -19,10 +19,12 @@ import com.quandoo.lib.elasticsearchmigration.*;
 import com.quandoo.lib.elasticsearchmigration.exception.*;
 import com.quandoo.lib.elasticsearchmigration.model.es.*;
 import com.quandoo.lib.elasticsearchmigration.model.migration.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.*;
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.stream.Collectors;
 import org.apache.http.*;
 import org.elasticsearch.client.*;
 import org.junit.jupiter.api.Assertions;
@@ -426,6 +428,222 @@ public class DefaultMigrationClientIntegrationTest extends AbstractESTest {
         assertMigrationEntry();
     }
 
+    @Test
+    public void testParallelReindexMigrationRecordsTask() throws ExecutionException, InterruptedException, IOException {
+
+        createIndex("test_index_1", loadResource("create_index.json"));
+        createIndex("test_index_2", loadResource("create_index.json"));
+        indexDocument("test_index_1", "1", loadResource("index_document.json"));
+
+        final List<TaskProgress> taskProgresses = new CopyOnWriteArrayList<>();
+        final List<String> recordedTaskIds = new CopyOnWriteArrayList<>();
+        final List<Integer> recordedTaskChanges = new CopyOnWriteArrayList<>();
+        final DefaultMigrationClient defaultMigrationClient = createClient(ExecutionConfig.builder().parallelism(2).taskProgressListener(taskProgress -> {
+            final MigrationEntry migrationEntry = getFromIndex(MigrationEntryMeta.INDEX, "test-1.0.0", MigrationEntry.class);
+            taskProgresses.add(taskProgress);
+            recordedTaskIds.add(migrationEntry.getTaskId());
+            recordedTaskChanges.add(migrationEntry.getTaskChange());
+        }).build());
+
+        final MigrationSet migrationSet = new MigrationSet(
+                ImmutableList.of(
+                        new MigrationSetEntry(
+                                ImmutableList.of(
+                                        new CreateIndexMigration("test_index_3", loadResource("create_index.json")),
+                                        new ReindexMigration(loadResource("reindex.json")),
+                                        new IndexDocumentMigration("test_index_3", Optional.of("1"), Optional.empty(), loadResource("index_document.json"))
+                                ),
+                                new MigrationMeta(
+                                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.0.0",
+                                        "singularity"
+                                )
+
+                        )
+                )
+        );
+
+        defaultMigrationClient.applyMigrationSet(migrationSet);
+
+        assertThat(checkDocumentExists("test_index_2", "1"), is(true));
+        assertThat(checkDocumentExists("test_index_3", "1"), is(true));
+        assertThat(taskProgresses, not(empty()));
+        assertThat(recordedTaskIds, everyItem(is(taskProgresses.get(0).getTaskId())));
+        assertThat(recordedTaskChanges, everyItem(is(1)));
+        assertThat(getFromIndex(MigrationEntryMeta.INDEX, "test-1.0.0", MigrationEntry.class).getTaskId(), nullValue());
+        assertMigrationEntry();
+    }
+
+    @Test
+    public void testAliasSwapMigration() throws ExecutionException, InterruptedException, IOException {
+
+        createIndex("test_index_1", "{\"aliases\": {\"test_alias\": {}}}");
+
+        final MigrationSet migrationSet = createAliasSwapMigrationSet("0s");
+
+        final DefaultMigrationClient defaultMigrationClient = createClient();
+        defaultMigrationClient.applyMigrationSet(migrationSet);
+
+        assertThat(getAliasedIndices("test_alias"), contains("test_index_2"));
+        assertThat(checkIndexExists("test_index_1"), is(false));
+        assertMigrationEntry();
+    }
+
+    @Test
+    public void testAliasSwapMigrationAsync() throws ExecutionException, InterruptedException, IOException {
+
+        createIndex("test_index_1", "{\"aliases\": {\"test_alias\": {}}}");
+
+        final MigrationSet migrationSet = createAliasSwapMigrationSet("0s");
+
+        final DefaultMigrationClient defaultMigrationClient = createClient();
+        defaultMigrationClient.applyMigrationSetAsync(migrationSet).get();
+
+        assertThat(getAliasedIndices("test_alias"), contains("test_index_2"));
+        assertThat(checkIndexExists("test_index_1"), is(false));
+        assertMigrationEntry();
+    }
+
+    @Test
+    public void testAliasSwapMigrationDeletesOldIndexOnLaterRun() throws ExecutionException, InterruptedException, IOException {
+
+        createIndex("test_index_1", "{\"aliases\": {\"test_alias\": {}}}");
+
+        final MigrationSet migrationSet = createAliasSwapMigrationSet("2s");
+
+        final DefaultMigrationClient defaultMigrationClient = createClient();
+        defaultMigrationClient.applyMigrationSet(migrationSet);
+
+        // The version succeeds right away, the old index is left to a later run
+        final MigrationEntry migrationEntry = getFromIndex(MigrationEntryMeta.INDEX, "test-1.0.0", MigrationEntry.class);
+        assertThat(getAliasedIndices("test_alias"), contains("test_index_2"));
+        assertThat(checkIndexExists("test_index_1"), is(true));
+        assertThat(migrationEntry.getPendingDeletes(), contains("test_index_1"));
+        assertThat(migrationEntry.getPendingDeletesDue(), greaterThan(System.currentTimeMillis()));
+        assertThat(checkDocumentExists(MigrationEntryMeta.INDEX, "test" + MigrationEntryMeta.FINGERPRINT_ID_SUFFIX), is(false));
+        assertMigrationEntry();
+
+        Thread.sleep(2500);
+        defaultMigrationClient.applyMigrationSet(migrationSet);
+
+        assertThat(checkIndexExists("test_index_1"), is(false));
+        assertThat(getFromIndex(MigrationEntryMeta.INDEX, "test-1.0.0", MigrationEntry.class).getPendingDeletes(), nullValue());
+        assertThat(checkDocumentExists(MigrationEntryMeta.INDEX, "test" + MigrationEntryMeta.FINGERPRINT_ID_SUFFIX), is(true));
+    }
+
+    private MigrationSet createAliasSwapMigrationSet(final String deleteOldIndicesAfter) {
+        return new MigrationSet(
+                ImmutableList.of(
+                        new MigrationSetEntry(
+                                ImmutableList.of(
+                                        new CreateIndexMigration("test_index_2", loadResource("create_index.json")),
+                                        new AliasSwapMigration("test_alias", "test_index_2", Optional.of(deleteOldIndicesAfter))
+                                ),
+                                new MigrationMeta(
+                                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.0.0",
+                                        "singularity"
+                                )
+
+                        )
+                )
+        );
+    }
+
+    @Test
+    public void testUpdateByQueryMigration() throws ExecutionException, InterruptedException, IOException {
+
+        createIndex("test_index", loadResource("create_index.json"));
+        indexDocument("test_index", "1", loadResource("index_document.json"));
+
+        final List<TaskProgress> taskProgresses = new CopyOnWriteArrayList<>();
+        final List<String> recordedTaskIds = new CopyOnWriteArrayList<>();
+        final DefaultMigrationClient defaultMigrationClient = createClient(ExecutionConfig.builder().taskProgressListener(taskProgress -> {
+            taskProgresses.add(taskProgress);
+            recordedTaskIds.add(getFromIndex(MigrationEntryMeta.INDEX, "test-1.0.0", MigrationEntry.class).getTaskId());
+        }).build());
+
+        final MigrationSet migrationSet = new MigrationSet(
+                ImmutableList.of(
+                        new MigrationSetEntry(
+                                ImmutableList.of(new UpdateByQueryMigration(
+                                        "test_index",
+                                        Optional.of("{\"term\": {\"user\": \"test_user\"}}"),
+                                        Optional.of("{\"source\": \"ctx._source.message = 'updated'\"}"),
+                                        Optional.empty(),
+                                        Optional.empty(),
+                                        Optional.empty(),
+                                        Optional.of(Conflicts.PROCEED)
+                                )),
+                                new MigrationMeta(
+                                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.0.0",
+                                        "singularity"
+                                )
+
+                        )
+                )
+        );
+
+        defaultMigrationClient.applyMigrationSet(migrationSet);
+
+        assertThat(getFromIndex("test_index", "1"), containsString("\"updated\""));
+        assertThat(taskProgresses, not(empty()));
+        assertThat(taskProgresses.get(taskProgresses.size() - 1).isCompleted(), is(true));
+        assertThat(taskProgresses.get(taskProgresses.size() - 1).getUpdated(), is(1L));
+        // The task id is on the version entry while the task runs and removed once it completed
+        assertThat(recordedTaskIds, everyItem(is(taskProgresses.get(0).getTaskId())));
+        assertThat(getFromIndex(MigrationEntryMeta.INDEX, "test-1.0.0", MigrationEntry.class).getTaskId(), nullValue());
+        assertMigrationEntry();
+    }
+
+    @Test
+    public void testDeleteByQueryMigration() throws ExecutionException, InterruptedException, IOException {
+
+        createIndex("test_index", loadResource("create_index.json"));
+        indexDocument("test_index", "1", loadResource("index_document.json"));
+        indexDocument("test_index", "2", "{\"user\":\"other_user\",\"post_date\":\"2017-01-01\",\"message\":\"hey!!!\"}");
+
+        final List<TaskProgress> taskProgresses = new CopyOnWriteArrayList<>();
+        final List<String> recordedTaskIds = new CopyOnWriteArrayList<>();
+        final DefaultMigrationClient defaultMigrationClient = createClient(ExecutionConfig.builder().taskProgressListener(taskProgress -> {
+            taskProgresses.add(taskProgress);
+            recordedTaskIds.add(getFromIndex(MigrationEntryMeta.INDEX, "test-1.0.0", MigrationEntry.class).getTaskId());
+        }).build());
+
+        final MigrationSet migrationSet = new MigrationSet(
+                ImmutableList.of(
+                        new MigrationSetEntry(
+                                ImmutableList.of(new DeleteByQueryMigration(
+                                        "test_index",
+                                        "{\"term\": {\"user\": \"test_user\"}}",
+                                        Optional.empty(),
+                                        Optional.empty(),
+                                        Optional.empty(),
+                                        Optional.of(Conflicts.PROCEED)
+                                )),
+                                new MigrationMeta(
+                                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.0.0",
+                                        "singularity"
+                                )
+
+                        )
+                )
+        );
+
+        defaultMigrationClient.applyMigrationSet(migrationSet);
+
+        assertThat(checkDocumentExists("test_index", "1"), is(false));
+        assertThat(checkDocumentExists("test_index", "2"), is(true));
+        assertThat(taskProgresses, not(empty()));
+        assertThat(taskProgresses.get(taskProgresses.size() - 1).isCompleted(), is(true));
+        assertThat(taskProgresses.get(taskProgresses.size() - 1).getDeleted(), is(1L));
+        assertThat(recordedTaskIds, everyItem(is(taskProgresses.get(0).getTaskId())));
+        assertThat(getFromIndex(MigrationEntryMeta.INDEX, "test-1.0.0", MigrationEntry.class).getTaskId(), nullValue());
+        assertMigrationEntry();
+    }
+
     @Test
     public void testReapplyMigration() throws ExecutionException, InterruptedException, IOException {
 
@@ -543,6 +761,165 @@ public class DefaultMigrationClientIntegrationTest extends AbstractESTest {
         });
     }
 
+    @Test
+    public void testPendingMigrationAppliedAfterCrash() throws ExecutionException, InterruptedException, IOException {
+
+        final DefaultMigrationClient defaultMigrationClient = createClient();
+        defaultMigrationClient.applyMigrationSet(new MigrationSet(Collections.emptyList()));
+
+        // A parallel run scheduled both versions, applied the later one and died before starting the earlier one
+        indexDocument(MigrationEntryMeta.INDEX, "test-1.0.0", loadResource("pending_elasticsearchmigration_version_entry.json"));
+        indexDocument(MigrationEntryMeta.INDEX, "test-1.1.0", loadResource("later_successful_elasticsearchmigration_version_entry.json"));
+
+        final MigrationSet migrationSet = new MigrationSet(
+                ImmutableList.of(
+                        new MigrationSetEntry(
+                                ImmutableList.of(new CreateIndexMigration("test_index", loadResource("create_index.json"))),
+                                new MigrationMeta(
+                                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.0.0",
+                                        "singularity"
+                                )
+
+                        ),
+                        new MigrationSetEntry(
+                                ImmutableList.of(new CreateIndexMigration("test_index_2", loadResource("create_index.json"))),
+                                new MigrationMeta(
+                                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.1.0",
+                                        "singularity"
+                                )
+
+                        )
+                )
+        );
+
+        defaultMigrationClient.applyMigrationSet(migrationSet);
+
+        assertThat(checkIndexExists("test_index"), is(true));
+        assertThat(checkIndexExists("test_index_2"), is(false));
+        assertMigrationEntry();
+    }
+
+    @Test
+    public void testParallelVersionsLeaveNoPendingEntries() throws ExecutionException, InterruptedException, IOException {
+
+        final DefaultMigrationClient defaultMigrationClient = createClient(ExecutionConfig.builder().versionParallelism(2).build());
+        defaultMigrationClient.applyMigrationSet(new MigrationSet(Collections.emptyList()));
+
+        final MigrationSet migrationSet = new MigrationSet(
+                ImmutableList.of(
+                        new MigrationSetEntry(
+                                ImmutableList.of(new CreateIndexMigration("test_index", loadResource("create_index.json"))),
+                                new MigrationMeta(
+                                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.0.0",
+                                        "singularity"
+                                )
+
+                        ),
+                        new MigrationSetEntry(
+                                ImmutableList.of(new CreateIndexMigration("test_index_2", loadResource("create_index.json"))),
+                                new MigrationMeta(
+                                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.1.0",
+                                        "singularity"
+                                )
+
+                        )
+                )
+        );
+
+        defaultMigrationClient.applyMigrationSet(migrationSet);
+
+        assertThat(checkIndexExists("test_index"), is(true));
+        assertThat(checkIndexExists("test_index_2"), is(true));
+        assertThat(getFromIndex(MigrationEntryMeta.INDEX, "test-1.0.0", MigrationEntry.class).getState(), is(State.SUCCESS));
+        assertThat(getFromIndex(MigrationEntryMeta.INDEX, "test-1.1.0", MigrationEntry.class).getState(), is(State.SUCCESS));
+    }
+
+    @Test
+    public void testBulkIngestRestoresSettings() throws ExecutionException, InterruptedException, IOException {
+
+        // Two replicas never get allocated on a single node, so the wait for green runs into the recovery timeout
+        final DefaultMigrationClient defaultMigrationClient = createClient(ExecutionConfig.builder().recoveryTimeoutInMillis(1000L).build());
+        defaultMigrationClient.applyMigrationSet(new MigrationSet(Collections.emptyList()));
+
+        createIndex("test_index", loadResource("create_index.json"));
+
+        final MigrationSet migrationSet = new MigrationSet(
+                ImmutableList.of(
+                        new MigrationSetEntry(
+                                ImmutableList.of(
+                                        new CreateIndexMigration("test_index_2", "{\"settings\": {\"index.number_of_replicas\": 0, \"index.refresh_interval\": \"2s\"}}"),
+                                        new IndexDocumentMigration("test_index", Optional.of("1"), Optional.empty(), loadResource("index_document.json")),
+                                        new IndexDocumentMigration("test_index_2", Optional.of("1"), Optional.empty(), loadResource("index_document.json"))
+                                ),
+                                new MigrationMeta(
+                                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.0.0",
+                                        "singularity"
+                                ),
+                                Optional.empty(),
+                                true
+                        )
+                )
+        );
+
+        defaultMigrationClient.applyMigrationSet(migrationSet);
+
+        assertThat(getIndexSetting("test_index", "number_of_replicas"), is("2"));
+        assertThat(getIndexSetting("test_index", "refresh_interval"), nullValue());
+        assertThat(getIndexSetting("test_index_2", "number_of_replicas"), is("0"));
+        assertThat(getIndexSetting("test_index_2", "refresh_interval"), is("2s"));
+        assertThat(checkDocumentExists("test_index_2", "1"), is(true));
+
+        assertMigrationEntry();
+        assertThat(getFromIndex(MigrationEntryMeta.INDEX, "test-1.0.0", MigrationEntry.class).getOriginalSettings(), is(ImmutableMap.of(
+                "test_index_2", ImmutableMap.of("number_of_replicas", "0", "refresh_interval", "2s"),
+                "test_index", ImmutableMap.of("number_of_replicas", "2")
+        )));
+    }
+
+    @Test
+    public void testHistorySnapshotRoundTrip() throws ExecutionException, InterruptedException, IOException {
+
+        final DefaultMigrationClient defaultMigrationClient = createClient();
+        final MigrationSetEntry first = new MigrationSetEntry(
+                ImmutableList.of(new CreateIndexMigration("test_index", loadResource("create_index.json"))),
+                new MigrationMeta(
+                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                        "1.0.0",
+                        "singularity"
+                )
+        );
+        final MigrationSetEntry second = new MigrationSetEntry(
+                ImmutableList.of(new CreateIndexMigration("test_index_2", loadResource("create_index.json"))),
+                new MigrationMeta(
+                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                        "1.1.0",
+                        "singularity"
+                )
+        );
+
+        defaultMigrationClient.applyMigrationSet(new MigrationSet(ImmutableList.of(first)));
+
+        final SnapshotEntry snapshot = getFromIndex(MigrationEntryMeta.INDEX, "test" + MigrationEntryMeta.SNAPSHOT_ID_SUFFIX, SnapshotEntry.class);
+        assertThat(snapshot.getVersions().stream().map(SnapshotVersion::getVersion).collect(Collectors.toList()), contains("1.0.0"));
+        assertThat(snapshot.getVersions().get(0).getState(), is(State.SUCCESS));
+
+        // Written by a release which doesn't know the snapshot
+        indexDocument(MigrationEntryMeta.INDEX, "test-1.1.0", loadResource("later_successful_elasticsearchmigration_version_entry.json"));
+
+        defaultMigrationClient.applyMigrationSet(new MigrationSet(ImmutableList.of(first, second)));
+
+        assertThat(checkIndexExists("test_index_2"), is(false));
+        final SnapshotEntry repaired = getFromIndex(MigrationEntryMeta.INDEX, "test" + MigrationEntryMeta.SNAPSHOT_ID_SUFFIX, SnapshotEntry.class);
+        assertThat(repaired.getVersions().stream().map(SnapshotVersion::getVersion).collect(Collectors.toList()), contains("1.0.0", "1.1.0"));
+        assertThat(repaired.getVersions().get(1).getState(), is(State.SUCCESS));
+        assertMigrationEntry();
+    }
+
     @Test
     public void testMigrationRetried() throws ExecutionException, InterruptedException, IOException {
 
@@ -572,6 +949,70 @@ public class DefaultMigrationClientIntegrationTest extends AbstractESTest {
         assertMigrationEntry();
     }
 
+    @Test
+    public void testExpiredLockTakenOver() throws ExecutionException, InterruptedException, IOException {
+
+        final DefaultMigrationClient defaultMigrationClient = createClient(true, 5000, 0);
+        defaultMigrationClient.applyMigrationSet(new MigrationSet(Collections.emptyList()));
+
+        indexDocument(LockEntryMeta.INDEX, "test-global", loadResource("expired_lock_entry.json"));
+
+        final MigrationSet migrationSet = new MigrationSet(
+                ImmutableList.of(
+                        new MigrationSetEntry(
+                                ImmutableList.of(new CreateIndexMigration("test_index", loadResource("create_index.json"))),
+                                new MigrationMeta(
+                                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.0.0",
+                                        "singularity"
+                                )
+
+                        )
+                )
+        );
+
+        defaultMigrationClient.applyMigrationSet(migrationSet);
+
+        assertThat(checkIndexExists("test_index"), is(true));
+        assertThat(checkDocumentExists(LockEntryMeta.INDEX, "test-global"), is(false));
+        assertMigrationEntry();
+    }
+
+    @Test
+    public void testMigrationAbortedWhenLockDeleted() {
+
+        final DefaultMigrationClient defaultMigrationClient = createClient(ExecutionConfig.builder().lockLeaseInMillis(3000L).build());
+        defaultMigrationClient.applyMigrationSet(new MigrationSet(Collections.emptyList()));
+
+        final MigrationSet migrationSet = new MigrationSet(
+                ImmutableList.of(
+                        new MigrationSetEntry(
+                                ImmutableList.of(
+                                        new JavaCodeMigration(context -> {
+                                            deleteDocument(LockEntryMeta.INDEX, "test-global");
+                                            // Long enough for a renewal to find the lock gone
+                                            Thread.sleep(2500);
+                                        }),
+                                        new CreateIndexMigration("test_index", loadResource("create_index.json"))
+                                ),
+                                new MigrationMeta(
+                                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.0.0",
+                                        "singularity"
+                                )
+
+                        )
+                )
+        );
+
+        assertThrows(MigrationFailedException.class, () -> {
+            defaultMigrationClient.applyMigrationSet(migrationSet);
+        });
+
+        assertThat(checkIndexExists("test_index"), is(false));
+        assertThat(getFromIndex(MigrationEntryMeta.INDEX, "test-1.0.0", MigrationEntry.class).getState(), is(State.IN_PROGRESS));
+    }
+
     @Test
     public void testMigrationFailedAfterAllRetries() throws ExecutionException, InterruptedException, IOException {
 
@@ -601,6 +1042,122 @@ public class DefaultMigrationClientIntegrationTest extends AbstractESTest {
         assertThat(checkIndexExists("test_index"), is(false));
     }
 
+    @Test
+    public void testApplyMigrationSetAsync() throws ExecutionException, InterruptedException, IOException {
+
+        final MigrationSet migrationSet = new MigrationSet(
+                ImmutableList.of(
+                        new MigrationSetEntry(
+                                ImmutableList.of(new CreateIndexMigration("test_index", loadResource("create_index.json"))),
+                                new MigrationMeta(
+                                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.0.0",
+                                        "singularity"
+                                )
+
+                        )
+                )
+        );
+
+        final DefaultMigrationClient defaultMigrationClient = createClient();
+        final MigrationResult migrationResult = defaultMigrationClient.applyMigrationSetAsync(migrationSet).get();
+
+        assertThat(migrationResult.getAppliedVersions(), contains("1.0.0"));
+        assertThat(checkIndexExists("test_index"), is(true));
+        assertMigrationEntry();
+    }
+
+    @Test
+    public void testMigrationFailedAfterAllRetriesAsync() throws ExecutionException, InterruptedException, IOException {
+
+        final DefaultMigrationClient defaultMigrationClient = createClient(true, 1000, 3);
+        defaultMigrationClient.applyMigrationSetAsync(new MigrationSet(Collections.emptyList())).get();
+
+        indexDocument(LockEntryMeta.INDEX, "test-global", loadResource("lock_entry.json"));
+
+        final MigrationSet migrationSet = new MigrationSet(
+                ImmutableList.of(
+                        new MigrationSetEntry(
+                                ImmutableList.of(new CreateIndexMigration("test_index", loadResource("create_index.json"))),
+                                new MigrationMeta(
+                                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.0.0",
+                                        "singularity"
+                                )
+
+                        )
+                )
+        );
+
+        final ExecutionException executionException = assertThrows(ExecutionException.class, () -> {
+            defaultMigrationClient.applyMigrationSetAsync(migrationSet).get();
+        });
+        assertThat(executionException.getCause(), instanceOf(MigrationLockedException.class));
+    }
+
+    @Test
+    public void testMigrationAbortedWhenLockTakenOverAsync() {
+
+        final DefaultMigrationClient defaultMigrationClient = createClient(ExecutionConfig.builder().lockLeaseInMillis(3000L).build());
+
+        final MigrationSet migrationSet = new MigrationSet(
+                ImmutableList.of(
+                        new MigrationSetEntry(
+                                ImmutableList.of(
+                                        new JavaCodeMigration(context -> {
+                                            indexDocument(LockEntryMeta.INDEX, "test-global", loadResource("expired_lock_entry.json"));
+                                            // Long enough for a renewal to find the lock taken over
+                                            Thread.sleep(2500);
+                                        }),
+                                        new CreateIndexMigration("test_index", loadResource("create_index.json"))
+                                ),
+                                new MigrationMeta(
+                                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.0.0",
+                                        "singularity"
+                                )
+
+                        )
+                )
+        );
+
+        final ExecutionException executionException = assertThrows(ExecutionException.class, () -> {
+            defaultMigrationClient.applyMigrationSetAsync(migrationSet).get();
+        });
+        assertThat(executionException.getCause(), instanceOf(MigrationFailedException.class));
+
+        assertThat(checkIndexExists("test_index"), is(false));
+        assertThat(checkDocumentExists(LockEntryMeta.INDEX, "test-global"), is(true));
+        assertThat(getFromIndex(MigrationEntryMeta.INDEX, "test-1.0.0", MigrationEntry.class).getState(), is(State.IN_PROGRESS));
+    }
+
+    @Test
+    public void testUpToDateMigrationSetSkipsLock() throws ExecutionException, InterruptedException, IOException {
+
+        final MigrationSet migrationSet = new MigrationSet(
+                ImmutableList.of(
+                        new MigrationSetEntry(
+                                ImmutableList.of(new CreateIndexMigration("test_index", loadResource("create_index.json"))),
+                                new MigrationMeta(
+                                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.0.0",
+                                        "singularity"
+                                )
+
+                        )
+                )
+        );
+
+        final DefaultMigrationClient defaultMigrationClient = createClient(true, 1000, 0);
+        defaultMigrationClient.applyMigrationSet(migrationSet);
+        assertThat(checkDocumentExists(MigrationEntryMeta.INDEX, "test" + MigrationEntryMeta.FINGERPRINT_ID_SUFFIX), is(true));
+
+        indexDocument(LockEntryMeta.INDEX, "test-global", loadResource("lock_entry.json"));
+
+        defaultMigrationClient.applyMigrationSet(migrationSet);
+        assertThat(defaultMigrationClient.applyMigrationSetAsync(migrationSet).get().getAppliedVersions(), empty());
+    }
+
     @Test
     public void testNameMismatchMigrationFailedException() {
 
@@ -722,6 +1279,11 @@ public class DefaultMigrationClientIntegrationTest extends AbstractESTest {
         assertThat(migrationEntry.getFailureMessage(), isEmptyString());
     }
 
+    private String getIndexSetting(final String index, final String name) throws IOException {
+        final Response response = client.getLowLevelClient().performRequest(new Request("GET", "/" + index + "/_settings/index." + name));
+        return new ObjectMapper().readTree(response.getEntity().getContent()).path(index).path("settings").path("index").path(name).textValue();
+    }
+
     private DefaultMigrationClient createClient() {
         return createClient(true, 15000, 5);
     }
@@ -730,4 +1292,9 @@ public class DefaultMigrationClientIntegrationTest extends AbstractESTest {
         final RestClientBuilder builder = RestClient.builder(new HttpHost("localhost", 9200, "http"));
         return new DefaultMigrationClient("test", new RestHighLevelClient(builder), ignorePreviousFailures, backoffPeriodMillis, retryCount);
     }
+
+    private DefaultMigrationClient createClient(ExecutionConfig executionConfig) {
+        final RestClientBuilder builder = RestClient.builder(new HttpHost("localhost", 9200, "http"));
+        return new DefaultMigrationClient("test", new RestHighLevelClient(builder), true, 15000, 5, executionConfig);
+    }
 }
@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.quandoo.lib.elasticsearchmigration.model.migration.DeleteDocumentMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.DeleteIndexMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.IndexDocumentMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.Migration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.RefreshDeferringMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.RefreshMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.ReindexMigration;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class DeferredRefreshPlannerTest {
+
+    private final DeferredRefreshPlanner deferredRefreshPlanner = new DeferredRefreshPlanner(new MigrationResourceResolver());
+
+    @Test
+    public void refreshOnceAtEndOfVersion() {
+        final List<Migration> migrations = deferredRefreshPlanner.plan(ImmutableList.of(
+                new IndexDocumentMigration("index_a", Optional.of("1"), Optional.empty(), "{}"),
+                new IndexDocumentMigration("index_b", Optional.of("1"), Optional.empty(), "{}"),
+                new DeleteDocumentMigration("index_a", "2")
+        ));
+
+        assertThat(migrations, hasSize(4));
+        assertThat(migrations.get(0), instanceOf(RefreshDeferringMigration.class));
+        assertThat(migrations.get(0).getParameters(), not(hasKey("refresh")));
+        assertThat(migrations.get(3), is(new RefreshMigration(ImmutableSet.of("index_a", "index_b"))));
+        assertThat(migrations.get(3).getUrl(), is("/index_a,index_b/_refresh"));
+    }
+
+    @Test
+    public void refreshBeforeDependentRead() {
+        final List<Migration> migrations = deferredRefreshPlanner.plan(ImmutableList.of(
+                new IndexDocumentMigration("index_a", Optional.of("1"), Optional.empty(), "{}"),
+                new IndexDocumentMigration("index_b", Optional.of("1"), Optional.empty(), "{}"),
+                new ReindexMigration("{\"source\": {\"index\": \"index_a\"}, \"dest\": {\"index\": \"index_c\"}}")
+        ));
+
+        assertThat(migrations, hasSize(5));
+        assertThat(migrations.get(2), is(new RefreshMigration(ImmutableSet.of("index_a"))));
+        assertThat(migrations.get(3), instanceOf(RefreshDeferringMigration.class));
+        assertThat(migrations.get(4), is(new RefreshMigration(ImmutableSet.of("index_b", "index_c"))));
+    }
+
+    @Test
+    public void deletedIndexNotRefreshed() {
+        final List<Migration> migrations = deferredRefreshPlanner.plan(ImmutableList.of(
+                new IndexDocumentMigration("index_a", Optional.of("1"), Optional.empty(), "{}"),
+                new DeleteIndexMigration("index_a")
+        ));
+
+        assertThat(migrations, hasSize(2));
+        assertThat(migrations.get(1), instanceOf(DeleteIndexMigration.class));
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.model.migration.ResourceAccess;
+import com.quandoo.lib.elasticsearchmigration.model.migration.ResourceType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class DependencyGraphExecutorTest {
+
+    @Test
+    public void laterItemsAreSkippedAfterFailure() {
+        final DependencyGraphExecutor dependencyGraphExecutor = new DependencyGraphExecutor(1, "test-%d");
+        final List<String> applied = new CopyOnWriteArrayList<>();
+
+        final DependencyGraphExecutor.Result result = dependencyGraphExecutor.execute(
+                ImmutableList.of("a", "b", "c"),
+                item -> ImmutableSet.of(ResourceAccess.write(ResourceType.INDEX, item)),
+                item -> {
+                    if ("b".equals(item)) {
+                        throw new MigrationFailedException("failure");
+                    }
+                    applied.add(item);
+                }
+        );
+
+        assertThat(applied, contains("a"));
+        assertThat(result.getOutcomes(), contains(
+                DependencyGraphExecutor.Outcome.APPLIED,
+                DependencyGraphExecutor.Outcome.FAILED,
+                DependencyGraphExecutor.Outcome.SKIPPED
+        ));
+        assertThat(result.getFailure().get().getMessage(), is("failure"));
+    }
+
+    @Test
+    public void conflictingItemsKeepOrder() {
+        final DependencyGraphExecutor dependencyGraphExecutor = new DependencyGraphExecutor(4, "test-%d");
+        final List<String> applied = new CopyOnWriteArrayList<>();
+
+        final DependencyGraphExecutor.Result result = dependencyGraphExecutor.execute(
+                ImmutableList.of("1", "2", "3", "4"),
+                item -> ImmutableSet.of(ResourceAccess.write(ResourceType.INDEX, "test_index")),
+                applied::add
+        );
+
+        assertThat(applied, contains("1", "2", "3", "4"));
+        assertThat(result.getFailure().isPresent(), is(false));
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.model.es.Document;
+import com.quandoo.lib.elasticsearchmigration.model.migration.TransformMigration;
+import com.quandoo.lib.elasticsearchmigration.service.DocumentTransformer;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class DocumentTransformPipelineTest {
+
+    private static final String HITS = "[" +
+            "{\"_id\": \"1\", \"_source\": {\"price\": 10}}," +
+            "{\"_id\": \"2\", \"_source\": {\"price\": 0}}," +
+            "{\"_id\": \"3\", \"_source\": {\"price\": 30}}" +
+            "]";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final RestClient restClient = RestClient.builder(new HttpHost("localhost", 9200)).build();
+    private final DocumentTransformPipeline pipeline = new DocumentTransformPipeline(restClient, Executors.newFixedThreadPool(2));
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        restClient.close();
+    }
+
+    @Test
+    public void createSearchBody() throws IOException {
+        final TransformMigration migration = createMigration(Optional.of("{\"term\": {\"active\": true}}"), document -> Optional.of(document));
+
+        assertThat(pipeline.createSearchBody(migration, 0, 1), is(
+                "{\"size\":1000,\"sort\":[\"_doc\"],\"query\":{\"term\":{\"active\":true}}}"
+        ));
+        assertThat(pipeline.createSearchBody(migration, 2, 4), is(
+                "{\"size\":1000,\"sort\":[\"_doc\"],\"query\":{\"term\":{\"active\":true}},\"slice\":{\"id\":2,\"max\":4}}"
+        ));
+    }
+
+    @Test
+    public void transformKeepsOrderAndSkipsEmptyResults() throws IOException {
+        final TransformMigration migration = createMigration(Optional.empty(), document -> {
+            final int price = document.getSource().path("price").asInt();
+            if (price == 0) {
+                return Optional.empty();
+            }
+
+            final ObjectNode source = document.getSource().deepCopy();
+            source.put("price_in_cents", price * 100);
+            return Optional.of(new Document(document.getId(), source));
+        });
+
+        final DocumentTransformPipeline.Batch batch = pipeline.transform(migration, objectMapper.readTree(HITS));
+
+        assertThat(batch.getIds(), contains("1", "3"));
+        assertThat(batch.getBody().toString(), is(
+                "{\"index\":{\"_id\":\"1\"}}\n{\"price\":10,\"price_in_cents\":1000}\n" +
+                        "{\"index\":{\"_id\":\"3\"}}\n{\"price\":30,\"price_in_cents\":3000}\n"
+        ));
+    }
+
+    @Test
+    public void transformFailureNamesDocument() {
+        final TransformMigration migration = createMigration(Optional.empty(), document -> {
+            if ("2".equals(document.getId())) {
+                throw new IllegalArgumentException("lookup failed");
+            }
+            return Optional.of(document);
+        });
+
+        final MigrationFailedException exception = assertThrows(MigrationFailedException.class, () -> pipeline.transform(migration, objectMapper.readTree(HITS)));
+
+        assertThat(exception.getMessage(), is("Transforming document source_index/2 failed"));
+        assertThat(exception.getCause().getMessage(), is("lookup failed"));
+    }
+
+    private TransformMigration createMigration(final Optional<String> query, final DocumentTransformer transformer) {
+        return new TransformMigration("source_index", "dest_index", query, transformer, Optional.empty(), TransformMigration.DEFAULT_BATCH_SIZE, TransformMigration.DEFAULT_CONCURRENCY);
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.google.common.collect.ImmutableList;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.model.es.MigrationEntry;
+import com.quandoo.lib.elasticsearchmigration.model.es.SnapshotVersion;
+import com.quandoo.lib.elasticsearchmigration.model.es.State;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class HistorySnapshotTest {
+
+    private static final Instant CREATED = Instant.parse("2019-01-01T00:00:00Z");
+
+    @Test
+    public void putKeepsVersionsOrdered() {
+        List<SnapshotVersion> versions = Collections.emptyList();
+        versions = HistorySnapshot.put(versions, snapshotVersion("1.10.0", State.IN_PROGRESS));
+        versions = HistorySnapshot.put(versions, snapshotVersion("1.2.0", State.IN_PROGRESS));
+        versions = HistorySnapshot.put(versions, snapshotVersion("1.10.0", State.SUCCESS));
+
+        assertThat(versions.stream().map(SnapshotVersion::getVersion).collect(Collectors.toList()), contains("1.2.0", "1.10.0"));
+        assertThat(versions.get(1).getState(), is(State.SUCCESS));
+    }
+
+    @Test
+    public void unsettledVersionsAreTakenFromTheirEntries() {
+        final MigrationEntry failed = migrationEntry("1.1.0", State.FAILURE);
+        final List<MigrationEntry> migrationEntries = HistorySnapshot.resolve(
+                "test",
+                ImmutableList.of(snapshotVersion("1.0.0", State.SUCCESS), snapshotVersion("1.1.0", State.IN_PROGRESS), snapshotVersion("1.2.0", State.IN_PROGRESS)),
+                ImmutableList.of(failed)
+        );
+
+        assertThat(migrationEntries.stream().map(MigrationEntry::getVersion).collect(Collectors.toList()), contains("1.0.0", "1.1.0"));
+        assertThat(migrationEntries.get(0).getIdentifier(), equalTo("test"));
+        assertThat(migrationEntries.get(0).getState(), is(State.SUCCESS));
+        assertThat(migrationEntries.get(1), sameInstance(failed));
+    }
+
+    @Test
+    public void localVersionsMissingFromTheSnapshotAreRead() {
+        final List<SnapshotVersion> versions = ImmutableList.of(snapshotVersion("1.0.0", State.SUCCESS), snapshotVersion("1.1.0", State.FAILURE));
+
+        assertThat(HistorySnapshot.getVersionsToRead(versions, ImmutableList.of("1.0.0", "1.1.0", "1.2.0")), contains("1.1.0", "1.2.0"));
+    }
+
+    @Test
+    public void entriesMissingFromTheSnapshotAreAdded() {
+        final MigrationEntry unknown = migrationEntry("1.1.0", State.SUCCESS);
+        final List<MigrationEntry> migrationEntries = HistorySnapshot.resolve(
+                "test",
+                ImmutableList.of(snapshotVersion("1.0.0", State.SUCCESS), snapshotVersion("1.10.0", State.SUCCESS)),
+                ImmutableList.of(unknown)
+        );
+
+        assertThat(migrationEntries.stream().map(MigrationEntry::getVersion).collect(Collectors.toList()), contains("1.0.0", "1.1.0", "1.10.0"));
+        assertThat(migrationEntries.get(1), sameInstance(unknown));
+        assertThat(HistorySnapshot.isConsistent(ImmutableList.of(snapshotVersion("1.0.0", State.SUCCESS), snapshotVersion("1.10.0", State.SUCCESS)), migrationEntries), is(false));
+    }
+
+    @Test
+    public void snapshotBehindItsEntriesIsInconsistent() {
+        final List<SnapshotVersion> versions = ImmutableList.of(snapshotVersion("1.0.0", State.SUCCESS), snapshotVersion("1.1.0", State.IN_PROGRESS));
+
+        assertThat(HistorySnapshot.isConsistent(versions, ImmutableList.of(migrationEntry("1.0.0", State.SUCCESS), migrationEntry("1.1.0", State.IN_PROGRESS))), is(true));
+        assertThat(HistorySnapshot.isConsistent(versions, ImmutableList.of(migrationEntry("1.0.0", State.SUCCESS), migrationEntry("1.1.0", State.SUCCESS))), is(false));
+        assertThat(HistorySnapshot.isConsistent(versions, ImmutableList.of(migrationEntry("1.0.0", State.SUCCESS))), is(false));
+    }
+
+    @Test
+    public void failedWriteLeavesSnapshotUnchanged() {
+        final HistorySnapshot historySnapshot = createUnreachableHistorySnapshot();
+
+        assertThrows(MigrationFailedException.class, () -> historySnapshot.put(migrationEntry("1.0.0", State.IN_PROGRESS)));
+        assertThat(historySnapshot.getVersions(), empty());
+    }
+
+    @Test
+    public void failedAsyncWriteLeavesSnapshotUnchangedAndIsNotPassedOn() {
+        final HistorySnapshot historySnapshot = createUnreachableHistorySnapshot();
+
+        final ExecutionException first = assertThrows(ExecutionException.class, () -> historySnapshot.putAsync(migrationEntry("1.0.0", State.IN_PROGRESS)).get());
+        final ExecutionException second = assertThrows(ExecutionException.class, () -> historySnapshot.updateStateAsync("1.0.0", State.SUCCESS).get());
+
+        assertThat(first.getCause(), instanceOf(MigrationFailedException.class));
+        // The second write was attempted on its own instead of failing with the first one
+        assertThat(second.getCause(), not(sameInstance(first.getCause())));
+        assertThat(historySnapshot.getVersions(), empty());
+    }
+
+    private HistorySnapshot createUnreachableHistorySnapshot() {
+        final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        final RestHighLevelClient restHighLevelClient = new RestHighLevelClient(RestClient.builder(new HttpHost("localhost", 1)));
+        return new HistorySnapshot(restHighLevelClient, objectMapper, new MigrationHistoryLoader(restHighLevelClient.getLowLevelClient(), objectMapper, "test"), "test");
+    }
+
+    private SnapshotVersion snapshotVersion(final String version, final State state) {
+        return new SnapshotVersion(version, "name", "checksum", state, CREATED);
+    }
+
+    private MigrationEntry migrationEntry(final String version, final State state) {
+        return new MigrationEntry("test", version, "name", "checksum", state, null, CREATED);
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationLockedException;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class LockWaiterTest {
+
+    private final LockWaiter lockWaiter = new LockWaiter(
+            new RestHighLevelClient(RestClient.builder(new HttpHost("localhost", 9200))),
+            new ObjectMapper(),
+            "test-global",
+            "test-fingerprint",
+            100L,
+            1000L
+    );
+
+    @Test
+    public void delayIsJitteredWithinUpperHalfOfInterval() {
+        final long deadline = System.currentTimeMillis() + 60000L;
+        for (int i = 0; i < 100; i++) {
+            assertThat(lockWaiter.nextDelay(800L, deadline, new MigrationLockedException("locked")), allOf(greaterThanOrEqualTo(400L), lessThanOrEqualTo(800L)));
+        }
+    }
+
+    @Test
+    public void delayPastDeadlineRethrowsLockedException() {
+        final MigrationLockedException lockedException = new MigrationLockedException("locked");
+
+        final MigrationLockedException thrown = assertThrows(MigrationLockedException.class, () -> lockWaiter.nextDelay(800L, System.currentTimeMillis() + 100L, lockedException));
+        assertThat(thrown, sameInstance(lockedException));
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.quandoo.lib.elasticsearchmigration.model.es.State;
+import org.apache.http.HttpHost;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItemInArray;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class MigrationHistoryLoaderTest {
+
+    private static final String HIT_1 = "{\"_source\":{\"identifier\":\"test\",\"version\":\"1.0.0\",\"name\":\"one\",\"sha256Checksum\":\"a\",\"state\":\"SUCCESS\",\"created\":\"2019-01-01T00:00:00Z\"},\"sort\":[\"1.0.0\"]}";
+    private static final String HIT_2 = "{\"_source\":{\"identifier\":\"test\",\"version\":\"1.1.0\",\"name\":\"two\",\"sha256Checksum\":\"b\",\"state\":\"IN_PROGRESS\",\"created\":\"2019-01-02T00:00:00Z\",\"taskId\":\"node:1\",\"taskChange\":2},\"sort\":[\"1.1.0\"]}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final MigrationHistoryLoader migrationHistoryLoader = new MigrationHistoryLoader(
+            RestClient.builder(new HttpHost("localhost", 9200)).build(),
+            objectMapper,
+            "test",
+            2
+    );
+
+    @Test
+    public void fullPageContinuesAfterLastVersion() throws Exception {
+        final MigrationHistoryLoader.Page page = readPage("{\"hits\":{\"hits\":[" + HIT_1 + "," + HIT_2 + "]}}");
+
+        assertThat(page.getMigrationEntries(), hasSize(2));
+        assertThat(page.getMigrationEntries().get(0).getVersion(), equalTo("1.0.0"));
+        assertThat(page.getMigrationEntries().get(0).getState(), is(State.SUCCESS));
+        assertThat(page.getMigrationEntries().get(1).isResumable(), is(true));
+        assertThat(page.getLastVersion(), equalTo(Optional.of("1.1.0")));
+    }
+
+    @Test
+    public void shortPageIsLast() throws Exception {
+        final MigrationHistoryLoader.Page page = readPage("{\"hits\":{\"hits\":[" + HIT_1 + "]}}");
+
+        assertThat(page.getMigrationEntries(), hasSize(1));
+        assertThat(page.getLastVersion(), equalTo(Optional.empty()));
+    }
+
+    @Test
+    public void filteredOutHitsAreEmptyPage() throws Exception {
+        final MigrationHistoryLoader.Page page = readPage("{}");
+
+        assertThat(page.getMigrationEntries(), empty());
+        assertThat(page.getLastVersion(), equalTo(Optional.empty()));
+    }
+
+    @Test
+    public void pageRequestSortsByVersionAndSearchesAfterLastVersion() throws Exception {
+        final Request request = migrationHistoryLoader.createPageRequest(Collections.emptyList(), Optional.of("1.1.0"));
+        final JsonNode body = objectMapper.readTree(EntityUtils.toString(request.getEntity()));
+
+        assertThat(request.getEndpoint(), equalTo("/elasticsearch_migration_version/_search"));
+        assertThat(body.get("size").asInt(), equalTo(2));
+        assertThat(body.path("query").path("bool").path("filter").path(0).path("term").path("identifier").asText(), equalTo("test"));
+        assertThat(body.path("sort").path(0).path("version").asText(), equalTo("asc"));
+        assertThat(body.path("search_after").path(0).asText(), equalTo("1.1.0"));
+        assertThat(objectMapper.convertValue(body.get("_source"), String[].class), not(hasItemInArray("failureMessage")));
+    }
+
+    @Test
+    public void firstPageRequestHasNoSearchAfter() throws Exception {
+        final Request request = migrationHistoryLoader.createPageRequest(Collections.emptyList(), Optional.empty());
+        final JsonNode body = objectMapper.readTree(EntityUtils.toString(request.getEntity()));
+
+        assertThat(body.has("search_after"), is(false));
+        assertThat(body.path("query").path("bool").has("must_not"), is(false));
+    }
+
+    @Test
+    public void pageRequestExcludesVersionsReadById() throws Exception {
+        final Request request = migrationHistoryLoader.createPageRequest(Arrays.asList("1.0.0", "1.1.0"), Optional.empty());
+        final JsonNode body = objectMapper.readTree(EntityUtils.toString(request.getEntity()));
+
+        assertThat(
+                objectMapper.convertValue(body.path("query").path("bool").path("must_not").path(0).path("ids").path("values"), String[].class),
+                arrayContaining("test-1.0.0", "test-1.1.0")
+        );
+    }
+
+    @Test
+    public void getRequestIsRealtimeById() throws Exception {
+        final Request request = migrationHistoryLoader.createGetRequest(Arrays.asList("1.0.0", "1.1.0"), true);
+        final JsonNode body = objectMapper.readTree(EntityUtils.toString(request.getEntity()));
+
+        assertThat(request.getEndpoint(), equalTo("/elasticsearch_migration_version/_mget"));
+        assertThat(request.getParameters().get("realtime"), equalTo("true"));
+        assertThat(request.getParameters().get("_source_includes"), not(containsString("failureMessage")));
+        assertThat(objectMapper.convertValue(body.get("ids"), String[].class), arrayContaining("test-1.0.0", "test-1.1.0"));
+    }
+
+    @Test
+    public void pendingDeletesRequestFiltersEntriesWithPendingDeletes() throws Exception {
+        final Request request = migrationHistoryLoader.createPendingDeletesRequest();
+        final JsonNode body = objectMapper.readTree(EntityUtils.toString(request.getEntity()));
+
+        assertThat(request.getEndpoint(), equalTo("/elasticsearch_migration_version/_search"));
+        assertThat(body.path("query").path("bool").path("filter").path(0).path("term").path("identifier").asText(), equalTo("test"));
+        assertThat(body.path("query").path("bool").path("filter").path(1).path("exists").path("field").asText(), equalTo("pendingDeletes"));
+        assertThat(objectMapper.convertValue(body.get("_source"), String[].class), hasItemInArray("pendingDeletes"));
+        assertThat(objectMapper.convertValue(body.get("_source"), String[].class), hasItemInArray("pendingDeletesDue"));
+    }
+
+    @Test
+    public void pendingDeletesAreRead() throws Exception {
+        final MigrationHistoryLoader.Page page = readPage("{\"hits\":{\"hits\":[{\"_source\":{\"identifier\":\"test\",\"version\":\"1.0.0\",\"name\":\"one\","
+                + "\"sha256Checksum\":\"a\",\"state\":\"SUCCESS\",\"created\":\"2019-01-01T00:00:00Z\",\"pendingDeletes\":[\"test_index_1\"],\"pendingDeletesDue\":1546300800000}}]}}");
+
+        assertThat(page.getMigrationEntries().get(0).getPendingDeletes(), contains("test_index_1"));
+        assertThat(page.getMigrationEntries().get(0).getPendingDeletesDue(), equalTo(1546300800000L));
+    }
+
+    private MigrationHistoryLoader.Page readPage(final String json) throws Exception {
+        return migrationHistoryLoader.readPage(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+}
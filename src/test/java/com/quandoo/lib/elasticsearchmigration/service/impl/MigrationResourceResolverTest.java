@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.google.common.collect.ImmutableSet;
+import com.quandoo.lib.elasticsearchmigration.model.migration.AliasSwapMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.AliasesMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.CreateIndexMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.CreateIngestPipelineMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.CreateOrUpdateIndexTemplateMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.DeleteByQueryMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.DeleteIndexMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.IndexDocumentMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.ReindexMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.ResourceAccess;
+import com.quandoo.lib.elasticsearchmigration.model.migration.ResourceType;
+import com.quandoo.lib.elasticsearchmigration.model.migration.TransformMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.UpdateByQueryMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.UpdateMappingMigration;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class MigrationResourceResolverTest {
+
+    private final MigrationResourceResolver migrationResourceResolver = new MigrationResourceResolver();
+
+    @Test
+    public void resolveCreateIndex() {
+        assertThat(migrationResourceResolver.resolve(new CreateIndexMigration("test_index", "{\"aliases\": {\"test_alias\": {}}}")), containsInAnyOrder(
+                ResourceAccess.write(ResourceType.INDEX, "test_index"),
+                ResourceAccess.write(ResourceType.INDEX, "test_alias"),
+                ResourceAccess.read(ResourceType.TEMPLATE, ResourceAccess.ANY),
+                ResourceAccess.read(ResourceType.PIPELINE, ResourceAccess.ANY)
+        ));
+    }
+
+    @Test
+    public void resolveTemplateAndPipeline() {
+        assertThat(migrationResourceResolver.resolve(new CreateOrUpdateIndexTemplateMigration("test_template", "{}")), containsInAnyOrder(
+                ResourceAccess.write(ResourceType.TEMPLATE, "test_template")
+        ));
+        assertThat(migrationResourceResolver.resolve(new CreateIngestPipelineMigration("test_pipeline", "{}")), containsInAnyOrder(
+                ResourceAccess.write(ResourceType.PIPELINE, "test_pipeline")
+        ));
+    }
+
+    @Test
+    public void resolveIndexExpressions() {
+        assertThat(migrationResourceResolver.resolve(new UpdateMappingMigration(ImmutableSet.of("test_index_1", "test_index_2"), "{}")), containsInAnyOrder(
+                ResourceAccess.write(ResourceType.INDEX, "test_index_1"),
+                ResourceAccess.write(ResourceType.INDEX, "test_index_2")
+        ));
+        assertThat(migrationResourceResolver.resolve(new DeleteIndexMigration("test_*")), containsInAnyOrder(
+                ResourceAccess.write(ResourceType.INDEX, ResourceAccess.ANY)
+        ));
+    }
+
+    @Test
+    public void resolveDocument() {
+        assertThat(migrationResourceResolver.resolve(new IndexDocumentMigration("test_index", Optional.of("1"), Optional.empty(), "{}")), containsInAnyOrder(
+                ResourceAccess.write(ResourceType.INDEX, "test_index"),
+                ResourceAccess.read(ResourceType.TEMPLATE, ResourceAccess.ANY),
+                ResourceAccess.read(ResourceType.PIPELINE, ResourceAccess.ANY)
+        ));
+    }
+
+    @Test
+    public void resolveAliases() {
+        assertThat(migrationResourceResolver.resolve(new AliasesMigration("{\"actions\": [{\"add\": {\"indices\": [\"test_index_1\", \"test_index_2\"], \"alias\": \"test_alias\"}}]}")), containsInAnyOrder(
+                ResourceAccess.write(ResourceType.INDEX, "test_index_1"),
+                ResourceAccess.write(ResourceType.INDEX, "test_index_2"),
+                ResourceAccess.write(ResourceType.INDEX, "test_alias")
+        ));
+    }
+
+    @Test
+    public void resolveReindex() {
+        assertThat(migrationResourceResolver.resolve(new ReindexMigration("{\"source\": {\"index\": \"test_index_1\"}, \"dest\": {\"index\": \"test_index_2\"}}")), containsInAnyOrder(
+                ResourceAccess.read(ResourceType.INDEX, "test_index_1"),
+                ResourceAccess.write(ResourceType.INDEX, "test_index_2"),
+                ResourceAccess.read(ResourceType.TEMPLATE, ResourceAccess.ANY),
+                ResourceAccess.read(ResourceType.PIPELINE, ResourceAccess.ANY)
+        ));
+    }
+
+    @Test
+    public void resolveUpdateByQuery() {
+        final UpdateByQueryMigration updateByQueryMigration = new UpdateByQueryMigration(
+                "test_index", Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()
+        );
+        assertThat(migrationResourceResolver.resolve(updateByQueryMigration), containsInAnyOrder(
+                ResourceAccess.read(ResourceType.INDEX, "test_index"),
+                ResourceAccess.write(ResourceType.INDEX, "test_index"),
+                ResourceAccess.read(ResourceType.TEMPLATE, ResourceAccess.ANY),
+                ResourceAccess.read(ResourceType.PIPELINE, ResourceAccess.ANY)
+        ));
+    }
+
+    @Test
+    public void resolveDeleteByQuery() {
+        final DeleteByQueryMigration deleteByQueryMigration = new DeleteByQueryMigration(
+                "test_index", "{\"match_all\": {}}", Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty()
+        );
+        assertThat(migrationResourceResolver.resolve(deleteByQueryMigration), containsInAnyOrder(
+                ResourceAccess.read(ResourceType.INDEX, "test_index"),
+                ResourceAccess.write(ResourceType.INDEX, "test_index")
+        ));
+    }
+
+    @Test
+    public void resolveTransform() {
+        final TransformMigration transformMigration = new TransformMigration(
+                "test_index_1", "test_index_2", Optional.empty(), Optional::of, Optional.empty(), 1000, 1
+        );
+        assertThat(migrationResourceResolver.resolve(transformMigration), containsInAnyOrder(
+                ResourceAccess.read(ResourceType.INDEX, "test_index_1"),
+                ResourceAccess.write(ResourceType.INDEX, "test_index_2"),
+                ResourceAccess.read(ResourceType.TEMPLATE, ResourceAccess.ANY),
+                ResourceAccess.read(ResourceType.PIPELINE, ResourceAccess.ANY)
+        ));
+    }
+
+    @Test
+    public void resolveAliasSwap() {
+        final AliasSwapMigration aliasSwapMigration = new AliasSwapMigration("test_alias", "test_index_2", Optional.empty());
+
+        assertThat(migrationResourceResolver.resolve(aliasSwapMigration), containsInAnyOrder(
+                ResourceAccess.write(ResourceType.INDEX, ResourceAccess.ANY),
+                ResourceAccess.write(ResourceType.INDEX, "test_index_2"),
+                ResourceAccess.write(ResourceType.INDEX, "test_alias"),
+                ResourceAccess.read(ResourceType.INDEX, "test_index_2")
+        ));
+        assertThat(aliasSwapMigration.createSwap(ImmutableSet.of("test_index_1", "test_index_2")).getBody(), is(
+                "{\"actions\":[{\"remove\":{\"index\":\"test_index_1\",\"alias\":\"test_alias\"}},{\"add\":{\"index\":\"test_index_2\",\"alias\":\"test_alias\"}}]}"
+        ));
+    }
+
+    @Test
+    public void resolveTasksForExecutionAsBarrier() {
+        final ReindexMigration reindexMigration = new ReindexMigration("{\"source\": {\"index\": \"test_index_1\"}, \"dest\": {\"index\": \"test_index_2\"}}");
+        final CreateIndexMigration createIndexMigration = new CreateIndexMigration("test_index", "{}");
+
+        assertThat(migrationResourceResolver.resolveForExecution(reindexMigration), containsInAnyOrder(
+                ResourceAccess.write(ResourceType.CLUSTER, ResourceAccess.ANY)
+        ));
+        assertThat(migrationResourceResolver.resolveForExecution(createIndexMigration), is(migrationResourceResolver.resolve(createIndexMigration)));
+    }
+
+    @Test
+    public void resolveUnknownAsBarrier() {
+        assertThat(migrationResourceResolver.resolve(new AliasesMigration("not json")), containsInAnyOrder(
+                ResourceAccess.write(ResourceType.CLUSTER, ResourceAccess.ANY)
+        ));
+        assertThat(ResourceAccess.write(ResourceType.CLUSTER, ResourceAccess.ANY).conflictsWith(ResourceAccess.read(ResourceType.PIPELINE, "test_pipeline")), is(true));
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationMeta;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class MigrationSetFingerprinterTest {
+
+    private final MigrationSetFingerprinter migrationSetFingerprinter = new MigrationSetFingerprinter();
+
+    @Test
+    public void fingerprintIgnoresOrderOfMigrationSet() {
+        final MigrationMeta one = new MigrationMeta("aaa", "1.0.0", "one");
+        final MigrationMeta two = new MigrationMeta("bbb", "1.10.0", "two");
+
+        assertThat(migrationSetFingerprinter.fingerprint(ImmutableList.of(two, one)), is(migrationSetFingerprinter.fingerprint(ImmutableList.of(one, two))));
+    }
+
+    @Test
+    public void fingerprintChangesWithMetadata() {
+        final String fingerprint = migrationSetFingerprinter.fingerprint(ImmutableList.of(new MigrationMeta("aaa", "1.0.0", "one")));
+
+        assertThat(migrationSetFingerprinter.fingerprint(ImmutableList.of(new MigrationMeta("aab", "1.0.0", "one"))), not(fingerprint));
+        assertThat(migrationSetFingerprinter.fingerprint(ImmutableList.of(new MigrationMeta("aaa", "1.0.1", "one"))), not(fingerprint));
+        assertThat(migrationSetFingerprinter.fingerprint(ImmutableList.of(new MigrationMeta("aaa", "1.0.0", "uno"))), not(fingerprint));
+        assertThat(migrationSetFingerprinter.fingerprint(ImmutableList.of(
+                new MigrationMeta("aaa", "1.0.0", "one"),
+                new MigrationMeta("bbb", "1.1.0", "two")
+        )), not(fingerprint));
+    }
+}
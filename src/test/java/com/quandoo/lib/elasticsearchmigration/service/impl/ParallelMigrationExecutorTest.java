@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.model.migration.CreateIndexMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.DeleteIndexMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.Migration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.ReindexMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.UpdateIndexSettingsMigration;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class ParallelMigrationExecutorTest {
+
+    @Test
+    public void independentMigrationsRunConcurrently() {
+        final CountDownLatch latch = new CountDownLatch(2);
+        final ParallelMigrationExecutor parallelMigrationExecutor = new ParallelMigrationExecutor(2, new MigrationResourceResolver(), (migration, position) -> {
+            latch.countDown();
+            try {
+                // Only completes if both migrations are running at the same time
+                assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        parallelMigrationExecutor.execute(ImmutableList.of(
+                new CreateIndexMigration("test_index_1", "{}"),
+                new CreateIndexMigration("test_index_2", "{}")
+        ));
+    }
+
+    @Test
+    public void conflictingMigrationsKeepFileOrder() {
+        final List<Migration> applied = new CopyOnWriteArrayList<>();
+        final ParallelMigrationExecutor parallelMigrationExecutor = new ParallelMigrationExecutor(4, new MigrationResourceResolver(), (migration, position) -> applied.add(migration));
+
+        final Migration create = new CreateIndexMigration("test_index", "{}");
+        final Migration update = new UpdateIndexSettingsMigration("test_index", "{}");
+        final Migration delete = new DeleteIndexMigration("test_index");
+        parallelMigrationExecutor.execute(ImmutableList.of(create, update, delete));
+
+        assertThat(applied, contains(create, update, delete));
+    }
+
+    @Test
+    public void firstFailureInFileOrderIsSurfaced() {
+        final Migration failing = new CreateIndexMigration("test_index", "{}");
+        final Migration dependent = new DeleteIndexMigration("test_index");
+        final List<Migration> applied = new CopyOnWriteArrayList<>();
+        final ParallelMigrationExecutor parallelMigrationExecutor = new ParallelMigrationExecutor(2, new MigrationResourceResolver(), (migration, position) -> {
+            if (migration == failing) {
+                throw new MigrationFailedException("failure");
+            }
+            applied.add(migration);
+        });
+
+        final MigrationFailedException exception = assertThrows(MigrationFailedException.class, () -> parallelMigrationExecutor.execute(ImmutableList.of(failing, dependent)));
+        assertThat(exception.getMessage(), is("failure"));
+        assertThat(applied.contains(dependent), is(false));
+    }
+
+    @Test
+    public void positionsStartAtFirstChange() {
+        final List<Integer> positions = new CopyOnWriteArrayList<>();
+        final ParallelMigrationExecutor parallelMigrationExecutor = new ParallelMigrationExecutor(2, new MigrationResourceResolver(), (migration, position) -> positions.add(position));
+
+        parallelMigrationExecutor.execute(ImmutableList.of(
+                new CreateIndexMigration("test_index_1", "{}"),
+                new CreateIndexMigration("test_index_2", "{}"),
+                new CreateIndexMigration("test_index_3", "{}")
+        ), 1);
+
+        assertThat(positions, containsInAnyOrder(1, 2));
+    }
+
+    @Test
+    public void tasksRunAlone() {
+        final AtomicInteger running = new AtomicInteger();
+        final List<Integer> concurrency = new CopyOnWriteArrayList<>();
+        final ParallelMigrationExecutor parallelMigrationExecutor = new ParallelMigrationExecutor(4, new MigrationResourceResolver(), (migration, position) -> {
+            concurrency.add(running.incrementAndGet());
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+        });
+
+        parallelMigrationExecutor.execute(ImmutableList.of(
+                new CreateIndexMigration("test_index_1", "{}"),
+                new ReindexMigration("{\"source\": {\"index\": \"test_index_2\"}, \"dest\": {\"index\": \"test_index_3\"}}"),
+                new CreateIndexMigration("test_index_4", "{}")
+        ));
+
+        // The independent index creations wait for the task in between
+        assertThat(concurrency, contains(1, 1, 1));
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationSet;
+import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationSetEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class PrecompiledMigrationSetProviderTest {
+
+    private static final String BASE_PACKAGE = "com.quandoo.lib.elasticsearchmigration.service.impl";
+
+    @TempDir
+    Path outputDirectory;
+
+    @Test
+    public void compiledPlanYieldsSameMigrationSetAsYamlFiles() throws Exception {
+        final Path plan = new MigrationPlanCompiler().compile(BASE_PACKAGE, outputDirectory);
+        assertThat(plan, equalTo(outputDirectory.resolve("com/quandoo/lib/elasticsearchmigration/service/impl/elasticsearch-migration.plan")));
+
+        final MigrationSet expected = new YamlDirectoryMigrationSetProvider().getMigrationSet(BASE_PACKAGE);
+        final MigrationSet actual;
+        try (InputStream inputStream = Files.newInputStream(plan)) {
+            actual = new PrecompiledMigrationSetProvider().read(inputStream);
+        }
+
+        assertThat(actual.getMigrations().size(), is(expected.getMigrations().size()));
+        for (int i = 0; i < expected.getMigrations().size(); i++) {
+            final MigrationSetEntry expectedEntry = expected.getMigrations().get(i);
+            final MigrationSetEntry actualEntry = actual.getMigrations().get(i);
+            assertThat(actualEntry.getMigrationMeta().getVersion(), equalTo(expectedEntry.getMigrationMeta().getVersion()));
+            assertThat(actualEntry.getMigrationMeta().getName(), equalTo(expectedEntry.getMigrationMeta().getName()));
+            assertThat(actualEntry.getMigrationMeta().getSha256Checksum(), equalTo(expectedEntry.getMigrationMeta().getSha256Checksum()));
+            assertThat(actualEntry.getMigration(), equalTo(expectedEntry.getMigration()));
+            assertThat(actualEntry.getRefreshPolicy(), equalTo(expectedEntry.getRefreshPolicy()));
+            assertThat(actualEntry.getBulkIngest(), equalTo(expectedEntry.getBulkIngest()));
+        }
+    }
+
+    @Test
+    public void missingPlanFallsBackToYamlFiles() {
+        final MigrationSet migrationSet = new PrecompiledMigrationSetProvider().getMigrationSet(BASE_PACKAGE);
+
+        assertThat(
+                migrationSet.getMigrations().stream().map(e -> e.getMigrationMeta().getVersion()).collect(Collectors.toList()),
+                equalTo(new YamlDirectoryMigrationSetProvider().getMigrationSet(BASE_PACKAGE).getMigrations().stream().map(e -> e.getMigrationMeta().getVersion()).collect(Collectors.toList()))
+        );
+    }
+}
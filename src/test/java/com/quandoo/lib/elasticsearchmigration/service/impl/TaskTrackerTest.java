@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.model.es.TaskProgress;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class TaskTrackerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final RestClient restClient = RestClient.builder(new HttpHost("localhost", 9200)).build();
+    private final TaskTracker taskTracker = new TaskTracker(restClient, 10, 100, taskProgress -> {
+    });
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        restClient.close();
+    }
+
+    @Test
+    public void parseRunningTask() throws IOException {
+        final TaskProgress taskProgress = taskTracker.parseProgress("node:1", objectMapper.readTree(
+                "{\"completed\": false, \"task\": {\"status\": {\"total\": 100, \"created\": 40, \"updated\": 2, \"batches\": 3, \"throttled_millis\": 15}}}"
+        ));
+
+        assertThat(taskProgress.isCompleted(), is(false));
+        assertThat(taskProgress.getTotal(), is(100L));
+        assertThat(taskProgress.getCreated(), is(40L));
+        assertThat(taskProgress.getUpdated(), is(2L));
+        assertThat(taskProgress.getBatches(), is(3L));
+        assertThat(taskProgress.getThrottledMillis(), is(15L));
+    }
+
+    @Test
+    public void parseCompletedTask() throws IOException {
+        final TaskProgress taskProgress = taskTracker.parseProgress("node:1", objectMapper.readTree(
+                "{\"completed\": true, \"task\": {\"status\": {\"total\": 1, \"created\": 1}}, \"response\": {\"failures\": []}}"
+        ));
+
+        assertThat(taskProgress.isCompleted(), is(true));
+    }
+
+    @Test
+    public void failedTask() {
+        final MigrationFailedException exception = assertThrows(MigrationFailedException.class, () -> taskTracker.parseProgress("node:1", objectMapper.readTree(
+                "{\"completed\": true, \"task\": {\"status\": {}}, \"response\": {\"failures\": [{\"index\": \"test_index\", \"cause\": {\"type\": \"mapper_parsing_exception\"}}]}}"
+        )));
+
+        assertThat(exception.getMessage(), containsString("mapper_parsing_exception"));
+    }
+}
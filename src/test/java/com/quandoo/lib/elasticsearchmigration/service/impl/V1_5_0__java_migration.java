@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.quandoo.lib.elasticsearchmigration.service.JavaMigration;
+import com.quandoo.lib.elasticsearchmigration.service.JavaMigrationContext;
+
+/**
+ * Discovered by {@link YamlDirectoryMigrationSetProviderTest}.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.3.0
+ */
+public class V1_5_0__java_migration implements JavaMigration {
+
+    @Override
+    public void migrate(final JavaMigrationContext context) {
+    }
+}
@@ -27,6 +27,7 @@ import java.util.stream.*;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /**
  * @author Emir Dizdarevic
@@ -45,21 +46,24 @@ public class YamlDirectoryMigrationSetProviderTest {
     public void getMigrationSet() throws URISyntaxException {
         final MigrationSet migrationSet = yamlDirectoryMigrationSetProvider.getMigrationSet("com.quandoo.lib.elasticsearchmigration.service.impl");
 
-        assertThat(migrationSet.getMigrations(), hasSize(3));
+        assertThat(migrationSet.getMigrations(), hasSize(4));
         assertThat(migrationSet.getMigrations().stream().map(e -> e.getMigrationMeta().getVersion()).collect(Collectors.toList()), contains(
                 "1.0.0",
                 "1.2.0",
+                "1.5.0",
                 "1.10.0"
         ));
         assertThat(migrationSet.getMigrations().stream().map(e -> e.getMigrationMeta().getName()).collect(Collectors.toList()), contains(
                 "migration_one",
                 "migration_two",
+                "java_migration",
                 "migration_three"
         ));
         assertThat(migrationSet.getMigrations().stream().map(e -> e.getMigrationMeta().getSha256Checksum()).collect(Collectors.toList()), contains(
                 "de6e1367a5bad35d63931ea9fc9ef2e4f53b0a6e2d3e4b5ecbea5e918d3e3917",
-                "c02446548fa38297c926ddaf755774fcb595b1cb765f4c21f96b2131d28831a0",
-                "b87fd41e28149029486b0a5c78d92bdc749469e0531dd6be954196ae664841e4"
+                "fdf909a28ae03c238e2fe95b74ee870b3224bd4cf73ce3b76b021eae9198b5ad",
+                "ceed1bbe35f4a7c8c9587b0488f2c16290059e4aceba2f4b986a8dd6d92fb199",
+                "62b9344b751ab1b5a3e2f4c0de56634350a26d083faf65636e28d2576ce27cf5"
         ));
         assertThat(migrationSet.getMigrations().stream().flatMap(e -> e.getMigration().stream()).collect(Collectors.toList()), contains(
                 new CreateIndexMigration("test_index_1", "{}"),
@@ -69,15 +73,97 @@ public class YamlDirectoryMigrationSetProviderTest {
                 new UpdateIndexSettingsMigration("test_index_1", "{}"),
                 new UpdateMappingMigration(ImmutableSet.of("test_index_1", "test_index_2"), "{}"),
                 new AliasesMigration("{}"),
-                new ReindexMigration("{}"),
+                new ReindexMigration("{}", Optional.of("4"), Optional.of(500F), Optional.of(1000L), Optional.of("10m")),
+                new JavaCodeMigration(new V1_5_0__java_migration()),
                 new IndexDocumentMigration("test_index_1", Optional.of("1"), Optional.empty(), "{}"),
                 new UpdateDocumentMigration("test_index_1", "1", "{}"),
                 new DeleteDocumentMigration("test_index_1", "1"),
                 new DeleteIndexTemplateMigration("test_template"),
                 new DeleteIndexMigration("test_index_1"),
                 new DeleteIndexMigration("test_index_2"),
-                new DeleteIngestPipelineMigration("test_pipeline")
+                new DeleteIngestPipelineMigration("test_pipeline"),
+                new CreateIndexMigration("test_alias_v1_10_0", "{}"),
+                new ReindexMigration("{\"source\":{\"index\":\"test_alias\"},\"dest\":{\"index\":\"test_alias_v1_10_0\"},\"script\":{\"source\":\"ctx._source.remove('legacy')\"}}"),
+                new AliasSwapMigration("test_alias", "test_alias_v1_10_0", Optional.of("5m")),
+                new UpdateByQueryMigration(
+                        "test_alias",
+                        Optional.of("{\"term\": {\"status\": \"legacy\"}}"),
+                        Optional.of("{\"source\": \"ctx._source.status = 'active'\"}"),
+                        Optional.of("test_pipeline"),
+                        Optional.of("8"),
+                        Optional.of(1000F),
+                        Optional.of(Conflicts.PROCEED)
+                ),
+                new DeleteByQueryMigration(
+                        "test_alias",
+                        "{\"range\": {\"created\": {\"lt\": \"now-1y\"}}}",
+                        Optional.empty(),
+                        Optional.of(500F),
+                        Optional.of(1000000L),
+                        Optional.empty()
+                )
         ));
 
     }
+
+    @Test
+    public void classLoaderDiscoveryFindsSameMigrationSet() {
+        final MigrationSet expected = yamlDirectoryMigrationSetProvider.getMigrationSet("com.quandoo.lib.elasticsearchmigration.service.impl");
+        final MigrationSet actual = new YamlDirectoryMigrationSetProvider(MigrationDiscovery.CLASS_LOADER).getMigrationSet("com.quandoo.lib.elasticsearchmigration.service.impl");
+
+        assertThat(
+                actual.getMigrations().stream().map(e -> e.getMigrationMeta().getVersion() + ":" + e.getMigrationMeta().getName() + ":" + e.getMigrationMeta().getSha256Checksum()).collect(Collectors.toList()),
+                equalTo(expected.getMigrations().stream().map(e -> e.getMigrationMeta().getVersion() + ":" + e.getMigrationMeta().getName() + ":" + e.getMigrationMeta().getSha256Checksum()).collect(Collectors.toList()))
+        );
+        assertThat(
+                actual.getMigrations().stream().flatMap(e -> e.getMigration().stream()).collect(Collectors.toList()),
+                equalTo(expected.getMigrations().stream().flatMap(e -> e.getMigration().stream()).collect(Collectors.toList()))
+        );
+    }
+
+    @Test
+    public void parallelParsingKeepsVersionOrder() {
+        final YamlParser yamlParser = new YamlParser();
+        final MigrationSet expected = yamlDirectoryMigrationSetProvider.getMigrationSet("com.quandoo.lib.elasticsearchmigration.service.impl");
+        final MigrationSet actual = new YamlDirectoryMigrationSetProvider(path -> {
+            if (path.contains("V1_0_0")) {
+                sleep(200);
+            }
+            return yamlParser.parse(path);
+        }, MigrationDiscovery.REFLECTIONS, 4).getMigrationSet("com.quandoo.lib.elasticsearchmigration.service.impl");
+
+        assertThat(
+                actual.getMigrations().stream().map(e -> e.getMigrationMeta().getVersion() + ":" + e.getMigrationMeta().getSha256Checksum()).collect(Collectors.toList()),
+                equalTo(expected.getMigrations().stream().map(e -> e.getMigrationMeta().getVersion() + ":" + e.getMigrationMeta().getSha256Checksum()).collect(Collectors.toList()))
+        );
+        assertThat(
+                actual.getMigrations().stream().flatMap(e -> e.getMigration().stream()).collect(Collectors.toList()),
+                equalTo(expected.getMigrations().stream().flatMap(e -> e.getMigration().stream()).collect(Collectors.toList()))
+        );
+    }
+
+    @Test
+    public void parallelParsingThrowsFailureOfLowestVersion() {
+        final YamlDirectoryMigrationSetProvider provider = new YamlDirectoryMigrationSetProvider(path -> {
+            if (path.contains("V1_2_0")) {
+                sleep(200);
+                throw new IllegalStateException("V1_2_0");
+            }
+            if (path.contains("V1_10_0")) {
+                throw new IllegalStateException("V1_10_0");
+            }
+            return new YamlParser().parse(path);
+        }, MigrationDiscovery.REFLECTIONS, 4);
+
+        final IllegalStateException exception = assertThrows(IllegalStateException.class, () -> provider.getMigrationSet("com.quandoo.lib.elasticsearchmigration.service.impl"));
+        assertThat(exception.getMessage(), equalTo("V1_2_0"));
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
@@ -17,6 +17,7 @@ package com.quandoo.lib.elasticsearchmigration.service.impl;
 
 import com.quandoo.lib.elasticsearchmigration.exception.InvalidSchemaException;
 import com.quandoo.lib.elasticsearchmigration.model.input.AliasesMigrationFileEntry;
+import com.quandoo.lib.elasticsearchmigration.model.input.BulkLoadMigrationFileEntry;
 import com.quandoo.lib.elasticsearchmigration.model.input.ChecksumedMigrationFile;
 import com.quandoo.lib.elasticsearchmigration.model.input.CreateIndexMigrationFileEntry;
 import com.quandoo.lib.elasticsearchmigration.model.input.CreateIngestPipelineMigrationFileEntry;
@@ -31,13 +32,21 @@ import com.quandoo.lib.elasticsearchmigration.model.input.UpdateDocumentMigratio
 import com.quandoo.lib.elasticsearchmigration.model.input.UpdateIndexSettingsMigrationFileEntry;
 import com.quandoo.lib.elasticsearchmigration.model.input.UpdateMappingMigrationFileEntry;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
 import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /**
@@ -46,6 +55,9 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
  */
 public class YamlParserTest {
 
+    @TempDir
+    Path directory;
+
     @Test
     public void parseSuccess() throws URISyntaxException {
         final YamlParser yamlParser = new YamlParser();
@@ -72,6 +84,34 @@ public class YamlParserTest {
         ));
     }
 
+    @Test
+    public void parseBulkLoadIncludesResourceInChecksum() {
+        final YamlParser yamlParser = new YamlParser();
+        final ChecksumedMigrationFile checksumedMigrationFile = yamlParser.parse("bulk_load.yaml");
+
+        assertThat(checksumedMigrationFile.getMigrationFile().getMigrations(), contains(instanceOf(BulkLoadMigrationFileEntry.class)));
+        assertThat(checksumedMigrationFile.getSha256Checksum(), is(
+                "18089acf0136949f9a837d4fa3ae9643947e8344e2e3927b369ed7ab61156227"
+        ));
+    }
+
+    @Test
+    public void changingBulkLoadResourceChangesChecksum() throws IOException {
+        final Path data = directory.resolve("data.ndjson");
+        Files.write(directory.resolve("bulk_load_file.yaml"), (
+                "migrations:\n" +
+                "  - type: BULK_LOAD\n" +
+                "    index: 'products'\n" +
+                "    resource: 'file:" + data + "'\n"
+        ).getBytes(StandardCharsets.UTF_8));
+
+        Files.write(data, "{\"sku\": \"1\"}\n".getBytes(StandardCharsets.UTF_8));
+        final String checksum = parseFromDirectory("bulk_load_file.yaml").getSha256Checksum();
+        Files.write(data, "{\"sku\": \"2\"}\n".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(parseFromDirectory("bulk_load_file.yaml").getSha256Checksum(), not(checksum));
+    }
+
     @Test
     public void parseFailure() throws URISyntaxException {
         assertThrows(InvalidSchemaException.class, () -> {
@@ -79,4 +119,20 @@ public class YamlParserTest {
             yamlParser.parse("failure.yaml");
         });
     }
+
+    @Test
+    public void parseMissingFile() {
+        assertThrows(InvalidSchemaException.class, () -> new YamlParser().parse("missing.yaml"));
+    }
+
+    private ChecksumedMigrationFile parseFromDirectory(final String path) throws IOException {
+        final Thread thread = Thread.currentThread();
+        final ClassLoader contextClassLoader = thread.getContextClassLoader();
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{directory.toUri().toURL()}, contextClassLoader)) {
+            thread.setContextClassLoader(classLoader);
+            return new YamlParser().parse(path);
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+    }
 }